@@ -0,0 +1,158 @@
+package org.eclipse.ide4edu.importWizard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Test;
+
+/**
+ * Tests the entry names and the prefix lookup of {@link ArchiveIndex}.
+ */
+public class ArchiveIndexTest {
+
+	/**
+	 * An index over a fixed list of entries.
+	 */
+	private static class ListIndex extends ArchiveIndex {
+
+		private final List<Entry> entries = new ArrayList<Entry>();
+
+		ListIndex(String[] names) {
+			for (int i = 0; i < names.length; i++) {
+				boolean folder = names[i].endsWith("/");
+				entries.add(new Entry(normalize(names[i]), folder, 0));
+			}
+		}
+
+		Iterator<Entry> entries() {
+			return entries.iterator();
+		}
+
+		InputStream getContents(Entry entry) {
+			throw new UnsupportedOperationException();
+		}
+
+		String getLabel() {
+			return "test";
+		}
+
+		void close() {
+			// nothing to release
+		}
+	}
+
+	@Test
+	public void testNormalize() {
+		assertEquals("A/src", ArchiveIndex.normalize("./A/src/"));
+		assertEquals("A", ArchiveIndex.normalize("/A"));
+		assertEquals("A", ArchiveIndex.normalize("././A"));
+		assertEquals("", ArchiveIndex.normalize("./"));
+		// parent segments are left for the extractors to reject
+		assertEquals("A/../B", ArchiveIndex.normalize("A/../B"));
+	}
+
+	@Test
+	public void testIsProjectFile() {
+		assertTrue(ArchiveIndex.isProjectFile(new ArchiveIndex.Entry(
+				"A/.project", false, 0)));
+		assertTrue(ArchiveIndex.isProjectFile(new ArchiveIndex.Entry(
+				".project", false, 0)));
+		assertFalse(ArchiveIndex.isProjectFile(new ArchiveIndex.Entry(
+				"A/.project", true, 0)));
+		assertFalse(ArchiveIndex.isProjectFile(new ArchiveIndex.Entry(
+				"A/x.project", false, 0)));
+	}
+
+	@Test
+	public void testGetProjectPrefix() {
+		assertEquals("A/B/", ArchiveIndex
+				.getProjectPrefix(new ArchiveIndex.Entry("A/B/.project",
+						false, 0)));
+		assertEquals("", ArchiveIndex.getProjectPrefix(new ArchiveIndex.Entry(
+				".project", false, 0)));
+	}
+
+	@Test
+	public void testGetEntries() {
+		ArchiveIndex index = new ListIndex(new String[] { "B/.project",
+				"A2/.project", "A/src/X.java", "A-1/.project", "A/",
+				"A/.project", "A.txt", "A/src/" });
+		// siblings sharing the name prefix are not part of the project, and
+		// the folder of the prefix is not listed
+		assertEquals(Arrays.asList(new String[] { "A/.project", "A/src",
+				"A/src/X.java" }), getNames(index.getEntries("A/")));
+		assertEquals(Arrays.asList(new String[] { "A/src/X.java" }),
+				getNames(index.getEntries("A/src/")));
+		assertEquals(Arrays.asList(new String[] { "B/.project" }),
+				getNames(index.getEntries("B/")));
+		assertTrue(index.getEntries("C/").isEmpty());
+		assertTrue(index.getEntries("0/").isEmpty());
+		assertEquals(8, index.getEntries("").size());
+	}
+
+	@Test
+	public void testZipEntries() throws IOException {
+		File file = File.createTempFile("index", ".zip");
+		try {
+			ZipOutputStream out = new ZipOutputStream(new FileOutputStream(
+					file));
+			try {
+				out.putNextEntry(new ZipEntry("./A/"));
+				out.putNextEntry(new ZipEntry("./A/.project"));
+				out.write("<projectDescription/>".getBytes("UTF-8"));
+				out.putNextEntry(new ZipEntry("A2/.project"));
+			} finally {
+				out.close();
+			}
+			ArchiveIndex index = new ZipArchiveIndex(new ZipFile(file));
+			try {
+				List<ArchiveIndex.Entry> entries = index.getEntries("A/");
+				assertEquals(Arrays.asList(new String[] { "A/.project" }),
+						getNames(entries));
+				// the contents are found by the name before normalizing
+				InputStream in = index.getContents(entries.get(0));
+				try {
+					assertEquals("<projectDescription/>", read(in));
+				} finally {
+					in.close();
+				}
+			} finally {
+				index.close();
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	private static List<String> getNames(List<ArchiveIndex.Entry> entries) {
+		List<String> names = new ArrayList<String>();
+		for (int i = 0; i < entries.size(); i++) {
+			names.add(entries.get(i).name);
+		}
+		return names;
+	}
+
+	private static String read(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int count;
+		while ((count = in.read(buffer)) != -1) {
+			out.write(buffer, 0, count);
+		}
+		return out.toString("UTF-8");
+	}
+}
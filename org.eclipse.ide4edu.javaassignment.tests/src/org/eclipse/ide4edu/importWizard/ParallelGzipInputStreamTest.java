@@ -0,0 +1,274 @@
+package org.eclipse.ide4edu.importWizard;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests reading BGZF and multi-member gzip files with
+ * {@link ParallelGzipInputStream}.
+ */
+public class ParallelGzipInputStreamTest {
+
+	private static final int[] BLOCKS = { 60000, 60000, 30000, 0 };
+
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("parallel", ".gz");
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Test
+	public void testReadBlocks() throws IOException {
+		byte[] data = createData(150000);
+		List<Long> starts = writeBlocks(data, false);
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			ParallelGzipInputStream.BlockTable table = ParallelGzipInputStream
+					.readBlocks(in.getChannel());
+			long dataStart = 0;
+			for (int i = 0; i < BLOCKS.length; i++) {
+				assertEquals(starts.get(i).longValue(), table.getStart(i));
+				assertEquals(dataStart, table.getDataStart(i));
+				dataStart += BLOCKS[i];
+			}
+			assertEquals(0, table.find(0));
+			assertEquals(0, table.find(59999));
+			assertEquals(1, table.find(60000));
+			assertEquals(2, table.find(149999));
+			// the empty end-of-file block starts where the data ends
+			assertEquals(3, table.find(150000));
+		} finally {
+			in.close();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testReadBlocksOfPlainGzip() throws IOException {
+		writeMembers(createData(1000), 1, Deflater.DEFAULT_COMPRESSION);
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			ParallelGzipInputStream.readBlocks(in.getChannel());
+		} finally {
+			in.close();
+		}
+	}
+
+	@Test
+	public void testIsBlockCompressed() throws IOException {
+		writeBlocks(createData(150000), false);
+		assertTrue(ParallelGzipInputStream.isBlockCompressed(file));
+		writeMembers(createData(1000), 1, Deflater.DEFAULT_COMPRESSION);
+		assertFalse(ParallelGzipInputStream.isBlockCompressed(file));
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(new byte[] { 'P', 'K', 3, 4 });
+		} finally {
+			out.close();
+		}
+		assertFalse(ParallelGzipInputStream.isBlockCompressed(file));
+	}
+
+	@Test
+	public void testBlocks() throws IOException {
+		byte[] data = createData(150000);
+		writeBlocks(data, false);
+		assertArrayEquals(data, read(ParallelGzipInputStream.open(file, 4)));
+	}
+
+	@Test
+	public void testOpenMembers() throws IOException {
+		byte[] data = createData(150000);
+		List<Long> starts = writeBlocks(data, false);
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			byte[] read = read(ParallelGzipInputStream.openMembers(in
+					.getChannel(), starts.get(1).longValue()));
+			assertEquals(data.length - BLOCKS[0], read.length);
+			for (int i = 0; i < read.length; i++) {
+				if (read[i] != data[BLOCKS[0] + i]) {
+					fail("Byte " + i + " differs");
+				}
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	@Test
+	public void testCorruptBlock() throws IOException {
+		writeBlocks(createData(150000), true);
+		try {
+			read(ParallelGzipInputStream.open(file, 4));
+			fail("The corrupt block was not detected");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testMembers() throws IOException {
+		byte[] data = createData(300000);
+		writeMembers(data, 5, Deflater.DEFAULT_COMPRESSION);
+		assertArrayEquals(data, read(ParallelGzipInputStream.open(file, 4)));
+	}
+
+	@Test
+	public void testSignaturesInsideMembers() throws IOException {
+		// stored members hold the gzip signatures of the data as they are
+		byte[] data = createData(300000);
+		for (int i = 0; i < data.length - 3; i += 1000) {
+			data[i] = (byte) 0x1f;
+			data[i + 1] = (byte) 0x8b;
+			data[i + 2] = 8;
+			data[i + 3] = 0;
+		}
+		writeMembers(data, 3, Deflater.NO_COMPRESSION);
+		assertArrayEquals(data, read(ParallelGzipInputStream.open(file, 4)));
+	}
+
+	@Test
+	public void testSingleMember() throws IOException {
+		byte[] data = createData(300000);
+		writeMembers(data, 1, Deflater.DEFAULT_COMPRESSION);
+		assertArrayEquals(data, read(ParallelGzipInputStream.open(file, 4)));
+		assertArrayEquals(data, read(ParallelGzipInputStream.open(file, 1)));
+	}
+
+	@Test(expected = IOException.class)
+	public void testNotGzip() throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(createData(1000));
+		} finally {
+			out.close();
+		}
+		read(ParallelGzipInputStream.open(file, 4));
+	}
+
+	/**
+	 * Returns compressible data that is the same for every run.
+	 */
+	private static byte[] createData(int length) {
+		byte[] data = new byte[length];
+		Random random = new Random(length);
+		for (int i = 0; i < length; i++) {
+			data[i] = (byte) ('a' + random.nextInt(16));
+		}
+		return data;
+	}
+
+	/**
+	 * Write the data as BGZF blocks of the sizes in {@link #BLOCKS}.
+	 *
+	 * @return the offsets of the blocks
+	 */
+	private List<Long> writeBlocks(byte[] data, boolean corrupt)
+			throws IOException {
+		List<Long> starts = new ArrayList<Long>();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int offset = 0;
+		for (int i = 0; i < BLOCKS.length; i++) {
+			starts.add(Long.valueOf(out.size()));
+			Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION,
+					true);
+			deflater.setInput(data, offset, BLOCKS[i]);
+			deflater.finish();
+			byte[] compressed = new byte[BLOCKS[i] + 1024];
+			int length = 0;
+			while (!deflater.finished()) {
+				length += deflater.deflate(compressed, length,
+						compressed.length - length);
+			}
+			deflater.end();
+			CRC32 crc = new CRC32();
+			crc.update(data, offset, BLOCKS[i]);
+			int size = 18 + length + 8;
+			out.write(new byte[] { 0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0,
+					(byte) 0xff, 6, 0, 'B', 'C', 2, 0 });
+			writeShort(out, size - 1);
+			out.write(compressed, 0, length);
+			writeShort(out, (int) crc.getValue() ^ (corrupt && i == 1 ? 1 : 0));
+			writeShort(out, (int) (crc.getValue() >>> 16));
+			writeShort(out, BLOCKS[i]);
+			writeShort(out, 0);
+			offset += BLOCKS[i];
+		}
+		write(out.toByteArray());
+		return starts;
+	}
+
+	/**
+	 * Write the data as concatenated gzip members.
+	 */
+	private void writeMembers(byte[] data, int members, final int level)
+			throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int size = (data.length + members - 1) / members;
+		for (int offset = 0; offset < data.length; offset += size) {
+			GZIPOutputStream member = new GZIPOutputStream(out) {
+				{
+					def.setLevel(level);
+				}
+			};
+			member.write(data, offset, Math.min(size, data.length - offset));
+			member.finish();
+		}
+		write(out.toByteArray());
+	}
+
+	private void write(byte[] contents) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(contents);
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void writeShort(OutputStream out, int value)
+			throws IOException {
+		out.write(value & 0xff);
+		out.write((value >>> 8) & 0xff);
+	}
+
+	private static byte[] read(InputStream in) throws IOException {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int count;
+			while ((count = in.read(buffer)) != -1) {
+				out.write(buffer, 0, count);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+}
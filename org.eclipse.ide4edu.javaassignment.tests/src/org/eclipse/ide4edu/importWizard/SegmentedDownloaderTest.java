@@ -0,0 +1,210 @@
+package org.eclipse.ide4edu.importWizard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.eclipse.ide4edu.importWizard.SegmentedDownloader.Segment;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests how {@link SegmentedDownloader} splits a file into ranges and
+ * continues the ranges of an earlier download.
+ */
+public class SegmentedDownloaderTest {
+
+	private static final long MB = 1024 * 1024;
+
+	private static final long LENGTH = 10 * MB + 3;
+
+	private File part;
+
+	private File state;
+
+	private SegmentedDownloader downloader;
+
+	private SegmentedDownloader.Probe probe;
+
+	@Before
+	public void setUp() throws IOException {
+		part = File.createTempFile("download", SegmentedDownloader.PART_SUFFIX);
+		state = new File(part.getPath() + SegmentedDownloader.STATE_SUFFIX);
+		RandomAccessFile file = new RandomAccessFile(part, "rw");
+		try {
+			file.setLength(LENGTH);
+		} finally {
+			file.close();
+		}
+		downloader = new SegmentedDownloader(4);
+		probe = new SegmentedDownloader.Probe(new URL(
+				"http://example.org/assignments.zip"), LENGTH, true,
+				"\"v1\"", "Mon, 05 Sep 2011 10:00:00 GMT");
+	}
+
+	@After
+	public void tearDown() {
+		part.delete();
+		state.delete();
+	}
+
+	@Test
+	public void testCreateSegments() {
+		List<Segment> segments = downloader.createSegments(LENGTH);
+		assertEquals(4, segments.size());
+		assertContiguous(segments, LENGTH);
+	}
+
+	@Test
+	public void testCreateSegmentsOfSmallFiles() {
+		// ranges are not smaller than a megabyte
+		List<Segment> segments = downloader.createSegments(2 * MB + 1);
+		assertEquals(2, segments.size());
+		assertContiguous(segments, 2 * MB + 1);
+		segments = downloader.createSegments(100);
+		assertEquals(1, segments.size());
+		assertContiguous(segments, 100);
+		segments = new SegmentedDownloader(1).createSegments(LENGTH);
+		assertEquals(1, segments.size());
+		assertContiguous(segments, LENGTH);
+	}
+
+	@Test
+	public void testLoadState() throws IOException {
+		List<Segment> segments = downloader.createSegments(LENGTH);
+		segments.get(0).done.set(segments.get(0).end + 1);
+		segments.get(2).done.set(1000);
+		saveState(segments);
+		List<Segment> loaded = downloader.loadState(state, part, probe);
+		assertNotNull(loaded);
+		assertEquals(segments.size(), loaded.size());
+		for (int i = 0; i < segments.size(); i++) {
+			assertEquals(segments.get(i).start, loaded.get(i).start);
+			assertEquals(segments.get(i).end, loaded.get(i).end);
+			assertEquals(segments.get(i).done.get(), loaded.get(i).done.get());
+		}
+	}
+
+	@Test
+	public void testLoadStateOfChangedFile() throws IOException {
+		saveState(downloader.createSegments(LENGTH));
+		assertNull(downloader.loadState(state, part,
+				new SegmentedDownloader.Probe(probe.url, LENGTH, true,
+						"\"v2\"", probe.lastModified)));
+		assertNull(downloader.loadState(state, part,
+				new SegmentedDownloader.Probe(probe.url, LENGTH, true,
+						probe.etag, "Tue, 06 Sep 2011 10:00:00 GMT")));
+		assertNull(downloader.loadState(state, part,
+				new SegmentedDownloader.Probe(probe.url, LENGTH + 1, true,
+						probe.etag, probe.lastModified)));
+	}
+
+	@Test
+	public void testLoadStateOfTruncatedPart() throws IOException {
+		saveState(downloader.createSegments(LENGTH));
+		RandomAccessFile file = new RandomAccessFile(part, "rw");
+		try {
+			file.setLength(LENGTH - 1);
+		} finally {
+			file.close();
+		}
+		assertNull(downloader.loadState(state, part, probe));
+	}
+
+	@Test
+	public void testLoadStateOfInvalidRanges() throws IOException {
+		List<Segment> segments = downloader.createSegments(LENGTH);
+		long size = segments.get(0).end + 1;
+		// a gap between ranges
+		assertInvalid(segments, 1, size + 1, 2 * size - 1, 0);
+		// overlapping ranges
+		assertInvalid(segments, 1, size - 1, 2 * size - 1, 0);
+		// an empty range
+		assertInvalid(segments, 1, size, size - 1, 0);
+		// more bytes done than the range holds
+		assertInvalid(segments, 1, size, 2 * size - 1, size + 1);
+		assertInvalid(segments, 1, size, 2 * size - 1, -1);
+		// the ranges do not end with the file
+		assertInvalid(segments, 3, 3 * size, LENGTH - 2, 0);
+	}
+
+	@Test
+	public void testLoadStateOfDamagedFile() throws IOException {
+		saveState(downloader.createSegments(LENGTH));
+		Properties properties = loadProperties();
+		properties.setProperty("segment.1", "x");
+		storeProperties(properties);
+		assertNull(downloader.loadState(state, part, probe));
+		properties.setProperty("segments", "5");
+		storeProperties(properties);
+		assertNull(downloader.loadState(state, part, probe));
+	}
+
+	/**
+	 * Save the ranges with one of them replaced, and check that they are
+	 * not continued.
+	 */
+	private void assertInvalid(List<Segment> segments, int index,
+			long start, long end, long done) throws IOException {
+		List<Segment> changed = new ArrayList<Segment>(segments);
+		Segment segment = new Segment(start, end);
+		segment.done.set(done);
+		changed.set(index, segment);
+		saveState(changed);
+		assertNull(downloader.loadState(state, part, probe));
+	}
+
+	private static void assertContiguous(List<Segment> segments,
+			long length) {
+		long next = 0;
+		for (int i = 0; i < segments.size(); i++) {
+			Segment segment = segments.get(i);
+			assertEquals(next, segment.start);
+			assertEquals(0, segment.done.get());
+			next = segment.end + 1;
+		}
+		assertEquals(length, next);
+	}
+
+	private void saveState(List<Segment> segments) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(part, "rw");
+		try {
+			downloader.saveState(state, probe, segments, file.getChannel());
+		} finally {
+			file.close();
+		}
+	}
+
+	private Properties loadProperties() throws IOException {
+		Properties properties = new Properties();
+		InputStream in = new FileInputStream(state);
+		try {
+			properties.load(in);
+		} finally {
+			in.close();
+		}
+		return properties;
+	}
+
+	private void storeProperties(Properties properties) throws IOException {
+		OutputStream out = new FileOutputStream(state);
+		try {
+			properties.store(out, null);
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package org.eclipse.ide4edu.importWizard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.junit.Test;
+
+/**
+ * Tests that {@link StreamingArchiveImporter} writes entries below the
+ * project folders only.
+ */
+public class StreamingArchiveImporterTest {
+
+	private static final File TARGET_A = new File("workspace", "A");
+
+	private static final File TARGET_B = new File("workspace", "B");
+
+	@Test
+	public void testIsContained() {
+		assertTrue(StreamingArchiveImporter.isContained("src/X.java"));
+		assertTrue(StreamingArchiveImporter.isContained("src/..x/X.java"));
+		assertTrue(StreamingArchiveImporter.isContained("src/x../X.java"));
+		assertFalse(StreamingArchiveImporter.isContained(".."));
+		assertFalse(StreamingArchiveImporter.isContained("../X.java"));
+		assertFalse(StreamingArchiveImporter.isContained("src/../../X.java"));
+		assertFalse(StreamingArchiveImporter.isContained("src/.."));
+		assertFalse(StreamingArchiveImporter
+				.isContained("src\\..\\..\\X.java"));
+		assertFalse(StreamingArchiveImporter.isContained(new File("X.java")
+				.getAbsolutePath()));
+	}
+
+	@Test
+	public void testGetTargetFiles() throws IOException {
+		Map<String, File> targets = new HashMap<String, File>();
+		targets.put("A/", TARGET_A);
+		targets.put("A/B/", TARGET_B);
+		List<File> files = new ArrayList<File>();
+		StreamingArchiveImporter.getTargetFiles("A/src/X.java", targets, files);
+		assertEquals(Arrays.asList(new File[] { new File(TARGET_A,
+				"src/X.java") }), files);
+		// a nested project is written to both projects
+		StreamingArchiveImporter.getTargetFiles("A/B/X.java", targets, files);
+		assertEquals(Arrays.asList(new File[] { new File(TARGET_B, "X.java"),
+				new File(TARGET_A, "B/X.java") }), files);
+		// the project folders themselves are created with the projects
+		StreamingArchiveImporter.getTargetFiles("A", targets, files);
+		assertTrue(files.isEmpty());
+	}
+
+	@Test
+	public void testGetTargetFilesOfSiblings() throws IOException {
+		Map<String, File> targets = new HashMap<String, File>();
+		targets.put("A/", TARGET_A);
+		List<File> files = new ArrayList<File>();
+		StreamingArchiveImporter.getTargetFiles("A2/X.java", targets, files);
+		assertTrue(files.isEmpty());
+		StreamingArchiveImporter.getTargetFiles("A.java", targets, files);
+		assertTrue(files.isEmpty());
+		StreamingArchiveImporter.getTargetFiles("B/A/X.java", targets, files);
+		assertTrue(files.isEmpty());
+	}
+
+	@Test
+	public void testGetTargetFilesOfRoot() throws IOException {
+		Map<String, File> targets = new HashMap<String, File>();
+		targets.put("", TARGET_A);
+		List<File> files = new ArrayList<File>();
+		StreamingArchiveImporter.getTargetFiles("src/X.java", targets, files);
+		assertEquals(Arrays.asList(new File[] { new File(TARGET_A,
+				"src/X.java") }), files);
+	}
+
+	@Test
+	public void testGetTargetFilesOutsideProject() {
+		Map<String, File> targets = new HashMap<String, File>();
+		targets.put("A/", TARGET_A);
+		targets.put("", TARGET_B);
+		assertInvalid("A/../../X.java", targets);
+		assertInvalid("A/src/../../../X.java", targets);
+		assertInvalid("A/..\\..\\X.java", targets);
+		assertInvalid("../X.java", targets);
+		// an empty segment must not make the rest of the name absolute
+		assertInvalid("A/" + new File("X.java").getAbsolutePath(), targets);
+	}
+
+	@Test
+	public void testMoveOutsideStaging() {
+		Map<String, File> targets = new HashMap<String, File>();
+		targets.put("../A/", TARGET_A);
+		try {
+			StreamingArchiveImporter.move(new File("staging"), targets,
+					new NullProgressMonitor());
+			fail("The prefix outside the staging folder was moved");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	private static void assertInvalid(String name, Map<String, File> targets) {
+		List<File> files = new ArrayList<File>();
+		try {
+			StreamingArchiveImporter.getTargetFiles(name, targets, files);
+			fail(name + " was written to " + files);
+		} catch (IOException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package org.eclipse.ide4edu.importWizard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+
+import org.junit.Test;
+
+/**
+ * Tests the parsing of tar header blocks by {@link TarHeader}.
+ */
+public class TarHeaderTest {
+
+	@Test
+	public void testParse() throws IOException {
+		byte[] block = createBlock("A/src/X.java", 1000, '0');
+		put(block, 136, "12345670123");
+		setChecksum(block);
+		TarHeader header = TarHeader.parse(block);
+		assertEquals("A/src/X.java", header.name);
+		assertEquals(1000, header.size);
+		assertEquals(012345670123L * 1000, header.time);
+		assertTrue(header.isFile());
+		assertFalse(header.isDirectory());
+		assertEquals(1024, header.getPaddedSize());
+	}
+
+	@Test
+	public void testUstarPrefix() throws IOException {
+		byte[] block = createBlock("X.java", 0, '0');
+		put(block, 257, "ustar");
+		put(block, 263, "00");
+		put(block, 345, "A/src");
+		setChecksum(block);
+		assertEquals("A/src/X.java", TarHeader.parse(block).name);
+	}
+
+	@Test
+	public void testPrefixWithoutMagic() throws IOException {
+		// old archives have no prefix field
+		byte[] block = createBlock("X.java", 0, '0');
+		put(block, 345, "A/src");
+		setChecksum(block);
+		assertEquals("X.java", TarHeader.parse(block).name);
+	}
+
+	@Test
+	public void testBase256Size() throws IOException {
+		byte[] block = createBlock("A/big", 0, '0');
+		for (int i = 124; i < 136; i++) {
+			block[i] = 0;
+		}
+		long size = 0x123456789aL;
+		block[124] = (byte) 0x80;
+		for (int i = 0; i < 8; i++) {
+			block[135 - i] = (byte) (size >>> (8 * i));
+		}
+		setChecksum(block);
+		TarHeader header = TarHeader.parse(block);
+		assertEquals(size, header.size);
+		assertEquals(size + 512 - size % 512, header.getPaddedSize());
+	}
+
+	@Test
+	public void testTypes() throws IOException {
+		byte[] block = createBlock("A/src", 0, '5');
+		setChecksum(block);
+		assertTrue(TarHeader.parse(block).isDirectory());
+		block = createBlock("A/src/", 0, '\0');
+		setChecksum(block);
+		TarHeader header = TarHeader.parse(block);
+		assertTrue(header.isDirectory());
+		block = createBlock("A/X.java", 0, '\0');
+		setChecksum(block);
+		header = TarHeader.parse(block);
+		assertTrue(header.isFile());
+		assertFalse(header.isDirectory());
+		block = createBlock("A/link", 0, '2');
+		setChecksum(block);
+		header = TarHeader.parse(block);
+		assertFalse(header.isFile());
+		assertFalse(header.isDirectory());
+	}
+
+	@Test
+	public void testEndOfArchive() throws IOException {
+		assertNull(TarHeader.parse(new byte[TarHeader.BLOCK_SIZE]));
+	}
+
+	@Test(expected = IOException.class)
+	public void testInvalidChecksum() throws IOException {
+		byte[] block = createBlock("A/X.java", 10, '0');
+		setChecksum(block);
+		block[0] = 'B';
+		TarHeader.parse(block);
+	}
+
+	@Test
+	public void testPaddedSize() {
+		TarHeader header = new TarHeader();
+		assertEquals(0, header.getPaddedSize());
+		header.size = 512;
+		assertEquals(512, header.getPaddedSize());
+		header.size = 513;
+		assertEquals(1024, header.getPaddedSize());
+	}
+
+	@Test
+	public void testParseLongName() throws UnsupportedEncodingException {
+		assertEquals("A/a very long name.java", TarHeader
+				.parseLongName("A/a very long name.java\0\0\0"
+						.getBytes("UTF-8")));
+	}
+
+	@Test
+	public void testParsePaxPath() throws UnsupportedEncodingException {
+		assertEquals("A/\u00e9t\u00e9.java", TarHeader.parsePaxPath(getPax(
+				"mtime=1300000000.5", "path=A/\u00e9t\u00e9.java")));
+		assertNull(TarHeader.parsePaxPath(getPax("mtime=1300000000.5")));
+		assertNull(TarHeader.parsePaxPath("x path=A\n".getBytes("UTF-8")));
+		assertNull(TarHeader.parsePaxPath("99 path=A\n".getBytes("UTF-8")));
+	}
+
+	private static byte[] createBlock(String name, long size, char type)
+			throws UnsupportedEncodingException {
+		byte[] block = new byte[TarHeader.BLOCK_SIZE];
+		put(block, 0, name);
+		put(block, 100, "0000644");
+		put(block, 124, toOctal(size, 11));
+		put(block, 136, "00000000000");
+		block[156] = (byte) type;
+		return block;
+	}
+
+	private static void setChecksum(byte[] block)
+			throws UnsupportedEncodingException {
+		long sum = 0;
+		for (int i = 0; i < block.length; i++) {
+			sum += (i >= 148 && i < 156) ? ' ' : (block[i] & 0xff);
+		}
+		put(block, 148, toOctal(sum, 6));
+		block[154] = 0;
+		block[155] = ' ';
+	}
+
+	private static void put(byte[] block, int offset, String value)
+			throws UnsupportedEncodingException {
+		byte[] bytes = value.getBytes("UTF-8");
+		System.arraycopy(bytes, 0, block, offset, bytes.length);
+	}
+
+	private static String toOctal(long value, int length) {
+		StringBuffer octal = new StringBuffer(Long.toOctalString(value));
+		while (octal.length() < length) {
+			octal.insert(0, '0');
+		}
+		return octal.toString();
+	}
+
+	/**
+	 * Returns the data of a pax extended header holding records, each
+	 * prefixed by its length in bytes, length field included.
+	 */
+	private static byte[] getPax(String... records)
+			throws UnsupportedEncodingException {
+		StringBuffer data = new StringBuffer();
+		for (int i = 0; i < records.length; i++) {
+			int bytes = records[i].getBytes("UTF-8").length + 2;
+			int length = bytes + String.valueOf(bytes).length();
+			if (String.valueOf(length).length() > String.valueOf(bytes)
+					.length()) {
+				length++;
+			}
+			data.append(length).append(' ').append(records[i]).append('\n');
+		}
+		return data.toString().getBytes("UTF-8");
+	}
+}
@@ -0,0 +1,168 @@
+package org.eclipse.ide4edu.importWizard;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import org.eclipse.core.resources.IProjectDescription;
+
+/**
+ * A flat view of the entries of an archive, used to find projects in an
+ * archive without building the folder tree of the whole archive. The
+ * projects that are imported are extracted by
+ * {@link ArchiveProjectExtractor}.
+ */
+abstract class ArchiveIndex {
+
+	/**
+	 * An entry of the archive.
+	 */
+	static class Entry {
+
+		/**
+		 * The name of the entry, with '/' separated segments and without a
+		 * trailing '/' for folders.
+		 */
+		final String name;
+
+		final boolean folder;
+
+		final long size;
+
+		Entry(String name, boolean folder, long size) {
+			this.name = name;
+			this.folder = folder;
+			this.size = size;
+		}
+	}
+
+	private Entry[] sortedEntries;
+
+	private static final String PROJECT_SUFFIX = "/" //$NON-NLS-1$
+			+ IProjectDescription.DESCRIPTION_FILE_NAME;
+
+	/**
+	 * Normalize an entry name, removing a leading "./" or "/" and a
+	 * trailing "/".
+	 */
+	static String normalize(String name) {
+		while (name.startsWith("./")) { //$NON-NLS-1$
+			name = name.substring(2);
+		}
+		while (name.startsWith("/")) { //$NON-NLS-1$
+			name = name.substring(1);
+		}
+		if (name.endsWith("/")) { //$NON-NLS-1$
+			name = name.substring(0, name.length() - 1);
+		}
+		return name;
+	}
+
+	/**
+	 * Returns the folder prefix of the project a project description entry
+	 * belongs to, ending with '/' unless the project is the archive root.
+	 *
+	 * @param projectFile
+	 * 		the .project entry
+	 * @return String
+	 */
+	static String getProjectPrefix(Entry projectFile) {
+		return projectFile.name.substring(0, projectFile.name.length()
+				- IProjectDescription.DESCRIPTION_FILE_NAME.length());
+	}
+
+	/**
+	 * Returns whether an entry is a project description file.
+	 *
+	 * @param entry
+	 * @return boolean
+	 */
+	static boolean isProjectFile(Entry entry) {
+		return !entry.folder
+				&& (entry.name.endsWith(PROJECT_SUFFIX) || entry.name
+						.equals(IProjectDescription.DESCRIPTION_FILE_NAME));
+	}
+
+	/**
+	 * Returns an iterator over all entries, in archive order.
+	 *
+	 * @return Iterator
+	 */
+	abstract Iterator<Entry> entries();
+
+	/**
+	 * Open the contents of a file entry. The stream is independent of other
+	 * streams opened on the same archive.
+	 *
+	 * @param entry
+	 * @return InputStream
+	 * @throws IOException
+	 */
+	abstract InputStream getContents(Entry entry) throws IOException;
+
+	/**
+	 * Returns the path of the archive, for labels.
+	 *
+	 * @return String
+	 */
+	abstract String getLabel();
+
+	/**
+	 * Release the archive.
+	 */
+	abstract void close();
+
+	/**
+	 * Returns the entries whose name starts with the prefix. The entries are
+	 * sorted by name on the first call, so the entries of each project are
+	 * found without going through the whole archive again.
+	 *
+	 * @param prefix
+	 * 		a folder prefix ending with '/', or the empty string
+	 * @return List of Entry
+	 */
+	List<Entry> getEntries(String prefix) {
+		Entry[] sorted = getSortedEntries();
+		// the entries starting with the prefix follow it in name order
+		int low = 0;
+		int high = sorted.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (sorted[middle].name.compareTo(prefix) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		List<Entry> result = new ArrayList<Entry>();
+		for (int i = low; i < sorted.length
+				&& sorted[i].name.startsWith(prefix); i++) {
+			if (sorted[i].name.length() > prefix.length()) {
+				result.add(sorted[i]);
+			}
+		}
+		return result;
+	}
+
+	private synchronized Entry[] getSortedEntries() {
+		if (sortedEntries == null) {
+			List<Entry> entries = new ArrayList<Entry>();
+			Iterator<Entry> iterator = entries();
+			while (iterator.hasNext()) {
+				entries.add(iterator.next());
+			}
+			Entry[] sorted = entries.toArray(new Entry[entries.size()]);
+			Arrays.sort(sorted, new Comparator<Entry>() {
+				public int compare(Entry first, Entry second) {
+					return first.name.compareTo(second.name);
+				}
+			});
+			sortedEntries = sorted;
+		}
+		return sortedEntries;
+	}
+}
@@ -0,0 +1,131 @@
+package org.eclipse.ide4edu.importWizard;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+/**
+ * Extracts the entries of one project of an archive directly into the
+ * location of the project, before the project is created. The workspace
+ * finds the extracted files with the single refresh of the first open,
+ * instead of creating every file through the resource layer under a
+ * scheduling rule.
+ * <p>
+ * Every entry is read through its own stream of the archive, so the
+ * projects of an archive can be extracted by several threads at the same
+ * time.
+ * </p>
+ */
+class ArchiveProjectExtractor {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private ArchiveProjectExtractor() {
+	}
+
+	/**
+	 * Extract the entries of a project. The target is deleted again if the
+	 * extraction fails and the target did not exist before.
+	 *
+	 * @param archive
+	 * 		the archive holding the project
+	 * @param prefix
+	 * 		the folder prefix of the project in the archive
+	 * @param target
+	 * 		the directory receiving the contents of the project
+	 * @param store
+	 * 		the store the files are linked to, or <code>null</code> to write
+	 * 		them
+	 * @param monitor
+	 * 		the monitor checked for cancellation
+	 * @return the number of bytes extracted
+	 * @throws IOException
+	 * @throws OperationCanceledException
+	 * 		if the monitor was canceled
+	 */
+	static long extract(ArchiveIndex archive, String prefix, File target,
+			ContentStore store, IProgressMonitor monitor) throws IOException {
+		boolean existed = target.exists();
+		boolean completed = false;
+		try {
+			mkdirs(target);
+			List<ArchiveIndex.Entry> entries = archive.getEntries(prefix);
+			monitor.beginTask("", entries.size()); //$NON-NLS-1$
+			byte[] buffer = new byte[BUFFER_SIZE];
+			long bytes = 0;
+			for (int i = 0; i < entries.size(); i++) {
+				if (monitor.isCanceled()) {
+					throw new OperationCanceledException();
+				}
+				ArchiveIndex.Entry entry = entries.get(i);
+				String path = entry.name.substring(prefix.length());
+				if (!isContained(path)) {
+					throw new IOException("Invalid entry " + entry.name); //$NON-NLS-1$
+				}
+				File file = new File(target, path);
+				if (entry.folder) {
+					mkdirs(file);
+				} else {
+					mkdirs(file.getParentFile());
+					InputStream in = archive.getContents(entry);
+					bytes += store != null ? store.write(in, file, buffer)
+							: write(in, file, buffer);
+				}
+				monitor.worked(1);
+			}
+			ImportProfile.countBytes(bytes);
+			ImportProfile.countFiles(entries.size());
+			completed = true;
+			return bytes;
+		} finally {
+			monitor.done();
+			if (!completed && !existed) {
+				FastProjectCopier.delete(target);
+			}
+		}
+	}
+
+	/**
+	 * Returns whether a relative entry path stays below the project folder.
+	 */
+	private static boolean isContained(String path) {
+		String[] segments = path.split("[/\\\\]"); //$NON-NLS-1$
+		for (int i = 0; i < segments.length; i++) {
+			if (segments[i].equals("..")) { //$NON-NLS-1$
+				return false;
+			}
+		}
+		return path.length() > 0 && !new File(path).isAbsolute();
+	}
+
+	private static void mkdirs(File folder) throws IOException {
+		if (!folder.isDirectory() && !folder.mkdirs()) {
+			throw new IOException("Could not create " + folder); //$NON-NLS-1$
+		}
+	}
+
+	private static long write(InputStream in, File file, byte[] buffer)
+			throws IOException {
+		try {
+			FileOutputStream out = new FileOutputStream(file);
+			try {
+				long bytes = 0;
+				int count;
+				while ((count = in.read(buffer)) != -1) {
+					out.write(buffer, 0, count);
+					bytes += count;
+				}
+				return bytes;
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+}
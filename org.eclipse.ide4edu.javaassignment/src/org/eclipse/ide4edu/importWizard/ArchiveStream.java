@@ -0,0 +1,326 @@
+package org.eclipse.ide4edu.importWizard;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Reads the entries of a zip or tar archive in a single forward pass,
+ * without keeping any entry once the next one is read. Unlike an
+ * {@link ArchiveIndex}, the memory used does not depend on the number of
+ * entries of the archive.
+ * <p>
+ * The contents of the current entry are read through {@link #getContents()}
+ * before moving on with {@link #next()}.
+ * </p>
+ */
+abstract class ArchiveStream {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Open an archive for a forward pass. Zip files are recognized by their
+	 * signature, any other file is read as a tar file, inflated on the fly
+	 * when it is compressed.
+	 *
+	 * @param file
+	 * @return ArchiveStream
+	 * @throws IOException
+	 */
+	static ArchiveStream open(File file) throws IOException {
+		if (isZip(file)) {
+			return new Zip(new BufferedInputStream(new FileInputStream(file),
+					BUFFER_SIZE));
+		}
+		InputStream in = TarArchiveIndex.isCompressed(file) ? ParallelGzipInputStream
+				.open(file, ParallelGzipInputStream.getDefaultParallelism())
+				: new FileInputStream(file);
+		return new Tar(new BufferedInputStream(in, BUFFER_SIZE));
+	}
+
+	/**
+	 * Read an archive from a stream, such as a download, in a forward pass.
+	 * The format is recognized by the first bytes: zip files by their
+	 * signature, gzip compressed tar files by theirs, and any other stream
+	 * is read as a tar file.
+	 *
+	 * @param in
+	 * 		the stream, closed with the archive
+	 * @return ArchiveStream
+	 * @throws IOException
+	 */
+	static ArchiveStream open(InputStream in) throws IOException {
+		BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+		buffered.mark(2);
+		int first = buffered.read();
+		int second = buffered.read();
+		buffered.reset();
+		if (first == 'P' && second == 'K') {
+			return new Zip(buffered);
+		}
+		if (first == 0x1f && second == 0x8b) {
+			// inflated as it arrives, a stream cannot be split up
+			return new Tar(new BufferedInputStream(new GZIPInputStream(
+					buffered, BUFFER_SIZE), BUFFER_SIZE));
+		}
+		return new Tar(buffered);
+	}
+
+	/**
+	 * Returns whether a file is a zip file, by its signature.
+	 *
+	 * @param file
+	 * @return boolean
+	 * @throws IOException
+	 */
+	static boolean isZip(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			return in.read() == 'P' && in.read() == 'K';
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Returns whether a file is a tar file: a gzip compressed file, by its
+	 * signature, or a file starting with a tar header whose checksum
+	 * matches.
+	 *
+	 * @param file
+	 * @return boolean
+	 * @throws IOException
+	 */
+	static boolean isTar(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			byte[] block = new byte[TarHeader.BLOCK_SIZE];
+			int length = 0;
+			int count;
+			while (length < block.length
+					&& (count = in.read(block, length, block.length - length)) != -1) {
+				length += count;
+			}
+			if (length >= 2 && (block[0] & 0xff) == 0x1f
+					&& (block[1] & 0xff) == 0x8b) {
+				return true;
+			}
+			return length == block.length && TarHeader.parse(block) != null;
+		} catch (IOException e) {
+			// not a tar header
+			return false;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Move to the next entry, skipping what is left of the current one.
+	 *
+	 * @return the next entry, or <code>null</code> at the end of the archive
+	 * @throws IOException
+	 */
+	abstract ArchiveIndex.Entry next() throws IOException;
+
+	/**
+	 * Returns the contents of the current file entry. Closing the stream
+	 * does not close the archive.
+	 *
+	 * @return InputStream
+	 */
+	abstract InputStream getContents();
+
+	/**
+	 * Release the archive.
+	 */
+	abstract void close();
+
+	/**
+	 * A stream that does not close the stream it reads.
+	 */
+	private static class EntryInputStream extends FilterInputStream {
+
+		EntryInputStream(InputStream in) {
+			super(in);
+		}
+
+		public void close() {
+			// the archive stays open for the next entry
+		}
+	}
+
+	private static class Zip extends ArchiveStream {
+
+		private final ZipInputStream in;
+
+		Zip(InputStream in) {
+			this.in = new ZipInputStream(in);
+		}
+
+		ArchiveIndex.Entry next() throws IOException {
+			ZipEntry entry = in.getNextEntry();
+			if (entry == null) {
+				return null;
+			}
+			return new ArchiveIndex.Entry(ArchiveIndex.normalize(entry
+					.getName()), entry.isDirectory(), entry.getSize());
+		}
+
+		InputStream getContents() {
+			return new EntryInputStream(in);
+		}
+
+		void close() {
+			try {
+				in.close();
+			} catch (IOException e) {
+				// nothing to do
+			}
+		}
+	}
+
+	private static class Tar extends ArchiveStream {
+
+		private final InputStream in;
+
+		private final byte[] block = new byte[TarHeader.BLOCK_SIZE];
+
+		// the bytes of the current entry not read yet, and its padding
+		private long remaining;
+
+		private long padding;
+
+		Tar(InputStream in) {
+			this.in = in;
+		}
+
+		ArchiveIndex.Entry next() throws IOException {
+			skip(remaining + padding);
+			remaining = 0;
+			padding = 0;
+			String longName = null;
+			while (true) {
+				if (!readBlock()) {
+					return null;
+				}
+				TarHeader header = TarHeader.parse(block);
+				if (header == null) {
+					return null;
+				}
+				if (header.type == TarHeader.TYPE_GNU_LONG_NAME
+						|| header.type == TarHeader.TYPE_PAX_HEADER) {
+					byte[] data = new byte[(int) header.size];
+					readFully(data);
+					skip(header.getPaddedSize() - header.size);
+					longName = header.type == TarHeader.TYPE_GNU_LONG_NAME ? TarHeader
+							.parseLongName(data)
+							: TarHeader.parsePaxPath(data);
+					continue;
+				}
+				String name = longName != null ? longName : header.name;
+				longName = null;
+				if (header.isDirectory() || header.isFile()) {
+					boolean folder = header.isDirectory();
+					remaining = folder ? 0 : header.size;
+					padding = header.getPaddedSize() - remaining;
+					return new ArchiveIndex.Entry(ArchiveIndex
+							.normalize(name), folder, remaining);
+				}
+				// links and devices are not imported
+				skip(header.getPaddedSize());
+			}
+		}
+
+		InputStream getContents() {
+			return new EntryInputStream(in) {
+				public int read() throws IOException {
+					if (remaining <= 0) {
+						return -1;
+					}
+					int value = in.read();
+					if (value == -1) {
+						throw new EOFException();
+					}
+					remaining--;
+					return value;
+				}
+
+				public int read(byte[] buffer, int offset, int length)
+						throws IOException {
+					if (remaining <= 0) {
+						return -1;
+					}
+					int count = in.read(buffer, offset, (int) Math.min(
+							length, remaining));
+					if (count == -1) {
+						throw new EOFException();
+					}
+					remaining -= count;
+					return count;
+				}
+
+				public long skip(long count) throws IOException {
+					long skipped = in.skip(Math.min(count, remaining));
+					remaining -= skipped;
+					return skipped;
+				}
+
+				public int available() throws IOException {
+					return (int) Math.min(in.available(), remaining);
+				}
+			};
+		}
+
+		private boolean readBlock() throws IOException {
+			int offset = 0;
+			while (offset < block.length) {
+				int count = in.read(block, offset, block.length - offset);
+				if (count == -1) {
+					// archives without end blocks end here
+					return false;
+				}
+				offset += count;
+			}
+			return true;
+		}
+
+		private void readFully(byte[] data) throws IOException {
+			int offset = 0;
+			while (offset < data.length) {
+				int count = in.read(data, offset, data.length - offset);
+				if (count == -1) {
+					throw new EOFException();
+				}
+				offset += count;
+			}
+		}
+
+		private void skip(long count) throws IOException {
+			while (count > 0) {
+				long skipped = in.skip(count);
+				if (skipped <= 0) {
+					if (in.read() == -1) {
+						throw new EOFException();
+					}
+					skipped = 1;
+				}
+				count -= skipped;
+			}
+		}
+
+		void close() {
+			try {
+				in.close();
+			} catch (IOException e) {
+				// nothing to do
+			}
+		}
+	}
+}
@@ -0,0 +1,576 @@
+package org.eclipse.ide4edu.importWizard;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipFile;
+
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IncrementalProjectBuilder;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubProgressMonitor;
+import org.eclipse.ide4edu.javaassignment.Activator;
+
+/**
+ * Imports the projects of a directory or archive into a workspace without
+ * a user interface, with the engines of the import wizard: the parallel
+ * directory scanner, the archive indexes, the parallel import engine and
+ * the {@link ExistingProjectImporter}.
+ * Projects whose name or folder already exists in the workspace are
+ * skipped. Auto-build is suspended while the projects are created, and
+ * the workspace is built and saved once at the end.
+ * <p>
+ * The outcome and the time taken by each project are kept in a
+ * {@link Result} per project.
+ * </p>
+ */
+class AssignmentBatchImporter {
+
+	/**
+	 * The outcome of the import of one project.
+	 */
+	static class Result {
+
+		static final String IMPORTED = "imported"; //$NON-NLS-1$
+
+		static final String SKIPPED = "skipped"; //$NON-NLS-1$
+
+		static final String FAILED = "failed"; //$NON-NLS-1$
+
+		static final String PLANNED = "planned"; //$NON-NLS-1$
+
+		// not run, because the import was canceled or stopped by an error
+		static final String CANCELED = "canceled"; //$NON-NLS-1$
+
+		final String name;
+
+		final String source;
+
+		String status;
+
+		String message;
+
+		long millis;
+
+		// the size of the contents, measured by a dry run
+		long bytes;
+
+		long files;
+
+		Result(String name, String source) {
+			this.name = name;
+			this.source = source;
+		}
+	}
+
+	/**
+	 * A project found in the source, with the way to read its description.
+	 */
+	private static class Candidate {
+
+		final Result result;
+
+		final ExistingProjectImporter.Source source;
+
+		// the .project entry of an indexed archive
+		ArchiveIndex.Entry projectEntry;
+
+		// the project of a streamed archive
+		StreamingArchiveImporter.Project streamedProject;
+
+		Candidate(String name, String source, String stamp) {
+			result = new Result(name, source);
+			this.source = new ExistingProjectImporter.Source(name, stamp);
+		}
+	}
+
+	private final IWorkspace workspace;
+
+	private final File source;
+
+	private final boolean copy;
+
+	private final int parallelism;
+
+	private ImportProfile profile;
+
+	private final List<Result> results = new ArrayList<Result>();
+
+	private ArchiveIndex archive;
+
+	private File streamedArchive;
+
+	private boolean dryRun;
+
+	private boolean sharedContent = ContentStore.getDefaultSharedContent();
+
+	private ContentStore store;
+
+	private ImportJournal journal;
+
+	private WorkspaceProjectIndex index;
+
+	private ExistingProjectImporter importer;
+
+	/**
+	 * @param workspace
+	 * 		the workspace receiving the projects
+	 * @param source
+	 * 		a directory, or a zip or tar file
+	 * @param copy
+	 * 		whether the projects of a directory are copied into the
+	 * 		workspace instead of being imported from where they are; the
+	 * 		projects of an archive are always extracted into the workspace
+	 * @param parallelism
+	 * 		the number of projects created at the same time
+	 */
+	AssignmentBatchImporter(IWorkspace workspace, File source, boolean copy,
+			int parallelism) {
+		this.workspace = workspace;
+		this.source = source;
+		this.copy = copy;
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Set whether the projects are only found and planned: the results
+	 * tell what would be done with each project and the size of its
+	 * contents, and the workspace is not changed.
+	 *
+	 * @param dryRun
+	 */
+	void setDryRun(boolean dryRun) {
+		this.dryRun = dryRun;
+	}
+
+	/**
+	 * Set whether the files written into the workspace are read-only hard
+	 * links to a store of their contents, so files shared by several
+	 * submissions are written once, see {@link ContentStore}.
+	 *
+	 * @param sharedContent
+	 */
+	void setSharedContent(boolean sharedContent) {
+		this.sharedContent = sharedContent;
+	}
+
+	/**
+	 * Find and import the projects of the source.
+	 *
+	 * @param monitor
+	 * @throws CoreException
+	 * 		if the source cannot be read; the failures of single projects
+	 * 		are reported in their results instead
+	 */
+	void run(IProgressMonitor monitor) throws CoreException {
+		monitor.beginTask("", 100); //$NON-NLS-1$
+		profile = new ImportProfile((dryRun ? "Planned " : "Imported ") //$NON-NLS-1$ //$NON-NLS-2$
+				+ source);
+		profile.attach();
+		try {
+			if (!dryRun) {
+				journal = openJournal();
+			}
+			index = new WorkspaceProjectIndex(workspace);
+			importer = new ExistingProjectImporter(workspace, index, copy);
+			importer.setJournal(journal);
+			List<Candidate> candidates = discover(new SubProgressMonitor(
+					monitor, 10));
+			profile.begin("getProjectRecords"); //$NON-NLS-1$
+			List<Candidate> selected = select(candidates);
+			if (dryRun) {
+				profile.begin("plan"); //$NON-NLS-1$
+				plan(selected, new SubProgressMonitor(monitor, 90));
+				return;
+			}
+			// counted with the imports of the wizard, so overlapping imports
+			// restore the setting of the first one
+			ExistingProjectImporter.suspendAutoBuild(workspace);
+			try {
+				boolean build;
+				try {
+					if (journal != null) {
+						profile.begin("resume"); //$NON-NLS-1$
+						importer.removePartial(getSources(selected),
+								new SubProgressMonitor(monitor, 0));
+					}
+					if (sharedContent) {
+						store = openContentStore();
+						importer.setContentStore(store);
+					}
+					if (streamedArchive != null) {
+						profile.begin("extract"); //$NON-NLS-1$
+						importer.extract(streamedArchive,
+								getSources(selected), new SubProgressMonitor(
+										monitor, 20));
+					}
+					profile.begin("create"); //$NON-NLS-1$
+					create(selected, new SubProgressMonitor(monitor, 50));
+				} finally {
+					build = ExistingProjectImporter.endAutoBuildSuspension();
+				}
+				if (build) {
+					profile.begin("build"); //$NON-NLS-1$
+					workspace.build(
+							IncrementalProjectBuilder.INCREMENTAL_BUILD,
+							new SubProgressMonitor(monitor, 15));
+				}
+			} finally {
+				ExistingProjectImporter.restoreAutoBuild(workspace);
+			}
+			profile.begin("save"); //$NON-NLS-1$
+			workspace.save(true, new SubProgressMonitor(monitor, 5));
+		} finally {
+			for (int i = 0; i < results.size(); i++) {
+				Result result = results.get(i);
+				if (result.status == null) {
+					result.status = Result.CANCELED;
+				}
+			}
+			profile.end();
+			ImportProfile.detach();
+			if (importer != null) {
+				importer.dispose();
+				importer = null;
+			}
+			if (index != null) {
+				index.dispose();
+				index = null;
+			}
+			if (journal != null) {
+				journal.close();
+				journal = null;
+			}
+			if (archive != null) {
+				archive.close();
+				archive = null;
+			}
+			monitor.done();
+		}
+	}
+
+	/**
+	 * Find the projects of the source.
+	 */
+	private List<Candidate> discover(IProgressMonitor monitor)
+			throws CoreException {
+		List<Candidate> candidates = new ArrayList<Candidate>();
+		String path = source.getPath();
+		try {
+			if (source.isDirectory()) {
+				profile.begin("collectProjectFilesFromDirectory"); //$NON-NLS-1$
+				List<File> files = new ArrayList<File>();
+				new ProjectDirectoryScanner(ProjectDirectoryScanner
+						.getDefaultParallelism(), ProjectDirectoryScanner
+						.getDefaultMode()).scan(files, source, monitor);
+				profile.begin("ProjectRecord"); //$NON-NLS-1$
+				for (int i = 0; i < files.size(); i++) {
+					File file = files.get(i);
+					Candidate candidate = new Candidate(getName(
+							ProjectDescriptionReader.read(file), file
+									.getParentFile().getName()), file
+							.getParent(), ImportJournal.getStamp(file));
+					candidate.source.projectFile = file;
+					candidates.add(candidate);
+				}
+			} else if (!ArchiveStream.isTar(source)
+					&& !ArchiveStream.isZip(source)) {
+				throw new IOException("Not a directory or archive: " + path); //$NON-NLS-1$
+			} else if (source.length() >= StreamingArchiveImporter
+					.getDefaultThreshold()
+					|| !TarArchiveIndex.isIndexable(source)) {
+				// too large to be indexed, or compressed so it cannot be
+				profile.begin("collectProjectFilesFromArchive"); //$NON-NLS-1$
+				streamedArchive = source;
+				List<StreamingArchiveImporter.Project> projects = StreamingArchiveImporter
+						.findProjects(source, monitor);
+				profile.begin("ProjectRecord"); //$NON-NLS-1$
+				for (int i = 0; i < projects.size(); i++) {
+					StreamingArchiveImporter.Project project = projects.get(i);
+					Candidate candidate = new Candidate(getName(
+							ProjectDescriptionReader
+									.read(new ByteArrayInputStream(
+											project.description)),
+							getFolderName(project.prefix)), project.prefix,
+							getStamp(project.prefix));
+					candidate.streamedProject = project;
+					candidate.source.archivePrefix = project.prefix;
+					candidate.source.extracted = true;
+					candidates.add(candidate);
+				}
+			} else {
+				profile.begin("collectProjectFilesFromArchive"); //$NON-NLS-1$
+				if (ArchiveStream.isZip(source)) {
+					archive = new ZipArchiveIndex(new ZipFile(source));
+				} else {
+					archive = TarArchiveIndex.open(source, monitor);
+				}
+				Iterator<ArchiveIndex.Entry> entries = archive.entries();
+				int count = 0;
+				while (entries.hasNext()) {
+					ArchiveIndex.Entry entry = entries.next();
+					count++;
+					if (ArchiveIndex.isProjectFile(entry)) {
+						String prefix = ArchiveIndex.getProjectPrefix(entry);
+						ImportProfile.Section section = ImportProfile
+								.start("ProjectRecord"); //$NON-NLS-1$
+						ProjectDescriptionReader reader;
+						try {
+							InputStream in = archive.getContents(entry);
+							try {
+								reader = ProjectDescriptionReader.read(in);
+							} finally {
+								in.close();
+							}
+						} finally {
+							ImportProfile.stop(section);
+						}
+						Candidate candidate = new Candidate(getName(reader,
+								getFolderName(prefix)), prefix, getStamp(prefix));
+						candidate.projectEntry = entry;
+						candidate.source.archive = archive;
+						candidate.source.archivePrefix = prefix;
+						candidates.add(candidate);
+					}
+				}
+				ImportProfile.countFiles(count);
+			}
+		} catch (IOException e) {
+			throw new CoreException(new Status(IStatus.ERROR,
+					Activator.PLUGIN_ID, String.valueOf(e.getMessage()), e));
+		}
+		return candidates;
+	}
+
+	private String getName(ProjectDescriptionReader reader, String folderName) {
+		return reader != null ? reader.getName() : folderName;
+	}
+
+	private String getFolderName(String prefix) {
+		IPath path = new Path(prefix.length() == 0 ? source.getName() : prefix);
+		return prefix.length() == 0 ? path.removeFileExtension()
+				.lastSegment() : path.lastSegment();
+	}
+
+	/**
+	 * Record a result for every candidate, skipping those that conflict
+	 * with the workspace or with another candidate.
+	 */
+	private List<Candidate> select(List<Candidate> candidates) {
+		List<Candidate> selected = new ArrayList<Candidate>();
+		Set<String> names = new HashSet<String>();
+		for (int i = 0; i < candidates.size(); i++) {
+			Candidate candidate = candidates.get(i);
+			Result result = candidate.result;
+			results.add(result);
+			if (!names.add(result.name)) {
+				skip(result, "Another project has the same name"); //$NON-NLS-1$
+				continue;
+			}
+			switch (importer.getState(candidate.source)) {
+			case ExistingProjectImporter.IMPORTED:
+				skip(result, "The project was imported before and did not change"); //$NON-NLS-1$
+				break;
+			case ExistingProjectImporter.EXISTS:
+				skip(result, "The project exists in the workspace"); //$NON-NLS-1$
+				break;
+			case ExistingProjectImporter.LOCATION_EXISTS:
+				skip(result, "The workspace location holds a folder of this name"); //$NON-NLS-1$
+				break;
+			default:
+				selected.add(candidate);
+			}
+		}
+		return selected;
+	}
+
+	private void skip(Result result, String message) {
+		result.status = Result.SKIPPED;
+		result.message = message;
+	}
+
+	/**
+	 * Returns the stamp in the journal of a project of the archive.
+	 */
+	private String getStamp(String prefix) {
+		return ImportJournal.getStamp(source) + '!' + prefix;
+	}
+
+	private List<ExistingProjectImporter.Source> getSources(
+			List<Candidate> candidates) {
+		List<ExistingProjectImporter.Source> sources = new ArrayList<ExistingProjectImporter.Source>(
+				candidates.size());
+		for (int i = 0; i < candidates.size(); i++) {
+			sources.add(candidates.get(i).source);
+		}
+		return sources;
+	}
+
+	private ImportJournal openJournal() throws CoreException {
+		try {
+			return ImportJournal.open(source);
+		} catch (IOException e) {
+			throw new CoreException(new Status(IStatus.ERROR,
+					Activator.PLUGIN_ID, String.valueOf(e.getMessage()), e));
+		}
+	}
+
+	private ContentStore openContentStore() throws CoreException {
+		try {
+			return ContentStore.open();
+		} catch (IOException e) {
+			throw new CoreException(new Status(IStatus.ERROR,
+					Activator.PLUGIN_ID, String.valueOf(e.getMessage()), e));
+		}
+	}
+
+	/**
+	 * Create the selected projects on the import engine.
+	 */
+	private void create(List<Candidate> selected, IProgressMonitor monitor) {
+		List<ParallelImportEngine.Task> tasks = new ArrayList<ParallelImportEngine.Task>();
+		for (int i = 0; i < selected.size(); i++) {
+			final Candidate candidate = selected.get(i);
+			tasks.add(new ParallelImportEngine.Task() {
+				public String getName() {
+					return candidate.result.name;
+				}
+
+				public void run(IProgressMonitor taskMonitor)
+						throws CoreException {
+					Result result = candidate.result;
+					long start = System.nanoTime();
+					ImportProfile.Section section = ImportProfile
+							.start("createExistingProject"); //$NON-NLS-1$
+					try {
+						loadDescription(candidate);
+						importer.createProject(candidate.source, taskMonitor);
+						result.status = Result.IMPORTED;
+					} catch (CoreException e) {
+						result.status = Result.FAILED;
+						result.message = e.getStatus().getMessage();
+						throw e;
+					} catch (RuntimeException e) {
+						result.status = Result.FAILED;
+						result.message = String.valueOf(e.getMessage());
+						throw e;
+					} finally {
+						ImportProfile.stop(section);
+						result.millis = (System.nanoTime() - start) / 1000000;
+					}
+				}
+			});
+		}
+		// the failures are recorded in the results
+		new ParallelImportEngine(parallelism).run(tasks,
+				"Some projects could not be imported", monitor); //$NON-NLS-1$
+	}
+
+	/**
+	 * Record what would be done with each selected project, reading its
+	 * description and measuring its contents without changing the
+	 * workspace.
+	 */
+	private void plan(List<Candidate> selected, IProgressMonitor monitor)
+			throws CoreException {
+		monitor.beginTask("", selected.size()); //$NON-NLS-1$
+		try {
+			for (int i = 0; i < selected.size(); i++) {
+				Candidate candidate = selected.get(i);
+				Result result = candidate.result;
+				long start = System.nanoTime();
+				ImportProfile.Section section = ImportProfile
+						.start("createExistingProject"); //$NON-NLS-1$
+				try {
+					loadDescription(candidate);
+					result.message = importer.getAction(candidate.source);
+					// streamed projects are measured by the extraction only
+					long[] size = importer.measure(candidate.source);
+					if (size != null) {
+						result.bytes = size[0];
+						result.files = size[1];
+					}
+					result.status = Result.PLANNED;
+				} catch (IOException e) {
+					throw new CoreException(new Status(IStatus.ERROR,
+							Activator.PLUGIN_ID, String.valueOf(e
+									.getMessage()), e));
+				} finally {
+					ImportProfile.stop(section);
+					result.millis = (System.nanoTime() - start) / 1000000;
+				}
+				monitor.worked(1);
+			}
+		} finally {
+			monitor.done();
+		}
+	}
+
+	/**
+	 * Read the full description of a candidate. The project is created from
+	 * its name if the description cannot be read.
+	 */
+	private void loadDescription(Candidate candidate) {
+		ExistingProjectImporter.Source source = candidate.source;
+		try {
+			if (source.projectFile != null) {
+				source.description = workspace.loadProjectDescription(new Path(
+						source.projectFile.getAbsolutePath()));
+			} else if (candidate.streamedProject != null) {
+				source.description = workspace
+						.loadProjectDescription(new ByteArrayInputStream(
+								candidate.streamedProject.description));
+			} else {
+				InputStream in = archive.getContents(candidate.projectEntry);
+				try {
+					source.description = workspace.loadProjectDescription(in);
+				} finally {
+					in.close();
+				}
+			}
+		} catch (CoreException e) {
+			source.description = null;
+		} catch (IOException e) {
+			source.description = null;
+		}
+	}
+
+	/**
+	 * Returns the results of the projects found, in the order they were
+	 * found.
+	 *
+	 * @return List of {@link Result}
+	 */
+	List<Result> getResults() {
+		return results;
+	}
+
+	/**
+	 * Returns the timings of the phases of the last run.
+	 *
+	 * @return ImportProfile
+	 */
+	ImportProfile getProfile() {
+		return profile;
+	}
+
+	/**
+	 * Returns the store of a shared-content run.
+	 *
+	 * @return the store, or <code>null</code>
+	 */
+	ContentStore getContentStore() {
+		return store;
+	}
+}
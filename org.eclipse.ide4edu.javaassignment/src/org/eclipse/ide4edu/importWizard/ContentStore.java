@@ -0,0 +1,441 @@
+package org.eclipse.ide4edu.importWizard;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.ide4edu.javaassignment.Activator;
+
+/**
+ * Keeps one copy of every file content written by shared-content imports,
+ * addressed by its SHA-1 hash, and writes the files of imported projects as
+ * hard links to the stored copies. Submissions of a class share most of
+ * their files, such as the starter code and bundled libraries, which are
+ * then written to disk once.
+ * <p>
+ * The store lives in the state location of the plug-in, in the metadata
+ * area of the workspace, so that it is on the file system of the projects.
+ * Hard links are made through <code>java.nio.file.Files</code> when the
+ * virtual machine has it; otherwise, or when the file system refuses the
+ * link, the stored copy is copied.
+ * </p>
+ * <p>
+ * A linked file shares its contents with the store and with the other
+ * projects holding the same file, so linked files are read-only: writing
+ * one in place fails instead of changing every submission. Shared-content
+ * imports are therefore off unless turned on, and meant for projects that
+ * are only read. A stored copy made writable again is no longer trusted and
+ * is dropped from the store when its content is met again. Stored copies
+ * no project links to any more are pruned when the store is opened, on file
+ * systems reporting link counts.
+ * </p>
+ */
+class ContentStore {
+
+	/**
+	 * System property turning on shared-content imports when set to
+	 * <code>true</code>.
+	 */
+	static final String SHARED_CONTENT_PROPERTY = "org.eclipse.ide4edu.importWizard.sharedContent"; //$NON-NLS-1$
+
+	// smaller files are copied, a link saves no disk block for them
+	private static final long MIN_SIZE = 1024;
+
+	// the write permissions of a unix:mode attribute
+	private static final int WRITABLE = 0222;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray(); //$NON-NLS-1$
+
+	// java.nio.file.Files#createLink(Path, Path),
+	// Files#getAttribute(Path, String, LinkOption...) and File#toPath(), if
+	// the virtual machine has them
+	private static final Method CREATE_LINK;
+
+	private static final Method GET_ATTRIBUTE;
+
+	private static final Method TO_PATH;
+
+	// an empty LinkOption[], the options of getAttribute
+	private static final Object NO_OPTIONS;
+
+	static {
+		Method createLink = null;
+		Method getAttribute = null;
+		Method toPath = null;
+		Object noOptions = null;
+		try {
+			Class path = Class.forName("java.nio.file.Path"); //$NON-NLS-1$
+			Class files = Class.forName("java.nio.file.Files"); //$NON-NLS-1$
+			Class linkOption = Class.forName("java.nio.file.LinkOption"); //$NON-NLS-1$
+			noOptions = Array.newInstance(linkOption, 0);
+			createLink = files.getMethod(
+					"createLink", new Class[] { path, path }); //$NON-NLS-1$
+			getAttribute = files.getMethod("getAttribute", new Class[] { //$NON-NLS-1$
+					path, String.class, noOptions.getClass() });
+			toPath = File.class.getMethod("toPath", new Class[0]); //$NON-NLS-1$
+		} catch (Exception e) {
+			createLink = null;
+			getAttribute = null;
+		} catch (LinkageError e) {
+			createLink = null;
+			getAttribute = null;
+		}
+		CREATE_LINK = createLink;
+		GET_ATTRIBUTE = getAttribute;
+		TO_PATH = toPath;
+		NO_OPTIONS = noOptions;
+	}
+
+	private final File root;
+
+	private final File temporary;
+
+	private final AtomicLong linkedFiles = new AtomicLong();
+
+	private final AtomicLong linkedBytes = new AtomicLong();
+
+	/**
+	 * @param root
+	 * 		the directory holding the stored copies
+	 * @throws IOException
+	 * 		if the directory cannot be created
+	 */
+	ContentStore(File root) throws IOException {
+		this.root = root;
+		this.temporary = new File(root, "tmp"); //$NON-NLS-1$
+		mkdirs(temporary);
+	}
+
+	/**
+	 * Returns whether shared-content imports are turned on through
+	 * {@link #SHARED_CONTENT_PROPERTY}.
+	 *
+	 * @return boolean
+	 */
+	static boolean getDefaultSharedContent() {
+		return Boolean.getBoolean(SHARED_CONTENT_PROPERTY);
+	}
+
+	/**
+	 * Open the store in the state location of the plug-in, pruning the
+	 * stored copies no project links to any more.
+	 *
+	 * @return the store, or <code>null</code> if the plug-in is not running
+	 * @throws IOException
+	 * 		if the store cannot be created
+	 */
+	static ContentStore open() throws IOException {
+		Activator plugin = Activator.getDefault();
+		if (plugin == null) {
+			return null;
+		}
+		ContentStore store = new ContentStore(plugin.getStateLocation()
+				.append("contents").toFile()); //$NON-NLS-1$
+		store.prune();
+		return store;
+	}
+
+	/**
+	 * Delete the stored copies that are their only link, their projects
+	 * having been deleted. Nothing is pruned when the file system does not
+	 * report link counts.
+	 *
+	 * @return the number of stored copies deleted
+	 */
+	int prune() {
+		File[] folders = root.listFiles();
+		int pruned = 0;
+		for (int i = 0; folders != null && i < folders.length; i++) {
+			if (folders[i].equals(temporary)) {
+				continue;
+			}
+			File[] stored = folders[i].listFiles();
+			for (int j = 0; stored != null && j < stored.length; j++) {
+				Object links = getAttribute(stored[j], "unix:nlink"); //$NON-NLS-1$
+				if (links == null) {
+					return pruned;
+				}
+				if (((Number) links).intValue() == 1 && stored[j].delete()) {
+					pruned++;
+				}
+			}
+		}
+		return pruned;
+	}
+
+	/**
+	 * Write the contents of a stream to a file, hashing them on the way.
+	 * The file is linked to the stored copy of the contents, which is
+	 * created from the written data if the store did not have it.
+	 *
+	 * @param in
+	 * 		the contents, closed when written
+	 * @param target
+	 * 		the file to write
+	 * @param buffer
+	 * 		the buffer to copy through
+	 * @return the number of bytes read
+	 * @throws IOException
+	 */
+	long write(InputStream in, File target, byte[] buffer) throws IOException {
+		MessageDigest digest = createDigest();
+		File part = File.createTempFile("import", ".part", temporary); //$NON-NLS-1$ //$NON-NLS-2$
+		long bytes = 0;
+		try {
+			try {
+				FileOutputStream out = new FileOutputStream(part);
+				try {
+					int count;
+					while ((count = in.read(buffer)) != -1) {
+						digest.update(buffer, 0, count);
+						out.write(buffer, 0, count);
+						bytes += count;
+					}
+				} finally {
+					out.close();
+				}
+			} finally {
+				in.close();
+			}
+			if (bytes < MIN_SIZE) {
+				replace(part, target);
+			} else {
+				materialize(toHex(digest.digest()), part, bytes, target);
+			}
+		} finally {
+			part.delete();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Copy a file, linking the copy to the stored copy of its contents. The
+	 * source is only read to hash it when the store already has the
+	 * contents.
+	 *
+	 * @param source
+	 * @param target
+	 * @return the number of bytes of the file
+	 * @throws IOException
+	 */
+	long copy(File source, File target) throws IOException {
+		long size = source.length();
+		if (size < MIN_SIZE) {
+			target.delete();
+			return FastProjectCopier.copyFile(source, target);
+		}
+		MessageDigest digest = createDigest();
+		byte[] buffer = new byte[BUFFER_SIZE];
+		long bytes = 0;
+		FileInputStream in = new FileInputStream(source);
+		try {
+			int count;
+			while ((count = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, count);
+				bytes += count;
+			}
+		} finally {
+			in.close();
+		}
+		ImportProfile.countBytes(bytes);
+		ImportProfile.countFiles(1);
+		String hash = toHex(digest.digest());
+		if (link(getStoredFile(hash), bytes, target)) {
+			return bytes;
+		}
+		File part = File.createTempFile("import", ".part", temporary); //$NON-NLS-1$ //$NON-NLS-2$
+		try {
+			// the data is still cached from hashing
+			FastProjectCopier.copyFile(source, part);
+			materialize(hash, part, bytes, target);
+		} finally {
+			part.delete();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Returns the number of files written as links to stored copies that
+	 * existed before.
+	 *
+	 * @return long
+	 */
+	long getLinkedFiles() {
+		return linkedFiles.get();
+	}
+
+	/**
+	 * Returns the number of bytes of the files counted by
+	 * {@link #getLinkedFiles()}, which were not written again.
+	 *
+	 * @return long
+	 */
+	long getLinkedBytes() {
+		return linkedBytes.get();
+	}
+
+	/**
+	 * Link the target to the stored copy of the contents, storing the
+	 * written part first if the store did not have them.
+	 */
+	private void materialize(String hash, File part, long size, File target)
+			throws IOException {
+		File stored = getStoredFile(hash);
+		if (link(stored, size, target)) {
+			return;
+		}
+		mkdirs(stored.getParentFile());
+		// the links share the permissions of the stored copy, none of them
+		// may be written in place
+		part.setReadOnly();
+		// a concurrent import of the same contents may have stored it
+		// first, either copy will do
+		if (!part.renameTo(stored) && !isIntact(stored, size)) {
+			stored.delete();
+			if (!part.renameTo(stored)) {
+				// not shared, the target may be written
+				part.setWritable(true);
+				replace(part, target);
+				return;
+			}
+		}
+		target.delete();
+		if (!createLink(stored, target)) {
+			FastProjectCopier.copyFile(stored, target);
+		}
+	}
+
+	/**
+	 * Link the target to an intact stored copy.
+	 *
+	 * @return boolean <code>true</code> if the target was linked
+	 */
+	private boolean link(File stored, long size, File target) {
+		if (!stored.exists()) {
+			return false;
+		}
+		if (!isIntact(stored, size)) {
+			// made writable, maybe edited through one of its links; the
+			// projects keep their file
+			stored.delete();
+			return false;
+		}
+		// a link must not write through an existing target
+		target.delete();
+		if (!createLink(stored, target)) {
+			return false;
+		}
+		linkedFiles.incrementAndGet();
+		linkedBytes.addAndGet(size);
+		return true;
+	}
+
+	private static boolean isIntact(File stored, long size) {
+		return stored.length() == size && isReadOnly(stored);
+	}
+
+	/**
+	 * Returns whether a file is read-only. The permissions are read from the
+	 * file system when it reports them, as the check of
+	 * <code>File#canWrite()</code> passes for the super user.
+	 */
+	private static boolean isReadOnly(File file) {
+		Object mode = getAttribute(file, "unix:mode"); //$NON-NLS-1$
+		if (mode == null) {
+			return !file.canWrite();
+		}
+		return (((Number) mode).intValue() & WRITABLE) == 0;
+	}
+
+	/**
+	 * Read an attribute of a file through <code>java.nio.file.Files</code>.
+	 *
+	 * @return the value, or <code>null</code> if the virtual machine or the
+	 * 	file system does not support the attribute
+	 */
+	private static Object getAttribute(File file, String attribute) {
+		if (GET_ATTRIBUTE == null) {
+			return null;
+		}
+		try {
+			return GET_ATTRIBUTE.invoke(null, new Object[] {
+					TO_PATH.invoke(file, new Object[0]), attribute, NO_OPTIONS });
+		} catch (InvocationTargetException e) {
+			// not supported by the file system, or the file is gone
+			return null;
+		} catch (IllegalAccessException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Move a written part to the target, copying it if it cannot be moved.
+	 */
+	private static void replace(File part, File target) throws IOException {
+		target.delete();
+		if (!part.renameTo(target)) {
+			FastProjectCopier.copyFile(part, target);
+		}
+	}
+
+	private File getStoredFile(String hash) {
+		return new File(new File(root, hash.substring(0, 2)), hash
+				.substring(2));
+	}
+
+	/**
+	 * Create a hard link, if the virtual machine and the file system
+	 * support it.
+	 */
+	private static boolean createLink(File existing, File link) {
+		if (CREATE_LINK == null) {
+			return false;
+		}
+		try {
+			CREATE_LINK.invoke(null, new Object[] {
+					TO_PATH.invoke(link, new Object[0]),
+					TO_PATH.invoke(existing, new Object[0]) });
+			return true;
+		} catch (InvocationTargetException e) {
+			// not supported by the file system, or too many links
+			return false;
+		} catch (IllegalAccessException e) {
+			return false;
+		}
+	}
+
+	private static MessageDigest createDigest() throws IOException {
+		try {
+			return MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+		} catch (NoSuchAlgorithmException e) {
+			IOException exception = new IOException(e.getMessage());
+			exception.initCause(e);
+			throw exception;
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+			chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+		}
+		return new String(chars);
+	}
+
+	private static void mkdirs(File folder) throws IOException {
+		if (!folder.isDirectory() && !folder.mkdirs()) {
+			throw new IOException("Could not create " + folder); //$NON-NLS-1$
+		}
+	}
+}
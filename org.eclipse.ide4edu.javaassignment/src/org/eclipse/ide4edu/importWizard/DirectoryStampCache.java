@@ -0,0 +1,215 @@
+package org.eclipse.ide4edu.importWizard;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the result of listing each directory of a project search,
+ * together with the modification stamp and entry count the directory had
+ * when it was listed. A rescan only lists directories whose stamp changed
+ * and replays the remembered result for all others, so new submissions in
+ * nested folders are found without reading the whole tree again.
+ * <p>
+ * A directory modified shortly before it was listed may change again
+ * without its time stamp moving on file systems with a coarse timestamp
+ * granularity. Such racily stamped directories are validated by comparing
+ * their entry names with the remembered ones.
+ * </p>
+ */
+class DirectoryStampCache {
+
+	/**
+	 * The remembered listing of a directory.
+	 */
+	static class Entry {
+
+		long lastModified;
+
+		long stampTime;
+
+		int entryCount;
+
+		int namesHash;
+
+		/**
+		 * The project description file found in the directory, or
+		 * <code>null</code>.
+		 */
+		File projectFile;
+
+		/**
+		 * The names of the sub-directories to search, after the metadata
+		 * folder has been filtered out. Directories already visited by the
+		 * search, such as through recursive links, are skipped when the
+		 * listing is used, so it can be replayed by a later search.
+		 */
+		String[] directories;
+
+		/**
+		 * The canonical paths of the sub-directories, in the order of
+		 * {@link #directories}.
+		 */
+		String[] canonicalPaths;
+
+		int generation;
+	}
+
+	// Largest timestamp granularity of the file systems we care about (FAT)
+	private static final long RACY_INTERVAL = 2000;
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+	private volatile int generation;
+
+	/**
+	 * Returns the hash used to compare the names of the entries of a
+	 * directory, independent of their order.
+	 */
+	static int hashNames(String[] names) {
+		int hash = 0;
+		for (int i = 0; i < names.length; i++) {
+			hash += names[i].hashCode();
+		}
+		return hash;
+	}
+
+	/**
+	 * Start a new search. Entries not used by the search are discarded by
+	 * {@link #endScan()}.
+	 */
+	void beginScan() {
+		generation++;
+	}
+
+	/**
+	 * Discard the entries of directories that were not reached by the search
+	 * that just completed.
+	 */
+	void endScan() {
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().generation != generation) {
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Returns the remembered listing of the directory if it is still valid.
+	 *
+	 * @param directory
+	 * @return the entry, or <code>null</code> if the directory must be listed
+	 */
+	Entry lookup(File directory) {
+		Entry entry = entries.get(directory.getPath());
+		if (entry == null) {
+			return null;
+		}
+		long modified = directory.lastModified();
+		if (modified == 0 || modified != entry.lastModified) {
+			return null;
+		}
+		if (entry.stampTime - modified < RACY_INTERVAL) {
+			String[] names = directory.list();
+			if (names == null || names.length != entry.entryCount
+					|| hashNames(names) != entry.namesHash) {
+				return null;
+			}
+			entry.stampTime = System.currentTimeMillis();
+		}
+		entry.generation = generation;
+		return entry;
+	}
+
+	/**
+	 * Remember the listing of a directory.
+	 *
+	 * @param directory
+	 * @param entry
+	 * 		the listing, with <code>lastModified</code> read before the
+	 * 		directory was listed
+	 */
+	void store(File directory, Entry entry) {
+		entry.generation = generation;
+		if (entry.stampTime == 0) {
+			entry.stampTime = System.currentTimeMillis();
+		}
+		entries.put(directory.getPath(), entry);
+	}
+
+	/**
+	 * Forget everything, for example when the search root changes.
+	 */
+	void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Write the remembered listings to a stream.
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	void write(DataOutputStream out) throws IOException {
+		// copy first since searches may update the map concurrently
+		Map<String, Entry> snapshot = new HashMap<String, Entry>(
+				entries);
+		out.writeInt(snapshot.size());
+		Iterator<Map.Entry<String, Entry>> iterator = snapshot.entrySet()
+				.iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<String, Entry> mapEntry = iterator.next();
+			Entry entry = mapEntry.getValue();
+			out.writeUTF(mapEntry.getKey());
+			out.writeLong(entry.lastModified);
+			out.writeLong(entry.stampTime);
+			out.writeInt(entry.entryCount);
+			out.writeInt(entry.namesHash);
+			out.writeUTF(entry.projectFile == null ? "" : entry.projectFile //$NON-NLS-1$
+					.getPath());
+			out.writeInt(entry.directories.length);
+			for (int i = 0; i < entry.directories.length; i++) {
+				out.writeUTF(entry.directories[i]);
+				out.writeUTF(entry.canonicalPaths[i]);
+			}
+		}
+	}
+
+	/**
+	 * Replace the remembered listings with the ones read from a stream
+	 * written by {@link #write(DataOutputStream)}.
+	 *
+	 * @param in
+	 * @throws IOException
+	 */
+	void read(DataInputStream in) throws IOException {
+		entries.clear();
+		int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			String path = in.readUTF();
+			Entry entry = new Entry();
+			entry.lastModified = in.readLong();
+			entry.stampTime = in.readLong();
+			entry.entryCount = in.readInt();
+			entry.namesHash = in.readInt();
+			String projectFile = in.readUTF();
+			if (projectFile.length() > 0) {
+				entry.projectFile = new File(projectFile);
+			}
+			entry.directories = new String[in.readInt()];
+			entry.canonicalPaths = new String[entry.directories.length];
+			for (int j = 0; j < entry.directories.length; j++) {
+				entry.directories[j] = in.readUTF();
+				entry.canonicalPaths[j] = in.readUTF();
+			}
+			entry.generation = generation;
+			entries.put(path, entry);
+		}
+	}
+}
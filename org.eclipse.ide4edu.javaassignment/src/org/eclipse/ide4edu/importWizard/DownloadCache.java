@@ -0,0 +1,411 @@
+package org.eclipse.ide4edu.importWizard;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.ide4edu.javaassignment.Activator;
+
+/**
+ * Keeps the remote archives downloaded by the import, keyed by their URL,
+ * so that fetching the same archive again transfers it only when it
+ * changed. A cached archive is revalidated with a conditional
+ * <code>GET</code> carrying its <code>ETag</code> and
+ * <code>Last-Modified</code> date, and served from disk when the server
+ * answers <code>304 Not Modified</code>, or when the server cannot be
+ * reached.
+ * <p>
+ * The cache lives in the state location of the plug-in, and is shared by
+ * every fetch. Its size is bounded; the archives used least recently are
+ * evicted once a download makes it larger. An archive returned by a fetch
+ * is pinned until it is released, so it is never evicted while it is read.
+ * Archives whose server sent no validator are downloaded every time.
+ * </p>
+ */
+class DownloadCache {
+
+	/**
+	 * System property holding the size of the cache in megabytes,
+	 * <code>0</code> turns the cache off.
+	 */
+	static final String SIZE_PROPERTY = "org.eclipse.ide4edu.importWizard.downloadCacheSize"; //$NON-NLS-1$
+
+	private static final long DEFAULT_SIZE = 1024;
+
+	private static final String ENTRY = "entry.properties"; //$NON-NLS-1$
+
+	private static final int TIMEOUT = 30000;
+
+	// returned by revalidate when the cached copy will do
+	private static final SegmentedDownloader.Probe NOT_MODIFIED = new SegmentedDownloader.Probe(
+			null, -1, false, null, null);
+
+	/**
+	 * Orders entries from the least recently used.
+	 */
+	private static final Comparator<File> LEAST_RECENTLY_USED = new Comparator<File>() {
+		public int compare(File entry, File other) {
+			long used = new File(entry, ENTRY).lastModified();
+			long otherUsed = new File(other, ENTRY).lastModified();
+			return used < otherUsed ? -1 : used == otherUsed ? 0 : 1;
+		}
+	};
+
+	// the cache of the state location, see open()
+	private static DownloadCache shared;
+
+	private final File root;
+
+	private final long maxSize;
+
+	// the entries being fetched, locked while they are
+	private final Map<String, Object> locks = new HashMap<String, Object>();
+
+	// the number of fetches holding each entry, pinned entries are never
+	// evicted
+	private final Map<String, Integer> pins = new HashMap<String, Integer>();
+
+	/**
+	 * @param root
+	 * 		the directory holding the entries
+	 * @param maxSize
+	 * 		the size the cache is reduced to after a download, in bytes
+	 * @throws IOException
+	 * 		if the directory cannot be created
+	 */
+	DownloadCache(File root, long maxSize) throws IOException {
+		this.root = root;
+		this.maxSize = maxSize;
+		if (!root.isDirectory() && !root.mkdirs()) {
+			throw new IOException("Could not create " + root); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Returns the size of the cache configured through
+	 * {@link #SIZE_PROPERTY}, or the default.
+	 *
+	 * @return the size in bytes, <code>0</code> if the cache is off
+	 */
+	static long getDefaultMaxSize() {
+		long size = Long.getLong(SIZE_PROPERTY, DEFAULT_SIZE).longValue();
+		return Math.max(0, size) * 1024 * 1024;
+	}
+
+	/**
+	 * Returns the cache in the state location of the plug-in, shared by
+	 * every fetch so that they exclude each other.
+	 *
+	 * @return the cache, or <code>null</code> if the plug-in is not running
+	 * 	or the cache is off
+	 * @throws IOException
+	 * 		if the cache cannot be created
+	 */
+	static synchronized DownloadCache open() throws IOException {
+		Activator plugin = Activator.getDefault();
+		long maxSize = getDefaultMaxSize();
+		if (plugin == null || maxSize == 0) {
+			return null;
+		}
+		File root = plugin.getStateLocation().append("downloads").toFile(); //$NON-NLS-1$
+		if (shared == null || !shared.root.equals(root)) {
+			shared = new DownloadCache(root, maxSize);
+		}
+		return shared;
+	}
+
+	/**
+	 * Returns the directory holding the entries.
+	 *
+	 * @return File
+	 */
+	File getRoot() {
+		return root;
+	}
+
+	/**
+	 * Returns the cached copy of a remote file, downloading it if the cache
+	 * does not have it or it changed on the server. The copy is pinned until
+	 * it is {@link #release(URL) released}.
+	 *
+	 * @param url
+	 * @param monitor
+	 * 		the monitor to report the download to
+	 * @return the cached file
+	 * @throws IOException
+	 * 		if the file cannot be downloaded
+	 */
+	File fetch(URL url, IProgressMonitor monitor) throws IOException {
+		return fetch(url, SegmentedDownloader.getDefaultParallelism(), monitor);
+	}
+
+	/**
+	 * Returns the cached copy of a remote file, downloading it with a number
+	 * of connections if the cache does not have it or it changed on the
+	 * server. The copy is pinned until it is {@link #release(URL) released}.
+	 *
+	 * @param url
+	 * @param parallelism
+	 * 		the number of ranges downloaded at the same time
+	 * @param monitor
+	 * 		the monitor to report the download to
+	 * @return the cached file
+	 * @throws IOException
+	 * 		if the file cannot be downloaded
+	 */
+	File fetch(URL url, int parallelism, IProgressMonitor monitor)
+			throws IOException {
+		String key = getKey(url);
+		Object lock;
+		synchronized (locks) {
+			lock = locks.get(key);
+			if (lock == null) {
+				lock = new Object();
+				locks.put(key, lock);
+			}
+			Integer count = pins.get(key);
+			pins.put(key, new Integer(count == null ? 1 : count.intValue() + 1));
+		}
+		boolean fetched = false;
+		try {
+			File file;
+			synchronized (lock) {
+				file = fetch(url, new File(root, key), parallelism, monitor);
+			}
+			fetched = true;
+			evict();
+			return file;
+		} finally {
+			if (!fetched) {
+				release(url);
+			}
+		}
+	}
+
+	/**
+	 * Release the copy of a remote file returned by a fetch, so that it can
+	 * be evicted once no fetch holds it.
+	 *
+	 * @param url
+	 */
+	void release(URL url) {
+		String key = getKey(url);
+		synchronized (locks) {
+			Integer count = pins.get(key);
+			if (count == null) {
+				return;
+			}
+			if (count.intValue() == 1) {
+				pins.remove(key);
+			} else {
+				pins.put(key, new Integer(count.intValue() - 1));
+			}
+		}
+	}
+
+	private static String getKey(URL url) {
+		return Integer.toHexString(url.toString().hashCode());
+	}
+
+	private File fetch(URL url, File folder, int parallelism,
+			IProgressMonitor monitor) throws IOException {
+		File entry = new File(folder, ENTRY);
+		Properties properties = load(url, entry);
+		SegmentedDownloader.Probe probe = null;
+		if (properties != null) {
+			File cached = new File(folder, properties.getProperty("name")); //$NON-NLS-1$
+			if (cached.isFile()
+					&& String.valueOf(cached.length()).equals(
+							properties.getProperty("length"))) { //$NON-NLS-1$
+				probe = revalidate(url, properties);
+			}
+			if (probe == NOT_MODIFIED) {
+				// used now, for the eviction
+				entry.setLastModified(System.currentTimeMillis());
+				monitor.done();
+				return cached;
+			}
+		}
+		if (!folder.isDirectory() && !folder.mkdirs()) {
+			throw new IOException("Could not create " + folder); //$NON-NLS-1$
+		}
+		// the entry is not valid while the file is replaced
+		entry.delete();
+		File file = new File(folder, getFileName(url));
+		SegmentedDownloader downloader = new SegmentedDownloader(parallelism);
+		if (probe != null) {
+			downloader.download(probe, file, monitor);
+		} else {
+			downloader.download(url, file, monitor);
+		}
+		probe = downloader.getLastProbe();
+		if (probe == null
+				|| (probe.etag == null && probe.lastModified == null)) {
+			// cannot be revalidated, downloaded again next time
+			return file;
+		}
+		properties = new Properties();
+		properties.setProperty("url", url.toString()); //$NON-NLS-1$
+		properties.setProperty("name", file.getName()); //$NON-NLS-1$
+		properties.setProperty("length", String.valueOf(file.length())); //$NON-NLS-1$
+		if (probe.etag != null) {
+			properties.setProperty("etag", probe.etag); //$NON-NLS-1$
+		}
+		if (probe.lastModified != null) {
+			properties.setProperty("lastModified", probe.lastModified); //$NON-NLS-1$
+		}
+		OutputStream out = new FileOutputStream(entry);
+		try {
+			properties.store(out, null);
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	/**
+	 * Read the entry of a URL.
+	 *
+	 * @return the properties of the entry, or <code>null</code> if there is
+	 * 	none or it belongs to another URL with the same hash
+	 */
+	private static Properties load(URL url, File entry) {
+		if (!entry.isFile()) {
+			return null;
+		}
+		Properties properties = new Properties();
+		try {
+			InputStream in = new FileInputStream(entry);
+			try {
+				properties.load(in);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			return null;
+		} catch (IllegalArgumentException e) {
+			// a damaged entry
+			return null;
+		}
+		if (!url.toString().equals(properties.getProperty("url")) //$NON-NLS-1$
+				|| properties.getProperty("name") == null) { //$NON-NLS-1$
+			return null;
+		}
+		return properties;
+	}
+
+	/**
+	 * Ask the server whether a cached file changed, with a conditional
+	 * request that transfers nothing when it did not. The response to a
+	 * changed file tells its length, ranges and validators, so the download
+	 * that follows does not probe the server again.
+	 *
+	 * @return {@link #NOT_MODIFIED} if the cached copy will do, what the
+	 * 	response told about the changed file, or <code>null</code> if the
+	 * 	download must probe the server
+	 */
+	private static SegmentedDownloader.Probe revalidate(URL url,
+			Properties properties) {
+		URLConnection connection;
+		try {
+			connection = url.openConnection();
+		} catch (IOException e) {
+			return NOT_MODIFIED;
+		}
+		if (!(connection instanceof HttpURLConnection)) {
+			return null;
+		}
+		HttpURLConnection http = (HttpURLConnection) connection;
+		http.setConnectTimeout(TIMEOUT);
+		http.setReadTimeout(TIMEOUT);
+		String etag = properties.getProperty("etag"); //$NON-NLS-1$
+		if (etag != null) {
+			http.setRequestProperty("If-None-Match", etag); //$NON-NLS-1$
+		}
+		String lastModified = properties.getProperty("lastModified"); //$NON-NLS-1$
+		if (lastModified != null) {
+			http.setRequestProperty("If-Modified-Since", lastModified); //$NON-NLS-1$
+		}
+		int code;
+		try {
+			code = http.getResponseCode();
+		} catch (IOException e) {
+			// the server cannot be reached, the cached copy will do
+			http.disconnect();
+			return NOT_MODIFIED;
+		}
+		if (code == HttpURLConnection.HTTP_OK) {
+			SegmentedDownloader.Probe probe = SegmentedDownloader
+					.readProbe(http);
+			// the body of the changed file is downloaded in ranges instead
+			http.disconnect();
+			return probe;
+		}
+		// kept alive for the download or the next fetch
+		SegmentedDownloader.release(http);
+		return code == HttpURLConnection.HTTP_NOT_MODIFIED ? NOT_MODIFIED
+				: null;
+	}
+
+	/**
+	 * Delete the entries used least recently until the cache fits its size,
+	 * keeping the pinned entries.
+	 */
+	private synchronized void evict() {
+		File[] entries = root.listFiles();
+		if (entries == null) {
+			return;
+		}
+		long size = 0;
+		for (int i = 0; i < entries.length; i++) {
+			size += getSize(entries[i]);
+		}
+		if (size <= maxSize) {
+			return;
+		}
+		Arrays.sort(entries, LEAST_RECENTLY_USED);
+		for (int i = 0; i < entries.length && size > maxSize; i++) {
+			synchronized (locks) {
+				if (pins.containsKey(entries[i].getName())) {
+					continue;
+				}
+				locks.remove(entries[i].getName());
+				size -= getSize(entries[i]);
+				FastProjectCopier.delete(entries[i]);
+			}
+		}
+	}
+
+	private static long getSize(File folder) {
+		File[] files = folder.listFiles();
+		long size = 0;
+		for (int i = 0; files != null && i < files.length; i++) {
+			size += files[i].length();
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the name of the file at a URL, which tells the kind of archive.
+	 */
+	private static String getFileName(URL url) {
+		String path = url.getPath();
+		String name = path.substring(path.lastIndexOf('/') + 1);
+		if (name.length() == 0 || name.equals(ENTRY)) {
+			return "download"; //$NON-NLS-1$
+		}
+		return name;
+	}
+}
@@ -0,0 +1,580 @@
+package org.eclipse.ide4edu.importWizard;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceRuleFactory;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceDescription;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubProgressMonitor;
+import org.eclipse.ide4edu.javaassignment.Activator;
+
+/**
+ * Creates the projects found in a directory or archive in a workspace,
+ * without a user interface. The import wizard and the batch importer both
+ * import through this class: it decides which projects can be imported,
+ * writes the contents of archived and copied projects into the workspace
+ * location before the projects are created, journals each step so an
+ * interrupted import can be resumed, and plans dry runs.
+ * <p>
+ * {@link #createProject(Source, IProgressMonitor)} may be called from
+ * several threads at the same time. Auto-build is suspended for bulk
+ * imports with a count shared by all imports of the workspace, see
+ * {@link #suspendAutoBuild(IWorkspace)}.
+ * </p>
+ */
+class ExistingProjectImporter {
+
+	/**
+	 * A project found in the source, with the way to reach its contents.
+	 */
+	static class Source {
+
+		final String name;
+
+		// the stamp of the source in the journal, see ImportJournal#begin
+		final String stamp;
+
+		// the .project file of a project of a directory
+		File projectFile;
+
+		// the index holding a project of an indexed archive
+		ArchiveIndex archive;
+
+		// the folder of the project in its archive
+		String archivePrefix;
+
+		// whether the contents are extracted by a pass over the whole
+		// archive before the project is created
+		boolean extracted;
+
+		// the description read from the source, or null to create the
+		// project from its name
+		IProjectDescription description;
+
+		/**
+		 * @param name
+		 * 		the name of the project
+		 * @param stamp
+		 * 		the stamp of the source in the journal, or <code>null</code>
+		 * 		if the import is not journaled
+		 */
+		Source(String name, String stamp) {
+			this.name = name;
+			this.stamp = stamp;
+		}
+	}
+
+	/**
+	 * The project can be imported.
+	 */
+	static final int IMPORT = 0;
+
+	/**
+	 * The project was imported by an earlier attempt from the same source
+	 * and did not change since.
+	 */
+	static final int IMPORTED = 1;
+
+	/**
+	 * A project of the same name exists in the workspace.
+	 */
+	static final int EXISTS = 2;
+
+	/**
+	 * The workspace location holds a folder of the name of a project whose
+	 * contents are written there.
+	 */
+	static final int LOCATION_EXISTS = 3;
+
+	// The bulk imports running in the workspace, see suspendAutoBuild
+	private static int autoBuildSuspensions;
+
+	// The auto-build setting before the first of them, until it is restored
+	private static Boolean suspendedAutoBuild;
+
+	private final IWorkspace workspace;
+
+	private final WorkspaceProjectIndex index;
+
+	private final boolean copy;
+
+	private ImportJournal journal;
+
+	private ContentStore store;
+
+	private boolean backgroundRefresh;
+
+	private FastProjectCopier copier;
+
+	/**
+	 * @param workspace
+	 * 		the workspace receiving the projects
+	 * @param index
+	 * 		the projects and folders of the workspace
+	 * @param copy
+	 * 		whether the projects of a directory are copied into the
+	 * 		workspace location instead of being imported from where they
+	 * 		are; archived projects are always written there
+	 */
+	ExistingProjectImporter(IWorkspace workspace, WorkspaceProjectIndex index,
+			boolean copy) {
+		this.workspace = workspace;
+		this.index = index;
+		this.copy = copy;
+	}
+
+	/**
+	 * Set the journal of the imports from the source.
+	 *
+	 * @param journal
+	 * 		the journal, or <code>null</code> if the import is not journaled
+	 */
+	void setJournal(ImportJournal journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * Set the store the written files are linked to, see
+	 * {@link ContentStore}.
+	 *
+	 * @param store
+	 * 		the store, or <code>null</code> to write every file
+	 */
+	void setContentStore(ContentStore store) {
+		this.store = store;
+	}
+
+	/**
+	 * Set whether projects imported from where they are leave the refresh
+	 * of their contents to the background. A bulk import must not, its
+	 * build has to see every file.
+	 *
+	 * @param backgroundRefresh
+	 */
+	void setBackgroundRefresh(boolean backgroundRefresh) {
+		this.backgroundRefresh = backgroundRefresh;
+	}
+
+	/**
+	 * Release the threads of the import.
+	 */
+	synchronized void dispose() {
+		if (copier != null) {
+			copier.dispose();
+			copier = null;
+		}
+	}
+
+	/**
+	 * Answer whether a project can be imported.
+	 *
+	 * @param source
+	 * @return {@link #IMPORT}, {@link #IMPORTED}, {@link #EXISTS} or
+	 * 	{@link #LOCATION_EXISTS}
+	 */
+	int getState(Source source) {
+		String name = source.name;
+		if (journal != null && journal.isPartial(name)) {
+			// left by an interrupted import, removed before the import
+			return IMPORT;
+		}
+		if (index.containsProject(name)) {
+			return journal != null && journal.isDone(name, source.stamp) ? IMPORTED
+					: EXISTS;
+		}
+		if (isWrittenOnDisk(source) && index.containsLocation(name)) {
+			return LOCATION_EXISTS;
+		}
+		return IMPORT;
+	}
+
+	private boolean isWrittenOnDisk(Source source) {
+		return source.projectFile == null || copy;
+	}
+
+	private File getTarget(Source source) {
+		return workspace.getRoot().getLocation().append(source.name).toFile();
+	}
+
+	/**
+	 * Remove what is left of the projects whose import from the source was
+	 * interrupted, so they are imported again.
+	 *
+	 * @param sources
+	 * 		the projects to import
+	 * @param monitor
+	 * @throws CoreException
+	 * 		if a project cannot be removed
+	 */
+	void removePartial(List<Source> sources, IProgressMonitor monitor)
+			throws CoreException {
+		monitor.beginTask("", sources.size()); //$NON-NLS-1$
+		try {
+			for (int i = 0; i < sources.size(); i++) {
+				String name = sources.get(i).name;
+				if (journal != null && journal.isPartial(name)) {
+					journal.removePartial(workspace, name,
+							new SubProgressMonitor(monitor, 1));
+				} else {
+					monitor.worked(1);
+				}
+			}
+		} catch (IOException e) {
+			throw newCoreException(e);
+		} finally {
+			monitor.done();
+		}
+	}
+
+	/**
+	 * Extract the projects of a streamed archive into their locations in
+	 * one forward pass, before they are created.
+	 *
+	 * @param archive
+	 * @param sources
+	 * 		the projects of the archive to import
+	 * @param monitor
+	 * @throws CoreException
+	 * 		if the extraction failed
+	 */
+	void extract(File archive, List<Source> sources, IProgressMonitor monitor)
+			throws CoreException {
+		monitor.beginTask(archive.getName(), IProgressMonitor.UNKNOWN);
+		try {
+			StreamingArchiveImporter.extract(archive, beginExtracted(sources),
+					store, monitor);
+		} catch (IOException e) {
+			throw newCoreException(e);
+		} finally {
+			monitor.done();
+		}
+	}
+
+	/**
+	 * Move the projects of an archive extracted into a staging folder into
+	 * their locations, before they are created.
+	 *
+	 * @param staging
+	 * 		the folder the archive was extracted to
+	 * @param sources
+	 * 		the projects of the archive to import
+	 * @param monitor
+	 * @throws CoreException
+	 * 		if a project could not be moved
+	 */
+	void move(File staging, List<Source> sources, IProgressMonitor monitor)
+			throws CoreException {
+		monitor.beginTask(staging.getName(), IProgressMonitor.UNKNOWN);
+		try {
+			StreamingArchiveImporter.move(staging, beginExtracted(sources),
+					monitor);
+		} catch (IOException e) {
+			throw newCoreException(e);
+		} finally {
+			monitor.done();
+		}
+	}
+
+	/**
+	 * Journal the beginning of the import of extracted projects.
+	 *
+	 * @return the location of each project, by its folder in the archive
+	 */
+	private Map<String, File> beginExtracted(List<Source> sources)
+			throws IOException {
+		Map<String, File> targets = new HashMap<String, File>();
+		for (int i = 0; i < sources.size(); i++) {
+			Source source = sources.get(i);
+			File target = getTarget(source);
+			begin(source, target);
+			targets.put(source.archivePrefix, target);
+		}
+		return targets;
+	}
+
+	/**
+	 * Write the contents of a project where needed, then create and open
+	 * the project. Runs on an import thread holding no scheduling rule; the
+	 * project is created under the rule of the workspace root and opened
+	 * under its own rule, so several projects can be written at the same
+	 * time.
+	 *
+	 * @param source
+	 * @param monitor
+	 * @return the project
+	 * @throws CoreException
+	 * 		if the project could not be written, created or opened
+	 */
+	IProject createProject(Source source, IProgressMonitor monitor)
+			throws CoreException {
+		final IProject project = workspace.getRoot().getProject(source.name);
+		final IProjectDescription description = getDescription(source);
+		// archived and copied projects are written to disk directly, where
+		// project.create finds their description file and the first open
+		// finds their contents
+		File copySource = source.archive == null && !source.extracted ? getCopySource(
+				project, description)
+				: null;
+		final boolean writtenOnDisk = source.archive != null
+				|| source.extracted || copySource != null;
+		File target = getTarget(source);
+		IResourceRuleFactory rules = workspace.getRuleFactory();
+		monitor.beginTask("", 100); //$NON-NLS-1$
+		try {
+			begin(source, writtenOnDisk ? target : null);
+			if (source.archive != null) {
+				ArchiveProjectExtractor.extract(source.archive,
+						source.archivePrefix, target, store,
+						new SubProgressMonitor(monitor, 60));
+				description.setLocation(null);
+			} else if (source.extracted) {
+				description.setLocation(null);
+			} else if (copySource != null) {
+				getCopier().copy(copySource, target,
+						new SubProgressMonitor(monitor, 60));
+			}
+			if (journal != null) {
+				journal.written(source.name);
+			}
+			workspace.run(new IWorkspaceRunnable() {
+				public void run(IProgressMonitor runMonitor)
+						throws CoreException {
+					project.create(description, runMonitor);
+				}
+			}, rules.createRule(project), IWorkspace.AVOID_UPDATE,
+					new SubProgressMonitor(monitor, 10));
+			workspace.run(new IWorkspaceRunnable() {
+				public void run(IProgressMonitor runMonitor)
+						throws CoreException {
+					// the first open refreshes the project in one pass
+					project.open(backgroundRefresh && !writtenOnDisk ? IResource.BACKGROUND_REFRESH
+							: IResource.NONE, runMonitor);
+				}
+			}, rules.modifyRule(project), IWorkspace.AVOID_UPDATE,
+					new SubProgressMonitor(monitor, 30));
+			if (journal != null) {
+				journal.done(source.name);
+			}
+		} catch (IOException e) {
+			throw newCoreException(e);
+		} finally {
+			monitor.done();
+		}
+		return project;
+	}
+
+	/**
+	 * Answer the description a project is created with, named after the
+	 * source.
+	 */
+	private IProjectDescription getDescription(Source source) {
+		IProjectDescription description = source.description;
+		if (description == null) {
+			// the project is created from its name
+			description = workspace.newProjectDescription(source.name);
+			if (source.projectFile != null
+					&& !isDefaultLocation(source.projectFile)) {
+				description.setLocation(new Path(source.projectFile
+						.getParent()));
+			}
+		} else {
+			description.setName(source.name);
+			if (source.projectFile != null
+					&& isDefaultLocation(source.projectFile)) {
+				description.setLocation(null);
+			}
+		}
+		return description;
+	}
+
+	private boolean isDefaultLocation(File projectFile) {
+		IPath location = workspace.getRoot().getLocation();
+		return location != null
+				&& location.toFile().equals(
+						projectFile.getParentFile().getParentFile());
+	}
+
+	/**
+	 * Answer the folder to copy the contents of a project of a directory
+	 * from, switching its description to the default location.
+	 *
+	 * @return the folder to copy, or <code>null</code> if the contents are
+	 * 	not copied
+	 * @throws CoreException
+	 * 		if the default location cannot be used
+	 */
+	private File getCopySource(IProject project,
+			IProjectDescription description) throws CoreException {
+		if (!copy) {
+			return null;
+		}
+		// a project in the workspace location has no location
+		URI locationURI = description.getLocationURI();
+		if (locationURI == null) {
+			return null;
+		}
+		IStatus result = workspace.validateProjectLocationURI(project,
+				locationURI);
+		if (!result.isOK()) {
+			throw new CoreException(result);
+		}
+		description.setLocationURI(null);
+		return new File(locationURI);
+	}
+
+	private synchronized FastProjectCopier getCopier() {
+		if (copier == null) {
+			copier = new FastProjectCopier(FastProjectCopier
+					.getDefaultParallelism());
+			copier.setContentStore(store);
+		}
+		return copier;
+	}
+
+	/**
+	 * Journal the beginning of the import of a project.
+	 *
+	 * @param target
+	 * 		the folder the import writes, or <code>null</code>
+	 */
+	private void begin(Source source, File target) throws IOException {
+		if (journal != null) {
+			journal.begin(source.name, source.stamp, target);
+		}
+	}
+
+	/**
+	 * Describe what importing a project would do, without changing the
+	 * workspace.
+	 *
+	 * @param source
+	 * @return String
+	 */
+	String getAction(Source source) {
+		File target = getTarget(source);
+		if (source.projectFile == null) {
+			return "extract to " + target; //$NON-NLS-1$
+		}
+		return copy ? "copy to " + target //$NON-NLS-1$
+				: "link " + source.projectFile.getParent(); //$NON-NLS-1$
+	}
+
+	/**
+	 * Measure the contents of a project, without changing the workspace.
+	 *
+	 * @param source
+	 * @return the bytes and the number of files, or <code>null</code> if
+	 * 	they are only known when the archive is extracted
+	 * @throws IOException
+	 */
+	long[] measure(Source source) throws IOException {
+		if (source.archive != null) {
+			long[] size = new long[2];
+			List<ArchiveIndex.Entry> entries = source.archive
+					.getEntries(source.archivePrefix);
+			for (int i = 0; i < entries.size(); i++) {
+				ArchiveIndex.Entry entry = entries.get(i);
+				if (!entry.folder) {
+					size[0] += entry.size;
+					size[1]++;
+				}
+			}
+			return size;
+		}
+		if (source.projectFile != null) {
+			return FastProjectCopier.measure(source.projectFile
+					.getParentFile());
+		}
+		return null;
+	}
+
+	private static CoreException newCoreException(IOException e) {
+		return new CoreException(new Status(IStatus.ERROR,
+				Activator.PLUGIN_ID, String.valueOf(e.getMessage()), e));
+	}
+
+	/**
+	 * Suspend auto-build for a bulk import. Imports may overlap, from
+	 * several wizards or a wizard and an application; the setting before
+	 * the first one is kept until the last one is over.
+	 *
+	 * @param workspace
+	 * @throws CoreException
+	 * 		if the workspace description cannot be changed
+	 */
+	static void suspendAutoBuild(IWorkspace workspace) throws CoreException {
+		synchronized (ExistingProjectImporter.class) {
+			if (autoBuildSuspensions == 0 && suspendedAutoBuild == null) {
+				suspendedAutoBuild = Boolean.valueOf(setAutoBuilding(
+						workspace, false));
+			}
+			autoBuildSuspensions++;
+		}
+	}
+
+	/**
+	 * End the suspension of auto-build for a bulk import. The caller builds
+	 * the workspace if this answers <code>true</code>, then calls
+	 * {@link #restoreAutoBuild(IWorkspace)} in any case; restoring the
+	 * setting after the build keeps the workspace from scheduling a build
+	 * of its own.
+	 *
+	 * @return boolean <code>true</code> if this was the last running bulk
+	 * 	import and auto-build was on before the first one; otherwise a
+	 * 	later import builds the projects of this one
+	 */
+	static boolean endAutoBuildSuspension() {
+		synchronized (ExistingProjectImporter.class) {
+			return --autoBuildSuspensions == 0
+					&& Boolean.TRUE.equals(suspendedAutoBuild);
+		}
+	}
+
+	/**
+	 * Restore the auto-build setting suspended for bulk imports, unless an
+	 * import started since the last one ended.
+	 *
+	 * @param workspace
+	 * @throws CoreException
+	 * 		if the workspace description cannot be changed
+	 */
+	static void restoreAutoBuild(IWorkspace workspace) throws CoreException {
+		synchronized (ExistingProjectImporter.class) {
+			if (autoBuildSuspensions == 0 && suspendedAutoBuild != null) {
+				setAutoBuilding(workspace, suspendedAutoBuild.booleanValue());
+				suspendedAutoBuild = null;
+			}
+		}
+	}
+
+	/**
+	 * Set the auto-build setting of a workspace.
+	 *
+	 * @return the setting before
+	 */
+	private static boolean setAutoBuilding(IWorkspace workspace,
+			boolean autoBuild) throws CoreException {
+		IWorkspaceDescription description = workspace.getDescription();
+		boolean autoBuilding = description.isAutoBuilding();
+		if (autoBuilding != autoBuild) {
+			description.setAutoBuilding(autoBuild);
+			workspace.setDescription(description);
+		}
+		return autoBuilding;
+	}
+}
@@ -0,0 +1,329 @@
+package org.eclipse.ide4edu.importWizard;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+/**
+ * Copies project trees on disk, copying the files of a tree concurrently
+ * with <code>FileChannel.transferTo</code>, which lets the operating system
+ * move the data without passing it through the Java heap. The workspace is
+ * told about the copied files afterwards with a single refresh, instead of
+ * creating every file through the resource layer.
+ * <p>
+ * One copier is shared by the projects of an import, so the number of
+ * files copied at the same time stays bounded however many projects are
+ * imported concurrently.
+ * </p>
+ */
+class FastProjectCopier {
+
+	/**
+	 * System property holding the number of files copied at the same time.
+	 */
+	static final String PARALLELISM_PROPERTY = "org.eclipse.ide4edu.importWizard.copyParallelism"; //$NON-NLS-1$
+
+	// copying is disk bound, more threads only add seeks
+	private static final int MAX_DEFAULT_PARALLELISM = 8;
+
+	private static final long POLL_INTERVAL = 100;
+
+	// some platforms fail to transfer more at once
+	private static final long TRANSFER_CHUNK = 8 * 1024 * 1024;
+
+	private final ExecutorService executor;
+
+	private volatile ContentStore store;
+
+	/**
+	 * Returns the copy parallelism configured through
+	 * {@link #PARALLELISM_PROPERTY}, or a default based on the number of
+	 * available processors.
+	 *
+	 * @return the number of copy threads, at least <code>1</code>
+	 */
+	static int getDefaultParallelism() {
+		int parallelism = Integer.getInteger(PARALLELISM_PROPERTY, 0)
+				.intValue();
+		if (parallelism > 0) {
+			return parallelism;
+		}
+		return Math.min(Runtime.getRuntime().availableProcessors() * 2,
+				MAX_DEFAULT_PARALLELISM);
+	}
+
+	/**
+	 * @param parallelism
+	 * 		the maximum number of files copied at the same time
+	 */
+	FastProjectCopier(int parallelism) {
+		int threads = Math.max(1, parallelism);
+		executor = new ThreadPoolExecutor(threads, threads, 1,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable,
+								"Assignment project copier"); //$NON-NLS-1$
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	/**
+	 * Link the copied files to the stored copies of their contents.
+	 *
+	 * @param store
+	 * 		the store, or <code>null</code> to copy the files
+	 */
+	void setContentStore(ContentStore store) {
+		this.store = store;
+	}
+
+	/**
+	 * Copy a directory tree. The target is deleted again if the copy fails
+	 * and the target did not exist before.
+	 *
+	 * @param source
+	 * 		the directory to copy
+	 * @param target
+	 * 		the directory receiving the copy
+	 * @param monitor
+	 * 		the monitor checked for cancellation
+	 * @return the number of bytes copied
+	 * @throws IOException
+	 * @throws OperationCanceledException
+	 * 		if the monitor was canceled
+	 */
+	long copy(File source, File target, IProgressMonitor monitor)
+			throws IOException {
+		boolean existed = target.exists();
+		List<Future<Long>> copies = new ArrayList<Future<Long>>();
+		boolean completed = false;
+		try {
+			copyDirectory(source, target, copies, new HashSet<String>(),
+					monitor);
+			long bytes = 0;
+			for (int i = 0; i < copies.size(); i++) {
+				bytes += waitFor(copies.get(i), monitor);
+			}
+			completed = true;
+			return bytes;
+		} finally {
+			if (!completed) {
+				for (int i = 0; i < copies.size(); i++) {
+					copies.get(i).cancel(false);
+				}
+				if (!existed) {
+					// let the copies still running finish before deleting
+					for (int i = 0; i < copies.size(); i++) {
+						try {
+							copies.get(i).get();
+						} catch (Exception e) {
+							// already failed or canceled
+						}
+					}
+					delete(target);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Create the target directory and submit the copies of the files of a
+	 * directory, walking the tree on the calling thread.
+	 */
+	private void copyDirectory(File source, File target,
+			List<Future<Long>> copies, Set<String> visited,
+			IProgressMonitor monitor) throws IOException {
+		// directories reached again through a symbolic link are skipped
+		if (!visited.add(source.getCanonicalPath())) {
+			return;
+		}
+		if (!target.isDirectory() && !target.mkdirs()) {
+			throw new IOException("Could not create " + target); //$NON-NLS-1$
+		}
+		File[] children = source.listFiles();
+		if (children == null) {
+			throw new IOException("Could not read " + source); //$NON-NLS-1$
+		}
+		for (int i = 0; i < children.length; i++) {
+			if (monitor.isCanceled()) {
+				throw new OperationCanceledException();
+			}
+			final File child = children[i];
+			final File childTarget = new File(target, child.getName());
+			if (child.isDirectory()) {
+				copyDirectory(child, childTarget, copies, visited, monitor);
+			} else if (child.isFile()) {
+				copies.add(executor.submit(new Callable<Long>() {
+					public Long call() throws IOException {
+						ContentStore contents = store;
+						return Long.valueOf(contents != null ? contents.copy(
+								child, childTarget) : copyFile(child,
+								childTarget));
+					}
+				}));
+			}
+		}
+	}
+
+	/**
+	 * Measure a directory tree the way {@link #copy} walks it.
+	 *
+	 * @param source
+	 * 		the directory
+	 * @return the number of bytes and the number of files of the tree
+	 * @throws IOException
+	 */
+	static long[] measure(File source) throws IOException {
+		long[] size = new long[2];
+		measure(source, size, new HashSet<String>());
+		return size;
+	}
+
+	private static void measure(File directory, long[] size,
+			Set<String> visited) throws IOException {
+		if (!visited.add(directory.getCanonicalPath())) {
+			return;
+		}
+		File[] children = directory.listFiles();
+		if (children == null) {
+			throw new IOException("Could not read " + directory); //$NON-NLS-1$
+		}
+		ImportProfile.countFiles(children.length);
+		for (int i = 0; i < children.length; i++) {
+			if (children[i].isDirectory()) {
+				measure(children[i], size, visited);
+			} else if (children[i].isFile()) {
+				size[0] += children[i].length();
+				size[1]++;
+			}
+		}
+	}
+
+	/**
+	 * Copy one file with channel transfers.
+	 *
+	 * @param source
+	 * @param target
+	 * @return the number of bytes copied
+	 * @throws IOException
+	 */
+	static long copyFile(File source, File target) throws IOException {
+		FileInputStream in = new FileInputStream(source);
+		try {
+			FileOutputStream out = new FileOutputStream(target);
+			try {
+				FileChannel inChannel = in.getChannel();
+				FileChannel outChannel = out.getChannel();
+				long size = inChannel.size();
+				long position = 0;
+				while (position < size) {
+					long count = inChannel.transferTo(position, Math.min(
+							TRANSFER_CHUNK, size - position), outChannel);
+					if (count <= 0) {
+						// the file was truncated while copying
+						break;
+					}
+					position += count;
+				}
+				ImportProfile.countBytes(position);
+				ImportProfile.countFiles(1);
+				return position;
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private long waitFor(Future<Long> copy, IProgressMonitor monitor)
+			throws IOException {
+		while (true) {
+			if (monitor.isCanceled()) {
+				throw new OperationCanceledException();
+			}
+			try {
+				return copy.get(POLL_INTERVAL, TimeUnit.MILLISECONDS)
+						.longValue();
+			} catch (TimeoutException e) {
+				// check the monitor again
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof IOException) {
+					throw (IOException) cause;
+				}
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				throw (Error) cause;
+			}
+		}
+	}
+
+	/**
+	 * Delete a file or directory tree, without following symbolic links to
+	 * directories.
+	 *
+	 * @param file
+	 */
+	static void delete(File file) {
+		try {
+			if (file.isDirectory() && !isLink(file)) {
+				File[] children = file.listFiles();
+				if (children != null) {
+					for (int i = 0; i < children.length; i++) {
+						delete(children[i]);
+					}
+				}
+			}
+		} catch (IOException e) {
+			// delete what can be deleted
+		}
+		file.delete();
+	}
+
+	private static boolean isLink(File file) throws IOException {
+		File absolute = file.getAbsoluteFile();
+		File parent = absolute.getParentFile();
+		if (parent == null) {
+			return false;
+		}
+		// a link resolves to another path than its canonical parent plus
+		// its name
+		return !new File(parent.getCanonicalFile(), absolute.getName())
+				.getCanonicalFile().equals(
+						new File(parent.getCanonicalFile(), absolute
+								.getName()));
+	}
+
+	/**
+	 * Stop the copy threads once the import is done.
+	 */
+	void dispose() {
+		executor.shutdown();
+	}
+}
@@ -0,0 +1,276 @@
+package org.eclipse.ide4edu.importWizard;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.List;
+
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.equinox.app.IApplication;
+import org.eclipse.equinox.app.IApplicationContext;
+
+/**
+ * Imports assignments into the workspace from the command line, for
+ * preloading the submissions of a class without opening the workbench:
+ *
+ * <pre>
+ * eclipse -nosplash -data &lt;workspace&gt;
+ *     -application org.eclipse.ide4edu.javaassignment.importAssignments
+ *     -source &lt;directory or archive&gt; [-mode copy|link]
+ *     [-parallelism &lt;n&gt;] [-summary &lt;file&gt;] [-dryrun]
+ *     [-sharedcontent]
+ * </pre>
+ *
+ * A JSON summary with the outcome and time of every project, and the time,
+ * bytes read, files visited and bytes allocated of every phase, is written
+ * to the summary file, or to the standard output. With
+ * <code>-dryrun</code> the projects are only found and planned, without
+ * changing the workspace. With <code>-sharedcontent</code> the files
+ * written into the workspace are read-only hard links to a store of their
+ * contents, shared between the projects, see {@link ContentStore}. The exit code is
+ * <code>0</code> when every project was imported or skipped,
+ * {@link #EXIT_FAILED} when some failed or were not run because the import
+ * was canceled, and {@link #EXIT_USAGE} when the arguments are wrong or the
+ * source cannot be read.
+ */
+public class ImportAssignmentsApplication implements IApplication {
+
+	/**
+	 * The exit code when some projects could not be imported, or were not
+	 * run.
+	 */
+	public static final Integer EXIT_FAILED = new Integer(1);
+
+	/**
+	 * The exit code when the arguments are wrong or the source cannot be
+	 * read.
+	 */
+	public static final Integer EXIT_USAGE = new Integer(2);
+
+	private static final String USAGE = "Usage: -source <directory or archive> [-mode copy|link] [-parallelism <n>] [-summary <file>] [-dryrun] [-sharedcontent]"; //$NON-NLS-1$
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.eclipse.equinox.app.IApplication#start(org.eclipse.equinox.app.IApplicationContext)
+	 */
+	public Object start(IApplicationContext context) throws Exception {
+		String[] args = (String[]) context.getArguments().get(
+				IApplicationContext.APPLICATION_ARGS);
+		String source = null;
+		String mode = "copy"; //$NON-NLS-1$
+		int parallelism = ParallelImportEngine.getDefaultParallelism();
+		String summary = null;
+		boolean dryRun = false;
+		boolean sharedContent = ContentStore.getDefaultSharedContent();
+		try {
+			for (int i = 0; args != null && i < args.length; i++) {
+				String arg = args[i];
+				if (arg.equals("-dryrun")) { //$NON-NLS-1$
+					dryRun = true;
+					continue;
+				}
+				if (arg.equals("-sharedcontent")) { //$NON-NLS-1$
+					sharedContent = true;
+					continue;
+				}
+				if (i + 1 == args.length) {
+					throw new IllegalArgumentException(arg);
+				}
+				if (arg.equals("-source")) { //$NON-NLS-1$
+					source = args[++i];
+				} else if (arg.equals("-mode")) { //$NON-NLS-1$
+					mode = args[++i];
+				} else if (arg.equals("-parallelism")) { //$NON-NLS-1$
+					parallelism = Integer.parseInt(args[++i]);
+				} else if (arg.equals("-summary")) { //$NON-NLS-1$
+					summary = args[++i];
+				} else {
+					throw new IllegalArgumentException(arg);
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			// also thrown for numbers that cannot be parsed
+			System.err.println(USAGE);
+			return EXIT_USAGE;
+		}
+		if (source == null
+				|| !(mode.equals("copy") || mode.equals("link"))) { //$NON-NLS-1$ //$NON-NLS-2$
+			System.err.println(USAGE);
+			return EXIT_USAGE;
+		}
+
+		AssignmentBatchImporter importer = new AssignmentBatchImporter(
+				ResourcesPlugin.getWorkspace(), new File(source), mode
+						.equals("copy"), parallelism); //$NON-NLS-1$
+		importer.setDryRun(dryRun);
+		importer.setSharedContent(sharedContent);
+		String error = null;
+		try {
+			importer.run(new NullProgressMonitor());
+		} catch (CoreException e) {
+			error = e.getStatus().getMessage();
+		}
+		writeSummary(importer, source, mode, parallelism, dryRun, error,
+				summary);
+		if (error != null) {
+			return EXIT_USAGE;
+		}
+		List<AssignmentBatchImporter.Result> results = importer.getResults();
+		for (int i = 0; i < results.size(); i++) {
+			String status = results.get(i).status;
+			if (AssignmentBatchImporter.Result.FAILED.equals(status)
+					|| AssignmentBatchImporter.Result.CANCELED.equals(status)) {
+				return EXIT_FAILED;
+			}
+		}
+		return EXIT_OK;
+	}
+
+	private void writeSummary(AssignmentBatchImporter importer,
+			String source, String mode, int parallelism, boolean dryRun,
+			String error, String summary) throws IOException {
+		PrintWriter out;
+		if (summary == null) {
+			out = new PrintWriter(new OutputStreamWriter(System.out, "UTF-8")); //$NON-NLS-1$
+		} else {
+			out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(
+					summary), "UTF-8")); //$NON-NLS-1$
+		}
+		try {
+			out.print("{\"source\":"); //$NON-NLS-1$
+			out.print(quote(source));
+			out.print(",\"mode\":"); //$NON-NLS-1$
+			out.print(quote(mode));
+			out.print(",\"parallelism\":"); //$NON-NLS-1$
+			out.print(parallelism);
+			out.print(",\"dryRun\":"); //$NON-NLS-1$
+			out.print(dryRun);
+			if (error != null) {
+				out.print(",\"error\":"); //$NON-NLS-1$
+				out.print(quote(error));
+			}
+			int[] counts = new int[4];
+			List<AssignmentBatchImporter.Result> results = importer
+					.getResults();
+			out.println(",\"projects\":["); //$NON-NLS-1$
+			for (int i = 0; i < results.size(); i++) {
+				AssignmentBatchImporter.Result result = results.get(i);
+				out.print(" {\"name\":"); //$NON-NLS-1$
+				out.print(quote(result.name));
+				out.print(",\"source\":"); //$NON-NLS-1$
+				out.print(quote(result.source));
+				out.print(",\"status\":"); //$NON-NLS-1$
+				out.print(quote(result.status));
+				out.print(",\"millis\":"); //$NON-NLS-1$
+				out.print(result.millis);
+				if (AssignmentBatchImporter.Result.PLANNED
+						.equals(result.status)) {
+					out.print(",\"bytes\":"); //$NON-NLS-1$
+					out.print(result.bytes);
+					out.print(",\"files\":"); //$NON-NLS-1$
+					out.print(result.files);
+				}
+				if (result.message != null) {
+					out.print(",\"message\":"); //$NON-NLS-1$
+					out.print(quote(result.message));
+				}
+				out.println(i + 1 < results.size() ? "}," : "}"); //$NON-NLS-1$ //$NON-NLS-2$
+				if (AssignmentBatchImporter.Result.IMPORTED
+						.equals(result.status)
+						|| AssignmentBatchImporter.Result.PLANNED
+								.equals(result.status)) {
+					counts[0]++;
+				} else if (AssignmentBatchImporter.Result.SKIPPED
+						.equals(result.status)) {
+					counts[1]++;
+				} else if (AssignmentBatchImporter.Result.CANCELED
+						.equals(result.status)) {
+					counts[3]++;
+				} else {
+					counts[2]++;
+				}
+			}
+			out.print(dryRun ? "],\"planned\":" : "],\"imported\":"); //$NON-NLS-1$ //$NON-NLS-2$
+			out.print(counts[0]);
+			out.print(",\"skipped\":"); //$NON-NLS-1$
+			out.print(counts[1]);
+			out.print(",\"failed\":"); //$NON-NLS-1$
+			out.print(counts[2]);
+			out.print(",\"canceled\":"); //$NON-NLS-1$
+			out.print(counts[3]);
+			ContentStore store = importer.getContentStore();
+			if (store != null) {
+				out.print(",\"linkedFiles\":"); //$NON-NLS-1$
+				out.print(store.getLinkedFiles());
+				out.print(",\"linkedBytes\":"); //$NON-NLS-1$
+				out.print(store.getLinkedBytes());
+			}
+			out.print(",\"phases\":{"); //$NON-NLS-1$
+			ImportProfile profile = importer.getProfile();
+			List<String> phases = profile.getPhases();
+			for (int i = 0; i < phases.size(); i++) {
+				String phase = phases.get(i);
+				out.println(i == 0 ? "" : ","); //$NON-NLS-1$ //$NON-NLS-2$
+				out.print(' ');
+				out.print(quote(phase));
+				out.print(":{\"millis\":"); //$NON-NLS-1$
+				out.print(profile.getDuration(phase));
+				out.print(",\"bytes\":"); //$NON-NLS-1$
+				out.print(profile.getBytes(phase));
+				out.print(",\"files\":"); //$NON-NLS-1$
+				out.print(profile.getFiles(phase));
+				out.print(",\"allocated\":"); //$NON-NLS-1$
+				out.print(profile.getAllocated(phase));
+				out.print('}');
+			}
+			out.println("}}"); //$NON-NLS-1$
+		} finally {
+			if (summary == null) {
+				out.flush();
+			} else {
+				out.close();
+			}
+		}
+	}
+
+	/**
+	 * Returns a string as a JSON string literal.
+	 */
+	private static String quote(String value) {
+		if (value == null) {
+			return "null"; //$NON-NLS-1$
+		}
+		StringBuffer buffer = new StringBuffer(value.length() + 2);
+		buffer.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				buffer.append('\\').append(c);
+			} else if (c < 0x20) {
+				String hex = Integer.toHexString(c);
+				buffer.append("\\u"); //$NON-NLS-1$
+				for (int j = hex.length(); j < 4; j++) {
+					buffer.append('0');
+				}
+				buffer.append(hex);
+			} else {
+				buffer.append(c);
+			}
+		}
+		return buffer.append('"').toString();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.eclipse.equinox.app.IApplication#stop()
+	 */
+	public void stop() {
+		// the import runs to its end
+	}
+}
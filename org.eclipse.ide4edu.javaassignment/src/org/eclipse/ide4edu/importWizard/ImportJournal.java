@@ -0,0 +1,428 @@
+package org.eclipse.ide4edu.importWizard;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.ide4edu.javaassignment.Activator;
+
+/**
+ * Records the progress of the imports from one source, so that an import
+ * that was canceled or interrupted by a crash can be run again. A project
+ * is journaled when its import begins, with the folder the import writes,
+ * and again when it is done.
+ * <p>
+ * Running the import again skips the projects that are done and whose
+ * source did not change since, and removes what is left of the projects
+ * that were begun but not done before importing them again. The journal
+ * is written through to the file system for every entry, so it survives
+ * the workbench; it is compacted when it is opened.
+ * </p>
+ * <p>
+ * The journal creates the folder an import writes when the import begins,
+ * with a marker file holding a token recorded in the journal; the marker
+ * is removed once the contents are written. Only a folder holding its
+ * marker is removed, never one that existed before or was replaced since,
+ * such as by a project the user created after a crash.
+ * </p>
+ */
+class ImportJournal {
+
+	private static final String BEGIN = "B"; //$NON-NLS-1$
+
+	private static final String DONE = "D"; //$NON-NLS-1$
+
+	private static final String ENCODING = "UTF-8"; //$NON-NLS-1$
+
+	/**
+	 * The name of the marker file identifying a folder created by the
+	 * journal.
+	 */
+	static final String MARKER = ".importJournal"; //$NON-NLS-1$
+
+	private static final SecureRandom TOKENS = new SecureRandom();
+
+	/**
+	 * The last entry of a project.
+	 */
+	private static class Entry {
+
+		boolean done;
+
+		String stamp;
+
+		// the folder written by the import, or null if the project was
+		// imported where it is
+		String target;
+
+		// the token of the marker in the target when the journal created
+		// it, or null if it existed before
+		String token;
+	}
+
+	private final File source;
+
+	private final File file;
+
+	private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+	private Writer writer;
+
+	/**
+	 * Open the journal of a source, reading its entries.
+	 *
+	 * @param source
+	 * 		the directory or archive imported from
+	 * @param file
+	 * 		the journal file
+	 * @throws IOException
+	 */
+	ImportJournal(File source, File file) throws IOException {
+		this.source = source;
+		this.file = file;
+		if (file.isFile()) {
+			read();
+		}
+		compact();
+	}
+
+	/**
+	 * Open the journal of a source in the state location of the plug-in.
+	 *
+	 * @param source
+	 * 		the directory or archive imported from
+	 * @return the journal, or <code>null</code> if the plug-in is not running
+	 * @throws IOException
+	 */
+	static ImportJournal open(File source) throws IOException {
+		Activator plugin = Activator.getDefault();
+		if (plugin == null) {
+			return null;
+		}
+		File folder = plugin.getStateLocation().append("journals").toFile(); //$NON-NLS-1$
+		if (!folder.isDirectory() && !folder.mkdirs()) {
+			throw new IOException("Could not create " + folder); //$NON-NLS-1$
+		}
+		String path = source.getAbsolutePath();
+		return new ImportJournal(source, new File(folder, source.getName()
+				+ '-' + Integer.toHexString(path.hashCode()) + ".journal")); //$NON-NLS-1$
+	}
+
+	/**
+	 * Returns a stamp telling whether a file changed.
+	 *
+	 * @param file
+	 * @return String
+	 */
+	static String getStamp(File file) {
+		return file.length() + "-" + file.lastModified(); //$NON-NLS-1$
+	}
+
+	/**
+	 * Returns the source this journal records the imports of.
+	 *
+	 * @return File
+	 */
+	File getSource() {
+		return source;
+	}
+
+	/**
+	 * Returns whether the import of a project was begun but not done.
+	 *
+	 * @param name
+	 * 		the name of the project
+	 * @return boolean
+	 */
+	synchronized boolean isPartial(String name) {
+		Entry entry = entries.get(name);
+		return entry != null && !entry.done;
+	}
+
+	/**
+	 * Returns whether a project was imported from a source with the stamp.
+	 *
+	 * @param name
+	 * 		the name of the project
+	 * @param stamp
+	 * 		the stamp of the source of the project
+	 * @return boolean
+	 */
+	synchronized boolean isDone(String name, String stamp) {
+		Entry entry = entries.get(name);
+		return entry != null && entry.done && entry.stamp.equals(stamp);
+	}
+
+	/**
+	 * Returns the folder written by the partial import of a project, if it
+	 * is still the folder the journal created.
+	 *
+	 * @param name
+	 * 		the name of the project
+	 * @return the folder, or <code>null</code> if the import did not create
+	 * 	one or it was replaced
+	 */
+	synchronized File getTarget(String name) {
+		Entry entry = entries.get(name);
+		if (entry == null || entry.target == null || entry.token == null) {
+			return null;
+		}
+		File target = new File(entry.target);
+		return entry.token.equals(readMarker(target)) ? target : null;
+	}
+
+	/**
+	 * Record that the import of a project begins, creating the folder it
+	 * writes with its marker unless it exists.
+	 *
+	 * @param name
+	 * 		the name of the project
+	 * @param stamp
+	 * 		the stamp of the source of the project
+	 * @param target
+	 * 		the folder the import writes, or <code>null</code>
+	 * @throws IOException
+	 * 		if the folder cannot be created
+	 */
+	synchronized void begin(String name, String stamp, File target)
+			throws IOException {
+		Entry entry = new Entry();
+		entry.stamp = stamp;
+		if (target != null) {
+			entry.target = target.getAbsolutePath();
+			if (!target.exists()) {
+				if (!target.mkdirs()) {
+					throw new IOException("Could not create " + target); //$NON-NLS-1$
+				}
+				entry.token = Long.toHexString(TOKENS.nextLong());
+				writeMarker(target, entry.token);
+			}
+		}
+		entries.put(name, entry);
+		append(BEGIN, name, entry);
+	}
+
+	/**
+	 * Remove the marker from the folder of a project once its contents are
+	 * written, before the project is created, so the project does not hold
+	 * it. The folder is no longer removed after that.
+	 *
+	 * @param name
+	 * 		the name of the project
+	 * @throws IOException
+	 * 		if the marker cannot be removed
+	 */
+	synchronized void written(String name) throws IOException {
+		Entry entry = entries.get(name);
+		if (entry == null || entry.token == null) {
+			return;
+		}
+		File marker = new File(entry.target, MARKER);
+		if (marker.exists() && !marker.delete()) {
+			throw new IOException("Could not delete " + marker); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Record that the import of a project is done.
+	 *
+	 * @param name
+	 * 		the name of the project
+	 * @throws IOException
+	 */
+	synchronized void done(String name) throws IOException {
+		Entry entry = entries.get(name);
+		if (entry == null) {
+			return;
+		}
+		entry.done = true;
+		append(DONE, name, entry);
+	}
+
+	/**
+	 * Forget a project whose partial import was removed.
+	 *
+	 * @param name
+	 * 		the name of the project
+	 * @throws IOException
+	 */
+	synchronized void remove(String name) throws IOException {
+		if (entries.remove(name) != null) {
+			// an entry with no stamp removes the project on reading
+			writer.write(DONE + '\t' + encode(name) + "\t\t\t\n"); //$NON-NLS-1$
+			writer.flush();
+		}
+	}
+
+	/**
+	 * Remove what is left of the partial import of a project: the project,
+	 * keeping the contents where it was imported from, and the folder the
+	 * import wrote in the workspace location if it is still the one the
+	 * journal created.
+	 *
+	 * @param workspace
+	 * @param name
+	 * 		the name of the project
+	 * @param monitor
+	 * @throws CoreException
+	 * 		if the project cannot be deleted
+	 * @throws IOException
+	 */
+	void removePartial(IWorkspace workspace, String name,
+			IProgressMonitor monitor) throws CoreException, IOException {
+		IProject project = workspace.getRoot().getProject(name);
+		if (project.exists()) {
+			project.delete(IResource.NEVER_DELETE_PROJECT_CONTENT
+					| IResource.FORCE, monitor);
+		}
+		File target = getTarget(name);
+		IPath root = workspace.getRoot().getLocation();
+		// only folders of projects in the workspace location are deleted
+		if (target != null && root != null
+				&& root.toFile().equals(target.getParentFile())) {
+			FastProjectCopier.delete(target);
+		}
+		remove(name);
+	}
+
+	/**
+	 * Close the journal file.
+	 */
+	synchronized void close() {
+		try {
+			writer.close();
+		} catch (IOException e) {
+			// the entries were flushed
+		}
+	}
+
+	private void append(String kind, String name, Entry entry)
+			throws IOException {
+		writer.write(kind + '\t' + encode(name) + '\t' + encode(entry.stamp)
+				+ '\t' + (entry.target == null ? "" : encode(entry.target)) //$NON-NLS-1$
+				+ '\t' + (entry.token == null ? "" : encode(entry.token)) //$NON-NLS-1$
+				+ '\n');
+		// the entry must survive a crash of the workbench
+		writer.flush();
+	}
+
+	private void read() throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(file), ENCODING));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split("\t", -1); //$NON-NLS-1$
+				if (fields.length != 5) {
+					// the line written when the workbench crashed
+					continue;
+				}
+				try {
+					String name = decode(fields[1]);
+					if (fields[2].length() == 0) {
+						entries.remove(name);
+						continue;
+					}
+					Entry entry = new Entry();
+					entry.done = DONE.equals(fields[0]);
+					entry.stamp = decode(fields[2]);
+					entry.target = fields[3].length() == 0 ? null
+							: decode(fields[3]);
+					entry.token = fields[4].length() == 0 ? null
+							: decode(fields[4]);
+					entries.put(name, entry);
+				} catch (IllegalArgumentException e) {
+					// a line cut short by a crash
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Rewrite the journal with the last entry of each project, and open it
+	 * for appending.
+	 */
+	private void compact() throws IOException {
+		File compacted = new File(file.getPath() + ".new"); //$NON-NLS-1$
+		writer = new OutputStreamWriter(new FileOutputStream(compacted),
+				ENCODING);
+		try {
+			Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet()
+					.iterator();
+			while (iterator.hasNext()) {
+				Map.Entry<String, Entry> entry = iterator.next();
+				append(entry.getValue().done ? DONE : BEGIN, entry.getKey(),
+						entry.getValue());
+			}
+		} finally {
+			writer.close();
+		}
+		// replaced at once where the platform allows it
+		if (!compacted.renameTo(file)
+				&& !(file.delete() && compacted.renameTo(file))) {
+			throw new IOException("Could not write " + file); //$NON-NLS-1$
+		}
+		writer = new OutputStreamWriter(new FileOutputStream(file, true),
+				ENCODING);
+	}
+
+	private static void writeMarker(File folder, String token)
+			throws IOException {
+		Writer marker = new OutputStreamWriter(new FileOutputStream(new File(
+				folder, MARKER)), ENCODING);
+		try {
+			marker.write(token);
+		} finally {
+			marker.close();
+		}
+	}
+
+	/**
+	 * Returns the token of the marker of a folder, or <code>null</code> if
+	 * it has none.
+	 */
+	private static String readMarker(File folder) {
+		File file = new File(folder, MARKER);
+		if (!file.isFile()) {
+			return null;
+		}
+		try {
+			BufferedReader marker = new BufferedReader(new InputStreamReader(
+					new FileInputStream(file), ENCODING));
+			try {
+				return marker.readLine();
+			} finally {
+				marker.close();
+			}
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private static String encode(String value) throws IOException {
+		return URLEncoder.encode(value, ENCODING);
+	}
+
+	private static String decode(String value) throws IOException {
+		return URLDecoder.decode(value, ENCODING);
+	}
+}
@@ -0,0 +1,401 @@
+package org.eclipse.ide4edu.importWizard;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.ide4edu.javaassignment.Activator;
+
+/**
+ * Measures the phases of an import, so the time spent creating projects
+ * can be told apart from the time spent refreshing and building them. The
+ * phases of an import may end on another thread than the one they began on,
+ * so the methods are synchronized.
+ * <p>
+ * Besides the wall-clock time, each phase counts the bytes read, the files
+ * visited and the bytes allocated. The counters are fed by the import code
+ * through the static methods of this class, which report to the profile
+ * attached to the calling thread with {@link #attach()}; threads started by
+ * that thread report to the same profile. Work done on worker threads can
+ * be measured in a {@link Section}, whose time is summed over the threads.
+ * </p>
+ */
+class ImportProfile {
+
+	/**
+	 * Measures the work of one thread, such as the import of one project on
+	 * a worker thread. The sections of the same name are summed.
+	 */
+	static class Section {
+
+		private final ImportProfile profile;
+
+		private final String name;
+
+		private final Section outer;
+
+		private final long start;
+
+		private final long allocation;
+
+		private long bytes;
+
+		private long files;
+
+		Section(ImportProfile profile, String name, Section outer) {
+			this.profile = profile;
+			this.name = name;
+			this.outer = outer;
+			this.allocation = getAllocatedBytes();
+			this.start = System.nanoTime();
+		}
+
+		/**
+		 * End the section, adding its counters to the profile.
+		 */
+		void stop() {
+			long nanos = System.nanoTime() - start;
+			SECTION.set(outer);
+			profile.add(name, nanos, bytes, files, allocation < 0 ? 0
+					: getAllocatedBytes() - allocation);
+		}
+	}
+
+	/**
+	 * The counters of one phase.
+	 */
+	private static class Phase {
+
+		long nanos;
+
+		long bytes;
+
+		long files;
+
+		long allocated;
+	}
+
+	private static final InheritableThreadLocal<ImportProfile> CURRENT = new InheritableThreadLocal<ImportProfile>();
+
+	private static final ThreadLocal<Section> SECTION = new ThreadLocal<Section>();
+
+	// com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long), if the
+	// virtual machine has it
+	private static final Method ALLOCATED_BYTES = getAllocatedBytesMethod();
+
+	private final String label;
+
+	private final Map<String, Phase> phases = new LinkedHashMap<String, Phase>();
+
+	private String phase;
+
+	private long phaseStart;
+
+	private Thread phaseThread;
+
+	private long phaseAllocation;
+
+	/**
+	 * @param label
+	 * 		describes the import in the log
+	 */
+	ImportProfile(String label) {
+		this.label = label;
+	}
+
+	private static Method getAllocatedBytesMethod() {
+		try {
+			Class type = Class.forName("com.sun.management.ThreadMXBean"); //$NON-NLS-1$
+			if (type.isInstance(ManagementFactory.getThreadMXBean())) {
+				return type.getMethod("getThreadAllocatedBytes", //$NON-NLS-1$
+						new Class[] { long.class });
+			}
+		} catch (Exception e) {
+			// allocations are not measured
+		} catch (LinkageError e) {
+			// allocations are not measured
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the number of bytes allocated by the calling thread so far.
+	 *
+	 * @return the number of bytes, or <code>-1</code> if the virtual machine
+	 * 	does not measure allocations
+	 */
+	static long getAllocatedBytes() {
+		if (ALLOCATED_BYTES == null) {
+			return -1;
+		}
+		try {
+			return ((Long) ALLOCATED_BYTES.invoke(ManagementFactory
+					.getThreadMXBean(), new Object[] { Long.valueOf(Thread
+					.currentThread().getId()) })).longValue();
+		} catch (Exception e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Report the work of the calling thread, and of the threads it starts
+	 * from now on, to this profile.
+	 */
+	void attach() {
+		CURRENT.set(this);
+	}
+
+	/**
+	 * Stop reporting the work of the calling thread.
+	 */
+	static void detach() {
+		CURRENT.remove();
+		SECTION.remove();
+	}
+
+	/**
+	 * Start measuring the work of the calling thread in a section of the
+	 * profile attached to it.
+	 *
+	 * @param name
+	 * 		the name of the section
+	 * @return the section, or <code>null</code> if no profile is attached
+	 */
+	static Section start(String name) {
+		ImportProfile profile = CURRENT.get();
+		if (profile == null) {
+			return null;
+		}
+		Section section = new Section(profile, name, SECTION.get());
+		SECTION.set(section);
+		return section;
+	}
+
+	/**
+	 * End a section returned by {@link #start(String)}.
+	 *
+	 * @param section
+	 * 		the section, or <code>null</code>
+	 */
+	static void stop(Section section) {
+		if (section != null) {
+			section.stop();
+		}
+	}
+
+	/**
+	 * Count bytes read by the calling thread.
+	 *
+	 * @param bytes
+	 */
+	static void countBytes(long bytes) {
+		Section section = SECTION.get();
+		if (section != null) {
+			section.bytes += bytes;
+			return;
+		}
+		ImportProfile profile = CURRENT.get();
+		if (profile != null) {
+			profile.addToPhase(bytes, 0);
+		}
+	}
+
+	/**
+	 * Count files visited by the calling thread.
+	 *
+	 * @param files
+	 */
+	static void countFiles(long files) {
+		Section section = SECTION.get();
+		if (section != null) {
+			section.files += files;
+			return;
+		}
+		ImportProfile profile = CURRENT.get();
+		if (profile != null) {
+			profile.addToPhase(0, files);
+		}
+	}
+
+	private synchronized void addToPhase(long bytes, long files) {
+		if (phase != null) {
+			Phase counters = getPhase(phase);
+			counters.bytes += bytes;
+			counters.files += files;
+		}
+	}
+
+	private synchronized void add(String name, long nanos, long bytes,
+			long files, long allocated) {
+		Phase counters = getPhase(name);
+		counters.nanos += nanos;
+		counters.bytes += bytes;
+		counters.files += files;
+		counters.allocated += allocated;
+	}
+
+	private Phase getPhase(String name) {
+		Phase counters = phases.get(name);
+		if (counters == null) {
+			counters = new Phase();
+			phases.put(name, counters);
+		}
+		return counters;
+	}
+
+	/**
+	 * End the current phase, if any, and begin a new one.
+	 *
+	 * @param name
+	 * 		the name of the phase
+	 */
+	synchronized void begin(String name) {
+		end();
+		phase = name;
+		getPhase(name);
+		phaseThread = Thread.currentThread();
+		phaseAllocation = getAllocatedBytes();
+		phaseStart = System.nanoTime();
+	}
+
+	/**
+	 * End the current phase. The allocations of the phase are those of the
+	 * thread that began it, if it also ends it.
+	 */
+	synchronized void end() {
+		if (phase != null) {
+			long allocated = 0;
+			if (phaseThread == Thread.currentThread() && phaseAllocation >= 0) {
+				allocated = getAllocatedBytes() - phaseAllocation;
+			}
+			add(phase, System.nanoTime() - phaseStart, 0, 0, allocated);
+			phase = null;
+			phaseThread = null;
+		}
+	}
+
+	/**
+	 * Returns the total time of the phases or sections with a name, in
+	 * milliseconds.
+	 *
+	 * @param name
+	 * @return long
+	 */
+	synchronized long getDuration(String name) {
+		Phase counters = phases.get(name);
+		return counters == null ? 0 : counters.nanos / 1000000;
+	}
+
+	/**
+	 * Returns the bytes read in the phases or sections with a name.
+	 *
+	 * @param name
+	 * @return long
+	 */
+	synchronized long getBytes(String name) {
+		Phase counters = phases.get(name);
+		return counters == null ? 0 : counters.bytes;
+	}
+
+	/**
+	 * Returns the files visited in the phases or sections with a name.
+	 *
+	 * @param name
+	 * @return long
+	 */
+	synchronized long getFiles(String name) {
+		Phase counters = phases.get(name);
+		return counters == null ? 0 : counters.files;
+	}
+
+	/**
+	 * Returns the bytes allocated in the phases or sections with a name, or
+	 * <code>-1</code> if the virtual machine does not measure allocations.
+	 *
+	 * @param name
+	 * @return long
+	 */
+	synchronized long getAllocated(String name) {
+		if (ALLOCATED_BYTES == null) {
+			return -1;
+		}
+		Phase counters = phases.get(name);
+		return counters == null ? 0 : counters.allocated;
+	}
+
+	/**
+	 * Returns the names of the phases and sections, in the order they first
+	 * began.
+	 *
+	 * @return List of String
+	 */
+	synchronized List<String> getPhases() {
+		return new ArrayList<String>(phases.keySet());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	public synchronized String toString() {
+		StringBuffer buffer = new StringBuffer(label);
+		Iterator<String> names = phases.keySet().iterator();
+		for (int i = 0; names.hasNext(); i++) {
+			String name = names.next();
+			buffer.append(i == 0 ? ": " : ", "); //$NON-NLS-1$ //$NON-NLS-2$
+			buffer.append(name).append(' ');
+			appendCounters(buffer, name);
+		}
+		return buffer.toString();
+	}
+
+	/**
+	 * Returns the counters of every phase and section, one per line.
+	 *
+	 * @return String
+	 */
+	synchronized String toReport() {
+		StringBuffer buffer = new StringBuffer(label);
+		Iterator<String> names = phases.keySet().iterator();
+		while (names.hasNext()) {
+			String name = names.next();
+			buffer.append("\n  ").append(name).append(": "); //$NON-NLS-1$ //$NON-NLS-2$
+			appendCounters(buffer, name);
+		}
+		return buffer.toString();
+	}
+
+	private void appendCounters(StringBuffer buffer, String name) {
+		Phase counters = phases.get(name);
+		buffer.append(counters.nanos / 1000000).append("ms"); //$NON-NLS-1$
+		if (counters.bytes > 0) {
+			buffer.append(' ').append(counters.bytes).append(" bytes read"); //$NON-NLS-1$
+		}
+		if (counters.files > 0) {
+			buffer.append(' ').append(counters.files).append(" files"); //$NON-NLS-1$
+		}
+		if (ALLOCATED_BYTES != null) {
+			buffer.append(' ').append(counters.allocated).append(
+					" bytes allocated"); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * End the current phase and write the timings to the plug-in log.
+	 */
+	void log() {
+		end();
+		Activator plugin = Activator.getDefault();
+		if (plugin != null) {
+			plugin.getLog().log(
+					new Status(IStatus.INFO, Activator.PLUGIN_ID, toString()));
+		}
+	}
+}
@@ -0,0 +1,894 @@
+package org.eclipse.ide4edu.importWizard;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a gzip file made of several concatenated members, inflating the
+ * members on a pool of threads and returning their data in order. Archives
+ * written by <code>bgzip</code>, or by concatenating compressed parts, are
+ * inflated at a rate that grows with the number of cores, while plain
+ * gzip inflation is limited to one.
+ * <p>
+ * The member boundaries are taken from the block size field of BGZF headers
+ * when the first header has one. Otherwise the first member is inflated on
+ * the reading thread as a stream, as by {@link GZIPInputStream}, so an
+ * ordinary gzip file is read once and never scanned. Only when its trailer
+ * is followed by more data is the rest of the file scanned: every position
+ * holding a gzip header signature is a candidate member, inflated
+ * speculatively; a candidate is only used when the previous member ends
+ * exactly where it starts, so signatures occurring inside compressed data
+ * are discarded.
+ * </p>
+ * <p>
+ * Members are inflated into memory up to {@link #MAX_MEMBER_BUFFER} bytes.
+ * Larger members are inflated on the reading thread as a stream, so memory
+ * use stays bounded.
+ * </p>
+ * <p>
+ * Only the members are inflated in parallel. A file of a single member,
+ * which is what <code>gzip</code>, <code>tar -z</code> and the default mode
+ * of <code>pigz</code> write, is inflated serially on the reading thread at
+ * the speed of one core: the blocks of a deflate stream refer back to the
+ * data of earlier blocks and do not mark where they start, so such a
+ * stream cannot be split. Archives meant to be imported quickly should be
+ * compressed with <code>bgzip</code>.
+ * </p>
+ */
+class ParallelGzipInputStream extends InputStream {
+
+	/**
+	 * System property holding the number of threads inflating gzip members.
+	 */
+	static final String PARALLELISM_PROPERTY = "org.eclipse.ide4edu.importWizard.inflateParallelism"; //$NON-NLS-1$
+
+	private static final int MAX_MEMBER_BUFFER = 4 * 1024 * 1024;
+
+	private static final int INPUT_BUFFER_SIZE = 64 * 1024;
+
+	private static final int SCAN_BUFFER_SIZE = 1024 * 1024;
+
+	private static final int FLAG_HCRC = 2;
+
+	private static final int FLAG_EXTRA = 4;
+
+	private static final int FLAG_NAME = 8;
+
+	private static final int FLAG_COMMENT = 16;
+
+	private static final int FLAG_RESERVED = 0xe0;
+
+	/**
+	 * The header of a gzip member.
+	 */
+	private static class Header {
+
+		/**
+		 * The offset of the compressed data.
+		 */
+		long dataStart;
+
+		/**
+		 * The total size of the member from a BGZF header, or <code>-1</code>.
+		 */
+		long blockSize = -1;
+
+		/**
+		 * Read the header of a member.
+		 *
+		 * @return the header, or <code>null</code> if there is no valid
+		 * 	header at the offset
+		 */
+		static Header read(FileChannel channel, long start) throws IOException {
+			byte[] fixed = new byte[10];
+			if (!readFully(channel, start, fixed, fixed.length)) {
+				return null;
+			}
+			int flags = fixed[3] & 0xff;
+			if (!isSignature(fixed, 0) || (flags & FLAG_RESERVED) != 0) {
+				return null;
+			}
+			Header header = new Header();
+			long position = start + fixed.length;
+			if ((flags & FLAG_EXTRA) != 0) {
+				byte[] length = new byte[2];
+				if (!readFully(channel, position, length, 2)) {
+					return null;
+				}
+				byte[] extra = new byte[readShort(length, 0)];
+				position += 2;
+				if (!readFully(channel, position, extra, extra.length)) {
+					return null;
+				}
+				position += extra.length;
+				header.blockSize = getBlockSize(extra);
+			}
+			if ((flags & FLAG_NAME) != 0) {
+				position = skipString(channel, position);
+			}
+			if (position >= 0 && (flags & FLAG_COMMENT) != 0) {
+				position = skipString(channel, position);
+			}
+			if (position < 0) {
+				return null;
+			}
+			if ((flags & FLAG_HCRC) != 0) {
+				position += 2;
+			}
+			header.dataStart = position;
+			return header;
+		}
+
+		/**
+		 * Returns the member size held by a BGZF "BC" subfield, or
+		 * <code>-1</code>.
+		 */
+		private static long getBlockSize(byte[] extra) {
+			int offset = 0;
+			while (offset + 4 <= extra.length) {
+				int length = readShort(extra, offset + 2);
+				if (extra[offset] == 'B' && extra[offset + 1] == 'C'
+						&& length == 2 && offset + 6 <= extra.length) {
+					return readShort(extra, offset + 4) + 1;
+				}
+				offset += 4 + length;
+			}
+			return -1;
+		}
+
+		private static long skipString(FileChannel channel, long position)
+				throws IOException {
+			byte[] buffer = new byte[256];
+			while (true) {
+				int read = channel.read(ByteBuffer.wrap(buffer), position);
+				if (read <= 0) {
+					return -1;
+				}
+				for (int i = 0; i < read; i++) {
+					if (buffer[i] == 0) {
+						return position + i + 1;
+					}
+				}
+				position += read;
+			}
+		}
+	}
+
+	/**
+	 * Inflates one member, reading the compressed data with positional
+	 * reads.
+	 */
+	private static class MemberReader {
+
+		private final FileChannel channel;
+
+		private final Inflater inflater = new Inflater(true);
+
+		private final CRC32 crc = new CRC32();
+
+		private final byte[] input = new byte[INPUT_BUFFER_SIZE];
+
+		private final long dataStart;
+
+		private long position;
+
+		private long end = -1;
+
+		/**
+		 * @throws IOException
+		 * 		if there is no valid member header at start
+		 */
+		MemberReader(FileChannel channel, long start) throws IOException {
+			this.channel = channel;
+			Header header = Header.read(channel, start);
+			if (header == null) {
+				inflater.end();
+				throw new IOException("Not in GZIP format"); //$NON-NLS-1$
+			}
+			dataStart = header.dataStart;
+			position = dataStart;
+		}
+
+		/**
+		 * Read inflated data.
+		 *
+		 * @return the number of bytes read, or <code>-1</code> at the end of
+		 * 	the member
+		 */
+		int read(byte[] b, int off, int len) throws IOException {
+			if (end >= 0) {
+				return -1;
+			}
+			if (len == 0) {
+				return 0;
+			}
+			while (true) {
+				int count;
+				try {
+					count = inflater.inflate(b, off, len);
+				} catch (DataFormatException e) {
+					IOException exception = new IOException(e.getMessage());
+					exception.initCause(e);
+					throw exception;
+				}
+				if (count > 0) {
+					crc.update(b, off, count);
+					return count;
+				}
+				if (inflater.finished()) {
+					readTrailer();
+					return -1;
+				}
+				if (inflater.needsDictionary()) {
+					throw new IOException("Corrupt GZIP member"); //$NON-NLS-1$
+				}
+				if (inflater.needsInput()) {
+					int read = channel.read(ByteBuffer.wrap(input), position);
+					if (read <= 0) {
+						throw new EOFException(
+								"Unexpected end of GZIP member"); //$NON-NLS-1$
+					}
+					position += read;
+					inflater.setInput(input, 0, read);
+				}
+			}
+		}
+
+		private void readTrailer() throws IOException {
+			long dataEnd = dataStart + inflater.getBytesRead();
+			byte[] trailer = new byte[8];
+			if (!readFully(channel, dataEnd, trailer, trailer.length)) {
+				throw new EOFException("Unexpected end of GZIP member"); //$NON-NLS-1$
+			}
+			if (readInt(trailer, 0) != (int) crc.getValue()
+					|| readInt(trailer, 4) != (int) inflater.getBytesWritten()) {
+				throw new IOException("Corrupt GZIP trailer"); //$NON-NLS-1$
+			}
+			end = dataEnd + trailer.length;
+			inflater.end();
+		}
+
+		/**
+		 * Returns the offset following the member once it has been read.
+		 *
+		 * @return long
+		 */
+		long getEnd() {
+			return end;
+		}
+
+		void close() {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * The result of inflating a candidate member.
+	 */
+	private static class Member {
+
+		final byte[] data;
+
+		final int length;
+
+		final long end;
+
+		/**
+		 * Whether the member was too large to be held in memory and must be
+		 * streamed instead.
+		 */
+		final boolean oversized;
+
+		Member(byte[] data, int length, long end, boolean oversized) {
+			this.data = data;
+			this.length = length;
+			this.end = end;
+			this.oversized = oversized;
+		}
+	}
+
+	/**
+	 * A candidate member queued for the reading thread.
+	 */
+	private static class Pending {
+
+		final long offset;
+
+		final Future<Member> future;
+
+		final IOException error;
+
+		Pending(long offset, Future<Member> future, IOException error) {
+			this.offset = offset;
+			this.future = future;
+			this.error = error;
+		}
+	}
+
+	private static final Pending END = new Pending(-1, null, null);
+
+	/**
+	 * The blocks of a BGZF file, by their offsets in the file and in the
+	 * inflated data.
+	 */
+	static class BlockTable {
+
+		private final long[] starts;
+
+		private final long[] dataStarts;
+
+		BlockTable(List<long[]> blocks) {
+			starts = new long[blocks.size()];
+			dataStarts = new long[blocks.size()];
+			for (int i = 0; i < starts.length; i++) {
+				long[] block = blocks.get(i);
+				starts[i] = block[0];
+				dataStarts[i] = block[1];
+			}
+		}
+
+		/**
+		 * Returns the block holding an offset of the inflated data.
+		 *
+		 * @param dataOffset
+		 * @return the index of the block
+		 */
+		int find(long dataOffset) {
+			int index = Arrays.binarySearch(dataStarts, dataOffset);
+			if (index < 0) {
+				index = -index - 2;
+			}
+			// empty blocks start where the next one does, take the last
+			while (index + 1 < dataStarts.length
+					&& dataStarts[index + 1] == dataStarts[index]) {
+				index++;
+			}
+			return Math.max(0, index);
+		}
+
+		/**
+		 * Returns the offset of a block in the file.
+		 *
+		 * @param index
+		 * @return long
+		 */
+		long getStart(int index) {
+			return starts[index];
+		}
+
+		/**
+		 * Returns the offset of the inflated data of a block.
+		 *
+		 * @param index
+		 * @return long
+		 */
+		long getDataStart(int index) {
+			return dataStarts[index];
+		}
+	}
+
+	private final RandomAccessFile file;
+
+	private final FileChannel channel;
+
+	private final long length;
+
+	private final ExecutorService executor;
+
+	private final BlockingQueue<Pending> queue;
+
+	// started once the data is known to hold several members
+	private Thread scanner;
+
+	private volatile boolean closed;
+
+	// offset where the next member must start
+	private long expected;
+
+	private Member current;
+
+	private int currentPosition;
+
+	private MemberReader streamed;
+
+	private boolean finished;
+
+	/**
+	 * Returns the inflater parallelism configured through
+	 * {@link #PARALLELISM_PROPERTY}, or the number of available processors.
+	 *
+	 * @return the number of inflater threads, at least <code>1</code>
+	 */
+	static int getDefaultParallelism() {
+		int parallelism = Integer.getInteger(PARALLELISM_PROPERTY, 0)
+				.intValue();
+		if (parallelism > 0) {
+			return parallelism;
+		}
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Open a gzip file for reading.
+	 *
+	 * @param file
+	 * @param parallelism
+	 * 		the number of threads inflating members, a plain
+	 * 		{@link GZIPInputStream} is used when <code>1</code>
+	 * @return InputStream
+	 * @throws IOException
+	 */
+	static InputStream open(File file, int parallelism) throws IOException {
+		if (parallelism <= 1) {
+			return new GZIPInputStream(new BufferedInputStream(
+					new FileInputStream(file), INPUT_BUFFER_SIZE),
+					INPUT_BUFFER_SIZE);
+		}
+		return new ParallelGzipInputStream(file, parallelism);
+	}
+
+	/**
+	 * Returns whether a file is in the BGZF format, whose blocks can be
+	 * located without inflating them, see {@link #readBlocks(FileChannel)}.
+	 *
+	 * @param file
+	 * @return boolean
+	 */
+	static boolean isBlockCompressed(File file) {
+		RandomAccessFile in = null;
+		try {
+			in = new RandomAccessFile(file, "r"); //$NON-NLS-1$
+			Header header = Header.read(in.getChannel(), 0);
+			return header != null && header.blockSize > 0;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	/**
+	 * Locate the blocks of a BGZF file from their headers and trailers,
+	 * without inflating them.
+	 *
+	 * @param channel
+	 * @return the blocks
+	 * @throws IOException
+	 * 		if the file is not in the BGZF format
+	 */
+	static BlockTable readBlocks(FileChannel channel) throws IOException {
+		long length = channel.size();
+		List<long[]> blocks = new ArrayList<long[]>();
+		long offset = 0;
+		long data = 0;
+		byte[] size = new byte[4];
+		while (offset < length) {
+			Header header = Header.read(channel, offset);
+			if (header == null || header.blockSize <= 0) {
+				if (offset == 0) {
+					throw new IOException("Not in BGZF format"); //$NON-NLS-1$
+				}
+				// like GZIPInputStream, ignore trailing data
+				break;
+			}
+			if (!readFully(channel, offset + header.blockSize - 4, size, 4)) {
+				throw new EOFException("Unexpected end of BGZF block"); //$NON-NLS-1$
+			}
+			blocks.add(new long[] { offset, data });
+			offset += header.blockSize;
+			data += readInt(size, 0) & 0xffffffffL;
+		}
+		return new BlockTable(blocks);
+	}
+
+	/**
+	 * Read the members of a gzip file one after the other on the calling
+	 * thread, from the member starting at an offset. Members are read with
+	 * positional reads, so several streams can read the channel at the same
+	 * time.
+	 *
+	 * @param channel
+	 * @param offset
+	 * 		the offset of a member
+	 * @return InputStream
+	 */
+	static InputStream openMembers(final FileChannel channel, final long offset) {
+		return new InputStream() {
+			private MemberReader reader;
+
+			private long next = offset;
+
+			public int read() throws IOException {
+				byte[] single = new byte[1];
+				int read;
+				do {
+					read = read(single, 0, 1);
+				} while (read == 0);
+				return read < 0 ? -1 : single[0] & 0xff;
+			}
+
+			public int read(byte[] b, int off, int len) throws IOException {
+				while (true) {
+					if (reader == null) {
+						if (next >= channel.size()
+								|| (next > offset && Header.read(channel, next) == null)) {
+							return -1;
+						}
+						reader = new MemberReader(channel, next);
+					}
+					int read = reader.read(b, off, len);
+					if (read != -1) {
+						return read;
+					}
+					next = reader.getEnd();
+					reader = null;
+				}
+			}
+
+			public void close() {
+				if (reader != null) {
+					reader.close();
+					reader = null;
+				}
+			}
+		};
+	}
+
+	private ParallelGzipInputStream(File source, int parallelism)
+			throws IOException {
+		file = new RandomAccessFile(source, "r"); //$NON-NLS-1$
+		channel = file.getChannel();
+		length = file.length();
+		// one candidate waiting per thread keeps every thread busy while
+		// bounding the inflated data held in memory
+		queue = new LinkedBlockingQueue<Pending>(parallelism + 2);
+		executor = new ThreadPoolExecutor(parallelism, parallelism, 1,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable,
+								"Assignment archive inflater"); //$NON-NLS-1$
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		Header first = Header.read(channel, 0);
+		if (first == null) {
+			close();
+			throw new IOException("Not in GZIP format"); //$NON-NLS-1$
+		}
+		if (first.blockSize > 0) {
+			startScanner(true);
+		} else {
+			// most gzip files hold one member, it is streamed as by
+			// GZIPInputStream and its trailer tells whether more follow
+			streamed = new MemberReader(channel, 0);
+		}
+	}
+
+	/**
+	 * Start queueing the members following the expected offset.
+	 *
+	 * @param blocks
+	 * 		whether to follow BGZF block sizes rather than scan for
+	 * 		signatures
+	 */
+	private void startScanner(final boolean blocks) {
+		final long start = expected;
+		scanner = new Thread(new Runnable() {
+			public void run() {
+				findMembers(start, blocks);
+			}
+		}, "Assignment archive member scanner"); //$NON-NLS-1$
+		scanner.setDaemon(true);
+		scanner.start();
+	}
+
+	/**
+	 * Queue the candidate members in the order of their offsets. Runs on the
+	 * scanner thread.
+	 */
+	private void findMembers(long start, boolean blocks) {
+		try {
+			try {
+				if (blocks) {
+					findBlocks(start);
+				} else {
+					findSignatures(start);
+				}
+				queue.put(END);
+			} catch (IOException e) {
+				if (!closed) {
+					queue.put(new Pending(-1, null, e));
+				}
+			}
+		} catch (InterruptedException e) {
+			// closed
+		}
+	}
+
+	/**
+	 * Follow the block sizes of a BGZF file.
+	 */
+	private void findBlocks(long offset) throws IOException,
+			InterruptedException {
+		while (offset < length && !closed) {
+			submit(offset);
+			Header header = Header.read(channel, offset);
+			if (header == null || header.blockSize <= 0) {
+				// the reading thread decides whether this ends the data
+				break;
+			}
+			offset += header.blockSize;
+		}
+	}
+
+	/**
+	 * Find every gzip header signature of the file from an offset.
+	 */
+	private void findSignatures(long position) throws IOException,
+			InterruptedException {
+		byte[] buffer = new byte[SCAN_BUFFER_SIZE];
+		while (position < length && !closed) {
+			int read = channel.read(ByteBuffer.wrap(buffer), position);
+			if (read <= 0) {
+				break;
+			}
+			for (int i = 0; i + 3 < read; i++) {
+				if (isSignature(buffer, i)
+						&& (buffer[i + 3] & FLAG_RESERVED) == 0) {
+					submit(position + i);
+				}
+			}
+			if (position + read >= length) {
+				break;
+			}
+			// rescan the bytes a signature may straddle
+			position += Math.max(1, read - 3);
+		}
+	}
+
+	private void submit(final long offset) throws InterruptedException {
+		Future<Member> future = executor.submit(new Callable<Member>() {
+			public Member call() {
+				return inflate(offset);
+			}
+		});
+		queue.put(new Pending(offset, future, null));
+	}
+
+	/**
+	 * Inflate a candidate member into memory. Runs on an inflater thread.
+	 *
+	 * @return the member, or <code>null</code> if the data at offset is not
+	 * 	a valid member
+	 */
+	private Member inflate(long offset) {
+		if (closed) {
+			return null;
+		}
+		MemberReader reader;
+		try {
+			reader = new MemberReader(channel, offset);
+		} catch (IOException e) {
+			return null;
+		}
+		try {
+			byte[] data = new byte[INPUT_BUFFER_SIZE];
+			int size = 0;
+			while (!closed) {
+				if (size == data.length) {
+					if (size >= MAX_MEMBER_BUFFER) {
+						return new Member(null, 0, -1, true);
+					}
+					byte[] grown = new byte[Math.min(size * 2,
+							MAX_MEMBER_BUFFER)];
+					System.arraycopy(data, 0, grown, 0, size);
+					data = grown;
+				}
+				int read = reader.read(data, size, data.length - size);
+				if (read < 0) {
+					return new Member(data, size, reader.getEnd(), false);
+				}
+				size += read;
+			}
+			return null;
+		} catch (IOException e) {
+			return null;
+		} finally {
+			reader.close();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.io.InputStream#read()
+	 */
+	public int read() throws IOException {
+		byte[] single = new byte[1];
+		int read;
+		do {
+			read = read(single, 0, 1);
+		} while (read == 0);
+		return read < 0 ? -1 : single[0] & 0xff;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.io.InputStream#read(byte[], int, int)
+	 */
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed"); //$NON-NLS-1$
+		}
+		if (len == 0) {
+			return 0;
+		}
+		while (true) {
+			if (streamed != null) {
+				int read = streamed.read(b, off, len);
+				if (read >= 0) {
+					return read;
+				}
+				expected = streamed.getEnd();
+				streamed = null;
+			} else if (current != null && currentPosition < current.length) {
+				int count = Math.min(len, current.length - currentPosition);
+				System.arraycopy(current.data, currentPosition, b, off, count);
+				currentPosition += count;
+				return count;
+			}
+			current = null;
+			if (!nextMember()) {
+				return -1;
+			}
+		}
+	}
+
+	/**
+	 * Advance to the member starting at the expected offset.
+	 *
+	 * @return <code>false</code> at the end of the data
+	 */
+	private boolean nextMember() throws IOException {
+		if (scanner == null && !finished) {
+			if (expected >= length) {
+				return false;
+			}
+			// a file of several members, such as concatenated parts
+			startScanner(false);
+		}
+		while (!finished) {
+			Pending pending;
+			try {
+				pending = queue.take();
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			}
+			if (pending == END) {
+				finished = true;
+				break;
+			}
+			if (pending.error != null) {
+				throw pending.error;
+			}
+			if (pending.offset < expected) {
+				// a signature inside a member that was already read; do not
+				// interrupt, that would close the shared channel
+				pending.future.cancel(false);
+				continue;
+			}
+			if (pending.offset > expected) {
+				// like GZIPInputStream, ignore trailing data that is not a
+				// member
+				finished = true;
+				break;
+			}
+			Member member;
+			try {
+				member = pending.future.get();
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			} catch (ExecutionException e) {
+				IOException exception = new IOException(e.getMessage());
+				exception.initCause(e.getCause());
+				throw exception;
+			}
+			if (member == null) {
+				throw new IOException(expected == 0 ? "Not in GZIP format" //$NON-NLS-1$
+						: "Corrupt GZIP member at offset " + expected); //$NON-NLS-1$
+			}
+			if (member.oversized) {
+				streamed = new MemberReader(channel, pending.offset);
+			} else {
+				current = member;
+				currentPosition = 0;
+				expected = member.end;
+			}
+			return true;
+		}
+		if (expected == 0) {
+			throw new IOException("Not in GZIP format"); //$NON-NLS-1$
+		}
+		return false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.io.InputStream#close()
+	 */
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		if (scanner != null) {
+			scanner.interrupt();
+		}
+		executor.shutdownNow();
+		queue.clear();
+		if (streamed != null) {
+			streamed.close();
+			streamed = null;
+		}
+		current = null;
+		file.close();
+	}
+
+	private static boolean isSignature(byte[] data, int offset) {
+		return data[offset] == (byte) 0x1f && data[offset + 1] == (byte) 0x8b
+				&& data[offset + 2] == 8;
+	}
+
+	private static boolean readFully(FileChannel channel, long position,
+			byte[] data, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(data, 0, length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) <= 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int readShort(byte[] data, int offset) {
+		return (data[offset] & 0xff) | (data[offset + 1] & 0xff) << 8;
+	}
+
+	private static int readInt(byte[] data, int offset) {
+		return readShort(data, offset) | readShort(data, offset + 2) << 16;
+	}
+}
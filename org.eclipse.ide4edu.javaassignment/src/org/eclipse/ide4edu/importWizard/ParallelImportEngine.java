@@ -0,0 +1,266 @@
+package org.eclipse.ide4edu.importWizard;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.ui.internal.ide.IDEWorkbenchPlugin;
+
+/**
+ * Imports projects on a bounded pool of worker threads. Each task acquires
+ * the scheduling rules it needs itself, so projects whose contents are
+ * imported under their own project rule proceed concurrently, while the
+ * steps needing the workspace root are serialized by the job manager.
+ * <p>
+ * Progress and cancellation of the tasks are reported to the monitor of
+ * the calling thread, which is only called from that thread. A failing
+ * task does not stop the others; its error is reported in the result.
+ * </p>
+ */
+class ParallelImportEngine {
+
+	/**
+	 * The import of one project.
+	 */
+	interface Task {
+
+		/**
+		 * @return the name of the project, used to report progress and errors
+		 */
+		String getName();
+
+		/**
+		 * Import the project. Runs on a worker thread holding no scheduling
+		 * rule.
+		 *
+		 * @param monitor
+		 * 		the monitor of the task, canceled with the engine
+		 * @throws CoreException
+		 */
+		void run(IProgressMonitor monitor) throws CoreException;
+	}
+
+	/**
+	 * System property holding the number of projects imported at the same
+	 * time.
+	 */
+	static final String PARALLELISM_PROPERTY = "org.eclipse.ide4edu.importWizard.importParallelism"; //$NON-NLS-1$
+
+	// creating resources contends for the workspace tree, more threads do
+	// not help
+	private static final int MAX_DEFAULT_PARALLELISM = 8;
+
+	private static final int TICKS_PER_TASK = 100;
+
+	private static final long POLL_INTERVAL = 100;
+
+	/**
+	 * The monitor given to each task. Work is scaled to the ticks of one
+	 * task and accumulated for the calling thread.
+	 */
+	private class TaskMonitor extends NullProgressMonitor {
+
+		private double scale;
+
+		private double pending;
+
+		private int reported;
+
+		public void beginTask(String name, int totalWork) {
+			if (totalWork > 0 && scale == 0) {
+				scale = (double) TICKS_PER_TASK / totalWork;
+			}
+		}
+
+		public void internalWorked(double work) {
+			pending += work * scale;
+			int ticks = Math.min((int) pending, TICKS_PER_TASK - reported);
+			if (ticks > 0) {
+				pending -= ticks;
+				reported += ticks;
+				addWorked(ticks);
+			}
+		}
+
+		public void worked(int work) {
+			internalWorked(work);
+		}
+
+		public boolean isCanceled() {
+			return canceled;
+		}
+
+		public void setCanceled(boolean value) {
+			if (value) {
+				canceled = true;
+			}
+		}
+
+		/**
+		 * Report the ticks the task did not report itself.
+		 */
+		void finish() {
+			addWorked(TICKS_PER_TASK - reported);
+			reported = TICKS_PER_TASK;
+		}
+	}
+
+	private final int parallelism;
+
+	private final Object lock = new Object();
+
+	private int worked;
+
+	private volatile boolean canceled;
+
+	private volatile String currentTask;
+
+	/**
+	 * Returns the import parallelism configured through
+	 * {@link #PARALLELISM_PROPERTY}, or a default based on the number of
+	 * available processors.
+	 *
+	 * @return the number of import threads, at least <code>1</code>
+	 */
+	static int getDefaultParallelism() {
+		int parallelism = Integer.getInteger(PARALLELISM_PROPERTY, 0)
+				.intValue();
+		if (parallelism > 0) {
+			return parallelism;
+		}
+		return Math.max(2, Math.min(Runtime.getRuntime()
+				.availableProcessors(), MAX_DEFAULT_PARALLELISM));
+	}
+
+	/**
+	 * @param parallelism
+	 * 		the maximum number of projects imported at the same time
+	 */
+	ParallelImportEngine(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	private void addWorked(int ticks) {
+		synchronized (lock) {
+			worked += ticks;
+		}
+	}
+
+	/**
+	 * Run the tasks, returning when all have completed or the monitor was
+	 * canceled and the running tasks stopped.
+	 *
+	 * @param tasks
+	 * 		the {@link Task}s to run
+	 * @param message
+	 * 		the message of the result if a task fails
+	 * @param monitor
+	 * 		the monitor to report to
+	 * @return a status holding one child per failed project
+	 * @throws OperationCanceledException
+	 * 		if the monitor was canceled
+	 */
+	IStatus run(List<Task> tasks, String message, IProgressMonitor monitor) {
+		final MultiStatus result = new MultiStatus(
+				IDEWorkbenchPlugin.IDE_WORKBENCH, 1, message, null);
+		monitor.beginTask("", tasks.size() * TICKS_PER_TASK); //$NON-NLS-1$
+		ExecutorService executor = new ThreadPoolExecutor(parallelism,
+				parallelism, 1, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable,
+								"Assignment project importer"); //$NON-NLS-1$
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		try {
+			for (int i = 0; i < tasks.size(); i++) {
+				final Task task = tasks.get(i);
+				executor.execute(new Runnable() {
+					public void run() {
+						runTask(task, result);
+					}
+				});
+			}
+			executor.shutdown();
+			int reported = 0;
+			while (!executor.awaitTermination(POLL_INTERVAL,
+					TimeUnit.MILLISECONDS)) {
+				reported = reportProgress(monitor, reported);
+			}
+			reportProgress(monitor, reported);
+		} catch (InterruptedException e) {
+			canceled = true;
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		} finally {
+			monitor.done();
+		}
+		if (canceled) {
+			throw new OperationCanceledException();
+		}
+		return result;
+	}
+
+	private int reportProgress(IProgressMonitor monitor, int reported) {
+		if (monitor.isCanceled()) {
+			canceled = true;
+		}
+		int done;
+		synchronized (lock) {
+			done = worked;
+		}
+		if (done > reported) {
+			monitor.worked(done - reported);
+		}
+		String name = currentTask;
+		if (name != null) {
+			monitor.subTask(name);
+		}
+		return done;
+	}
+
+	/**
+	 * Run one task on a worker thread, recording its failure in result.
+	 */
+	private void runTask(Task task, MultiStatus result) {
+		TaskMonitor taskMonitor = new TaskMonitor();
+		if (canceled) {
+			return;
+		}
+		currentTask = task.getName();
+		try {
+			task.run(taskMonitor);
+		} catch (CoreException e) {
+			addError(result, task, e.getStatus());
+		} catch (OperationCanceledException e) {
+			canceled = true;
+		} catch (RuntimeException e) {
+			addError(result, task, new Status(IStatus.ERROR,
+					IDEWorkbenchPlugin.IDE_WORKBENCH, 1, String.valueOf(e
+							.getMessage()), e));
+		} finally {
+			taskMonitor.finish();
+		}
+	}
+
+	private void addError(MultiStatus result, Task task, IStatus status) {
+		MultiStatus projectStatus = new MultiStatus(
+				IDEWorkbenchPlugin.IDE_WORKBENCH, 1, task.getName(), null);
+		projectStatus.add(status);
+		synchronized (result) {
+			result.add(projectStatus);
+		}
+	}
+}
@@ -0,0 +1,255 @@
+package org.eclipse.ide4edu.importWizard;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Reads the project name and nature ids from a <code>.project</code> file
+ * with a streaming parser, stopping as soon as both are known. This is much
+ * cheaper than loading the full <code>IProjectDescription</code>, which is
+ * only needed once a project is actually created.
+ * <p>
+ * Readers are not shared, so descriptions can be read concurrently.
+ * </p>
+ */
+class ProjectDescriptionReader extends DefaultHandler {
+
+	private static final String PROJECT_DESCRIPTION = "projectDescription"; //$NON-NLS-1$
+
+	private static final String NAME = "name"; //$NON-NLS-1$
+
+	private static final String NATURES = "natures"; //$NON-NLS-1$
+
+	private static final String NATURE = "nature"; //$NON-NLS-1$
+
+	/**
+	 * Thrown to end parsing once the interesting elements have been read.
+	 */
+	private static class StopParsing extends SAXException {
+
+		private static final long serialVersionUID = 1L;
+
+		StopParsing() {
+			super("stop"); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Counts the bytes read for the import profile.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+
+		long count;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		public int read() throws IOException {
+			int value = super.read();
+			if (value != -1) {
+				count++;
+			}
+			return value;
+		}
+
+		public int read(byte[] buffer, int offset, int length)
+				throws IOException {
+			int read = super.read(buffer, offset, length);
+			if (read > 0) {
+				count += read;
+			}
+			return read;
+		}
+
+		public void close() {
+			// the stream is closed by the caller
+		}
+	}
+
+	// parsers are not thread safe but can be reused after a reset
+	private static final ThreadLocal<SAXParser> parsers = new ThreadLocal<SAXParser>();
+
+	private int depth;
+
+	private boolean inNatures;
+
+	private StringBuffer text;
+
+	private String name;
+
+	private final List<String> natureIds = new ArrayList<String>();
+
+	/**
+	 * Read the name and natures of a project description file.
+	 *
+	 * @param file
+	 * 		the .project file
+	 * @return the reader holding the result, or <code>null</code> if the file
+	 * 	is not a project description
+	 * @throws IOException
+	 */
+	static ProjectDescriptionReader read(File file) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			return read(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Read the name and natures of a project description. The stream is not
+	 * closed.
+	 *
+	 * @param in
+	 * 		the contents of a .project file
+	 * @return the reader holding the result, or <code>null</code> if the
+	 * 	stream does not hold a project description
+	 * @throws IOException
+	 */
+	static ProjectDescriptionReader read(InputStream in) throws IOException {
+		SAXParser parser = getParser();
+		ProjectDescriptionReader reader = new ProjectDescriptionReader();
+		CountingInputStream counter = new CountingInputStream(in);
+		try {
+			parser.parse(new InputSource(counter), reader);
+		} catch (StopParsing e) {
+			// everything needed was read
+		} catch (SAXException e) {
+			return null;
+		} finally {
+			parser.reset();
+			ImportProfile.countBytes(counter.count);
+		}
+		return reader.name == null ? null : reader;
+	}
+
+	private static SAXParser getParser() throws IOException {
+		SAXParser parser = parsers.get();
+		if (parser == null) {
+			try {
+				SAXParserFactory factory = SAXParserFactory.newInstance();
+				factory.setNamespaceAware(false);
+				factory.setValidating(false);
+				parser = factory.newSAXParser();
+			} catch (ParserConfigurationException e) {
+				IOException exception = new IOException(e.getMessage());
+				exception.initCause(e);
+				throw exception;
+			} catch (SAXException e) {
+				IOException exception = new IOException(e.getMessage());
+				exception.initCause(e);
+				throw exception;
+			}
+			parsers.set(parser);
+		}
+		return parser;
+	}
+
+	private ProjectDescriptionReader() {
+		// use read()
+	}
+
+	/**
+	 * @return the name of the project
+	 */
+	String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the nature ids of the project, in the order of the file
+	 */
+	String[] getNatureIds() {
+		return natureIds.toArray(new String[natureIds.size()]);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.xml.sax.helpers.DefaultHandler#resolveEntity(java.lang.String,
+	 * java.lang.String)
+	 */
+	public InputSource resolveEntity(String publicId, String systemId) {
+		// never load external entities
+		return new InputSource(new StringReader("")); //$NON-NLS-1$
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.xml.sax.helpers.DefaultHandler#startElement(java.lang.String,
+	 * java.lang.String, java.lang.String, org.xml.sax.Attributes)
+	 */
+	public void startElement(String uri, String localName, String qName,
+			Attributes attributes) throws SAXException {
+		depth++;
+		if (depth == 1) {
+			if (!PROJECT_DESCRIPTION.equals(qName)) {
+				throw new StopParsing();
+			}
+		} else if (depth == 2) {
+			if (NAME.equals(qName)) {
+				text = new StringBuffer();
+			} else if (NATURES.equals(qName)) {
+				inNatures = true;
+			}
+		} else if (depth == 3 && inNatures && NATURE.equals(qName)) {
+			text = new StringBuffer();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.xml.sax.helpers.DefaultHandler#endElement(java.lang.String,
+	 * java.lang.String, java.lang.String)
+	 */
+	public void endElement(String uri, String localName, String qName)
+			throws SAXException {
+		if (text != null) {
+			String value = text.toString().trim();
+			text = null;
+			if (depth == 2) {
+				name = value;
+			} else if (value.length() > 0) {
+				natureIds.add(value);
+			}
+		} else if (depth == 2 && NATURES.equals(qName)) {
+			inNatures = false;
+			if (name != null) {
+				// the natures follow the name, nothing else is needed
+				throw new StopParsing();
+			}
+		}
+		depth--;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.xml.sax.helpers.DefaultHandler#characters(char[], int, int)
+	 */
+	public void characters(char[] ch, int start, int length) {
+		if (text != null) {
+			text.append(ch, start, length);
+		}
+	}
+}
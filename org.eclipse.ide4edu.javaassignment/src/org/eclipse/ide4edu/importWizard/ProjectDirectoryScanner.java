@@ -0,0 +1,474 @@
+package org.eclipse.ide4edu.importWizard;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.filesystem.IFileInfo;
+import org.eclipse.core.filesystem.IFileStore;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.osgi.util.NLS;
+import org.eclipse.ui.internal.ide.StatusUtil;
+import org.eclipse.ui.internal.wizards.datatransfer.DataTransferMessages;
+import org.eclipse.ui.statushandlers.StatusManager;
+
+/**
+ * Searches a directory tree for project description files on a pool of
+ * worker threads, so that sibling directories are listed concurrently. This
+ * hides most of the latency of network file systems where every
+ * <code>listFiles()</code> is a round trip to the server.
+ * <p>
+ * The rules of the single threaded search are kept: a directory containing a
+ * <code>.project</code> file is not searched any further, the workspace
+ * <code>.metadata</code> folder is skipped and directories reached through
+ * recursive symbolic links are visited only once.
+ * </p>
+ * <p>
+ * Two ways of listing a directory are available. {@link #MODE_FILE} uses
+ * <code>java.io.File</code> and canonicalizes every directory to detect
+ * cycles. {@link #MODE_FILE_STORE} lists a directory through the local EFS
+ * file store, which fetches the attributes of every entry once, and only
+ * canonicalizes symbolic links; the canonical path of any other directory
+ * is the one of its parent followed by its name.
+ * </p>
+ * <p>
+ * When a {@link DirectoryStampCache} is set, directories whose stamp did not
+ * change since they were last listed are not listed again.
+ * </p>
+ */
+class ProjectDirectoryScanner {
+
+	/**
+	 * Notified of each project description file as soon as it is found.
+	 */
+	interface Listener {
+
+		/**
+		 * Called on a scanner thread when a project description is found.
+		 *
+		 * @param file
+		 * 		the .project file
+		 */
+		void projectFileFound(File file);
+	}
+
+	/**
+	 * System property holding the number of threads used to scan directories.
+	 */
+	static final String PARALLELISM_PROPERTY = "org.eclipse.ide4edu.importWizard.scannerParallelism"; //$NON-NLS-1$
+
+	/**
+	 * System property selecting how directories are listed, either
+	 * <code>file</code> or <code>filestore</code> (the default).
+	 */
+	static final String MODE_PROPERTY = "org.eclipse.ide4edu.importWizard.scannerMode"; //$NON-NLS-1$
+
+	/**
+	 * List directories with <code>java.io.File</code>.
+	 */
+	static final int MODE_FILE = 0;
+
+	/**
+	 * List directories with the local EFS file store.
+	 */
+	static final int MODE_FILE_STORE = 1;
+
+	// Listing directories is I/O bound, so use more threads than cores
+	private static final int MAX_DEFAULT_PARALLELISM = 16;
+
+	private static final long POLL_INTERVAL = 100;
+
+	private final int parallelism;
+
+	private final int mode;
+
+	private final List<File> found = Collections
+			.synchronizedList(new ArrayList<File>());
+
+	private final Set<String> directoriesVisited = Collections
+			.synchronizedSet(new HashSet<String>());
+
+	private final Object lock = new Object();
+
+	// number of submitted directories that have not been scanned yet
+	private int pending;
+
+	private volatile boolean canceled;
+
+	private volatile String currentDirectory;
+
+	private ExecutorService executor;
+
+	private DirectoryStampCache cache;
+
+	private Listener listener;
+
+	/**
+	 * Returns the scanner parallelism configured through
+	 * {@link #PARALLELISM_PROPERTY}, or a default based on the number of
+	 * available processors.
+	 *
+	 * @return the number of scanner threads, at least <code>1</code>
+	 */
+	static int getDefaultParallelism() {
+		int parallelism = Integer.getInteger(PARALLELISM_PROPERTY, 0)
+				.intValue();
+		if (parallelism > 0) {
+			return parallelism;
+		}
+		return Math.min(Runtime.getRuntime().availableProcessors() * 2,
+				MAX_DEFAULT_PARALLELISM);
+	}
+
+	/**
+	 * Returns the listing mode configured through {@link #MODE_PROPERTY}.
+	 *
+	 * @return one of {@link #MODE_FILE} or {@link #MODE_FILE_STORE}
+	 */
+	static int getDefaultMode() {
+		if ("file".equals(System.getProperty(MODE_PROPERTY))) { //$NON-NLS-1$
+			return MODE_FILE;
+		}
+		return MODE_FILE_STORE;
+	}
+
+	/**
+	 * @param parallelism
+	 * 		the maximum number of directories listed at the same time
+	 * @param mode
+	 * 		one of {@link #MODE_FILE} or {@link #MODE_FILE_STORE}
+	 */
+	ProjectDirectoryScanner(int parallelism, int mode) {
+		this.parallelism = Math.max(1, parallelism);
+		this.mode = mode;
+	}
+
+	/**
+	 * Set the cache used to skip listing directories that did not change
+	 * since a previous scan. The cache is updated with the directories
+	 * listed by this scan.
+	 *
+	 * @param cache
+	 * 		the cache, or <code>null</code> to list every directory
+	 */
+	void setCache(DirectoryStampCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Set the listener notified of each project description found, so
+	 * results can be shown before the whole tree is searched.
+	 *
+	 * @param listener
+	 * 		the listener, or <code>null</code>
+	 */
+	void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Collect the .project files that are under directory into files.
+	 *
+	 * @param files
+	 * 		the collection receiving the <code>File</code>s found
+	 * @param directory
+	 * 		the root of the search
+	 * @param monitor
+	 * 		the monitor to report to, only called from the calling thread
+	 * @return boolean <code>true</code> if the operation was completed.
+	 */
+	boolean scan(Collection<File> files, File directory,
+			IProgressMonitor monitor) {
+		if (monitor.isCanceled() || !directory.isDirectory()) {
+			return false;
+		}
+		String canonicalPath;
+		try {
+			canonicalPath = directory.getCanonicalPath();
+		} catch (IOException exception) {
+			handle(exception);
+			canonicalPath = directory.getAbsolutePath();
+		}
+		directoriesVisited.add(canonicalPath);
+
+		executor = new ThreadPoolExecutor(parallelism, parallelism, 0L,
+				TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable,
+								"Assignment project scanner"); //$NON-NLS-1$
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		if (cache != null) {
+			cache.beginScan();
+		}
+		try {
+			submit(directory, canonicalPath);
+			while (!awaitCompletion()) {
+				if (monitor.isCanceled()) {
+					canceled = true;
+					return false;
+				}
+				String current = currentDirectory;
+				if (current != null) {
+					monitor.subTask(NLS.bind(
+							DataTransferMessages.WizardProjectsImportPage_CheckingMessage,
+							current));
+				}
+			}
+		} catch (InterruptedException e) {
+			canceled = true;
+			return false;
+		} finally {
+			executor.shutdownNow();
+		}
+		if (cache != null) {
+			cache.endScan();
+		}
+		files.addAll(found);
+		return true;
+	}
+
+	/**
+	 * Wait until all submitted directories are scanned, or until the poll
+	 * interval elapsed.
+	 *
+	 * @return <code>true</code> if there is no more work
+	 */
+	private boolean awaitCompletion() throws InterruptedException {
+		synchronized (lock) {
+			if (pending > 0) {
+				lock.wait(POLL_INTERVAL);
+			}
+			return pending == 0;
+		}
+	}
+
+	private void submit(final File directory, final String canonicalPath) {
+		synchronized (lock) {
+			pending++;
+		}
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						scanDirectory(directory, canonicalPath);
+					} finally {
+						taskDone();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// the scan was canceled and the pool shut down
+			taskDone();
+		}
+	}
+
+	private void taskDone() {
+		synchronized (lock) {
+			if (--pending == 0) {
+				lock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Scan one directory, submitting its sub-directories as separate tasks
+	 * unless it contains a project description.
+	 */
+	private void scanDirectory(File directory, String canonicalPath) {
+		if (canceled) {
+			return;
+		}
+		currentDirectory = directory.getPath();
+		DirectoryStampCache.Entry listing = null;
+		if (cache != null) {
+			listing = cache.lookup(directory);
+		}
+		if (listing == null) {
+			listing = mode == MODE_FILE_STORE ? listDirectoryStore(directory,
+					canonicalPath) : listDirectoryFiles(directory);
+			if (listing == null) {
+				return;
+			}
+			if (cache != null) {
+				cache.store(directory, listing);
+			}
+		}
+
+		if (listing.projectFile != null) {
+			found.add(listing.projectFile);
+			if (listener != null) {
+				listener.projectFileFound(listing.projectFile);
+			}
+			// don't search sub-directories since we can't have nested
+			// projects
+			return;
+		}
+		for (int i = 0; i < listing.directories.length; i++) {
+			if (canceled) {
+				return;
+			}
+			// checked here rather than when listing, so a remembered
+			// listing is filtered by the search that replays it
+			if (!directoriesVisited.add(listing.canonicalPaths[i])) {
+				// already been here --> do not recurse
+				continue;
+			}
+			submit(new File(directory, listing.directories[i]),
+					listing.canonicalPaths[i]);
+		}
+	}
+
+	private DirectoryStampCache.Entry listDirectoryFiles(File directory) {
+		DirectoryStampCache.Entry listing = new DirectoryStampCache.Entry();
+		listing.lastModified = directory.lastModified();
+		File[] contents = directory.listFiles();
+		if (contents == null) {
+			return null;
+		}
+		ImportProfile.countFiles(contents.length);
+		String[] names = new String[contents.length];
+		for (int i = 0; i < contents.length; i++) {
+			names[i] = contents[i].getName();
+		}
+		stampNames(listing, names);
+
+		// first look for project description files
+		final String dotProject = IProjectDescription.DESCRIPTION_FILE_NAME;
+		for (int i = 0; i < contents.length; i++) {
+			File file = contents[i];
+			if (file.getName().equals(dotProject) && file.isFile()) {
+				listing.projectFile = file;
+				listing.directories = new String[0];
+				return listing;
+			}
+		}
+		// no project description found, so collect the sub-directories
+		List<String> directories = new ArrayList<String>();
+		List<String> canonicalPaths = new ArrayList<String>();
+		for (int i = 0; i < contents.length; i++) {
+			if (contents[i].isDirectory()
+					&& !contents[i].getName().equals(
+							WizardAssignmentsImportPage.METADATA_FOLDER)) {
+				String canonicalPath;
+				try {
+					canonicalPath = contents[i].getCanonicalPath();
+				} catch (IOException exception) {
+					handle(exception);
+					canonicalPath = contents[i].getAbsolutePath();
+				}
+				directories.add(contents[i].getName());
+				canonicalPaths.add(canonicalPath);
+			}
+		}
+		setDirectories(listing, directories, canonicalPaths);
+		return listing;
+	}
+
+	private DirectoryStampCache.Entry listDirectoryStore(File directory,
+			String canonicalPath) {
+		DirectoryStampCache.Entry listing = new DirectoryStampCache.Entry();
+		IFileInfo[] contents;
+		try {
+			IFileStore store = EFS.getLocalFileSystem().fromLocalFile(
+					directory);
+			listing.lastModified = store.fetchInfo().getLastModified();
+			contents = store.childInfos(EFS.NONE, null);
+		} catch (CoreException e) {
+			return null;
+		}
+		ImportProfile.countFiles(contents.length);
+		String[] names = new String[contents.length];
+		for (int i = 0; i < contents.length; i++) {
+			names[i] = contents[i].getName();
+		}
+		stampNames(listing, names);
+
+		// first look for project description files
+		final String dotProject = IProjectDescription.DESCRIPTION_FILE_NAME;
+		for (int i = 0; i < contents.length; i++) {
+			if (!contents[i].isDirectory()
+					&& contents[i].getName().equals(dotProject)) {
+				listing.projectFile = new File(directory, dotProject);
+				listing.directories = new String[0];
+				return listing;
+			}
+		}
+		// no project description found, so collect the sub-directories
+		List<String> directories = new ArrayList<String>();
+		List<String> canonicalPaths = new ArrayList<String>();
+		for (int i = 0; i < contents.length; i++) {
+			IFileInfo info = contents[i];
+			if (!info.isDirectory()
+					|| info.getName().equals(
+							WizardAssignmentsImportPage.METADATA_FOLDER)) {
+				continue;
+			}
+			String childPath;
+			if (info.getAttribute(EFS.ATTRIBUTE_SYMLINK)) {
+				try {
+					childPath = new File(directory, info.getName())
+							.getCanonicalPath();
+				} catch (IOException exception) {
+					handle(exception);
+					continue;
+				}
+			} else {
+				childPath = append(canonicalPath, info.getName());
+			}
+			directories.add(info.getName());
+			canonicalPaths.add(childPath);
+		}
+		setDirectories(listing, directories, canonicalPaths);
+		return listing;
+	}
+
+	private static void setDirectories(DirectoryStampCache.Entry listing,
+			List<String> directories, List<String> canonicalPaths) {
+		listing.directories = directories.toArray(new String[directories
+				.size()]);
+		listing.canonicalPaths = canonicalPaths
+				.toArray(new String[canonicalPaths.size()]);
+	}
+
+	/**
+	 * Returns the canonical path of a directory that is not a symbolic link
+	 * from the canonical path of its parent.
+	 */
+	private static String append(String canonicalPath, String name) {
+		if (canonicalPath.endsWith(File.separator)) {
+			return canonicalPath + name;
+		}
+		return canonicalPath + File.separatorChar + name;
+	}
+
+	private static void stampNames(DirectoryStampCache.Entry listing,
+			String[] names) {
+		listing.entryCount = names.length;
+		listing.namesHash = DirectoryStampCache.hashNames(names);
+	}
+
+	private static void handle(IOException exception) {
+		StatusManager.getManager().handle(
+				StatusUtil.newStatus(IStatus.ERROR, exception
+						.getLocalizedMessage(), exception));
+	}
+}
@@ -0,0 +1,206 @@
+package org.eclipse.ide4edu.importWizard;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.ide4edu.javaassignment.Activator;
+
+/**
+ * A persistent index of the projects found under a source directory, stored
+ * in the plug-in state location. The index lets the import page list the
+ * projects of a directory searched in an earlier session immediately, while
+ * the directory is searched again in the background.
+ * <p>
+ * Besides the projects, the index keeps the directory listings of the
+ * {@link DirectoryStampCache}, so the background search only lists the
+ * directories that changed since the index was written.
+ * </p>
+ */
+class ProjectIndex {
+
+	/**
+	 * A project found in the indexed directory.
+	 */
+	static class ProjectEntry {
+
+		/**
+		 * The path of the .project file.
+		 */
+		String path;
+
+		long lastModified;
+
+		/**
+		 * The name of the project, or <code>null</code> if the description
+		 * could not be read.
+		 */
+		String projectName;
+
+		String[] natureIds;
+	}
+
+	private static final String INDEX_FOLDER = "projectIndex"; //$NON-NLS-1$
+
+	// 2 added the canonical paths of the directory listings
+	private static final int VERSION = 2;
+
+	private final String root;
+
+	private final List<ProjectEntry> projects = new ArrayList<ProjectEntry>();
+
+	/**
+	 * @param root
+	 * 		the path of the indexed directory
+	 */
+	ProjectIndex(String root) {
+		this.root = root;
+	}
+
+	/**
+	 * @return the projects of the index
+	 */
+	List<ProjectEntry> getProjects() {
+		return projects;
+	}
+
+	/**
+	 * Add a project to the index.
+	 *
+	 * @param path
+	 * 		the path of the .project file
+	 * @param lastModified
+	 * 		the stamp of the .project file when it was read
+	 * @param projectName
+	 * @param natureIds
+	 */
+	void addProject(String path, long lastModified, String projectName,
+			String[] natureIds) {
+		ProjectEntry entry = new ProjectEntry();
+		entry.path = path;
+		entry.lastModified = lastModified;
+		entry.projectName = projectName;
+		entry.natureIds = natureIds == null ? new String[0] : natureIds;
+		projects.add(entry);
+	}
+
+	/**
+	 * Returns the file holding the index of a directory, or <code>null</code>
+	 * if the plug-in is not active.
+	 */
+	private static File getIndexFile(String root) {
+		Activator plugin = Activator.getDefault();
+		if (plugin == null) {
+			return null;
+		}
+		IPath location = plugin.getStateLocation().append(INDEX_FOLDER);
+		// the root is stored in the file, so hash collisions are detected
+		String name = Integer.toHexString(root.hashCode()) + ".idx"; //$NON-NLS-1$
+		return location.append(name).toFile();
+	}
+
+	/**
+	 * Read the index of a directory.
+	 *
+	 * @param root
+	 * 		the path of the indexed directory
+	 * @param directories
+	 * 		receives the directory listings of the index
+	 * @return the index, or <code>null</code> if the directory has no valid
+	 * 	index
+	 */
+	static ProjectIndex load(String root, DirectoryStampCache directories) {
+		File file = getIndexFile(root);
+		if (file == null || !file.isFile()) {
+			return null;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file)));
+			if (in.readInt() != VERSION || !root.equals(in.readUTF())) {
+				return null;
+			}
+			ProjectIndex index = new ProjectIndex(root);
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String path = in.readUTF();
+				long lastModified = in.readLong();
+				String projectName = in.readUTF();
+				if (projectName.length() == 0) {
+					projectName = null;
+				}
+				String[] natureIds = new String[in.readInt()];
+				for (int j = 0; j < natureIds.length; j++) {
+					natureIds[j] = in.readUTF();
+				}
+				index.addProject(path, lastModified, projectName, natureIds);
+			}
+			directories.read(in);
+			return index;
+		} catch (IOException e) {
+			// a missing or damaged index only costs a full search
+			directories.clear();
+			return null;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	/**
+	 * Write the index to the plug-in state location.
+	 *
+	 * @param directories
+	 * 		the directory listings of the search that found the projects
+	 * @throws IOException
+	 */
+	void save(DirectoryStampCache directories) throws IOException {
+		File file = getIndexFile(root);
+		if (file == null) {
+			return;
+		}
+		file.getParentFile().mkdirs();
+		// write to a temporary file first so a crash never leaves a
+		// truncated index behind
+		File temp = new File(file.getPath() + ".tmp"); //$NON-NLS-1$
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(temp)));
+		try {
+			out.writeInt(VERSION);
+			out.writeUTF(root);
+			out.writeInt(projects.size());
+			for (int i = 0; i < projects.size(); i++) {
+				ProjectEntry entry = projects.get(i);
+				out.writeUTF(entry.path);
+				out.writeLong(entry.lastModified);
+				out.writeUTF(entry.projectName == null ? "" //$NON-NLS-1$
+						: entry.projectName);
+				out.writeInt(entry.natureIds.length);
+				for (int j = 0; j < entry.natureIds.length; j++) {
+					out.writeUTF(entry.natureIds[j]);
+				}
+			}
+			directories.write(out);
+		} finally {
+			out.close();
+		}
+		file.delete();
+		if (!temp.renameTo(file)) {
+			throw new IOException("Could not write " + file); //$NON-NLS-1$
+		}
+	}
+}
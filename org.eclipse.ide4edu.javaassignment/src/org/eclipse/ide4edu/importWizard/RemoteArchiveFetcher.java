@@ -0,0 +1,316 @@
+package org.eclipse.ide4edu.importWizard;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.ui.internal.ide.IDEWorkbenchPlugin;
+
+/**
+ * Fetches the remote archives of several URLs at the same time, such as the
+ * archives of the sections of a class, on the pool of a
+ * {@link ParallelImportEngine}. The downloads from one server are limited
+ * to a number of connections; each download then uses a single connection,
+ * so the limit holds.
+ * <p>
+ * Each archive is handed to a listener on its download thread as soon as it
+ * is fetched, so its projects are found while the other archives are still
+ * downloaded. A failed download does not stop the others.
+ * </p>
+ */
+class RemoteArchiveFetcher {
+
+	/**
+	 * System property holding the number of archives downloaded at the same
+	 * time.
+	 */
+	static final String PARALLELISM_PROPERTY = "org.eclipse.ide4edu.importWizard.fetchParallelism"; //$NON-NLS-1$
+
+	/**
+	 * System property holding the number of connections opened to one
+	 * server at the same time.
+	 */
+	static final String CONNECTIONS_PROPERTY = "org.eclipse.ide4edu.importWizard.connectionsPerHost"; //$NON-NLS-1$
+
+	/**
+	 * The extension of manifest files, which list the URLs of archives one
+	 * per line.
+	 */
+	static final String MANIFEST_EXTENSION = ".txt"; //$NON-NLS-1$
+
+	private static final int DEFAULT_PARALLELISM = 4;
+
+	// as browsers do, more connections are treated as abuse by some servers
+	private static final int DEFAULT_CONNECTIONS = 2;
+
+	private static final long POLL_INTERVAL = 100;
+
+	private static final int TIMEOUT = 30000;
+
+	/**
+	 * Receives the archives as they are fetched.
+	 */
+	interface Listener {
+
+		/**
+		 * An archive was fetched. Runs on the download thread, while other
+		 * archives are still downloaded.
+		 *
+		 * @param url
+		 * @param file
+		 * 		the fetched archive
+		 * @param monitor
+		 * 		the monitor checked for cancellation
+		 * @throws IOException
+		 * 		if the archive cannot be read, reported as the failure of
+		 * 		its URL
+		 */
+		void archiveFetched(URL url, File file, IProgressMonitor monitor)
+				throws IOException;
+	}
+
+	private final int parallelism;
+
+	private final int connections;
+
+	private final Map<String, Semaphore> hosts = new HashMap<String, Semaphore>();
+
+	private DownloadCache cache;
+
+	private File folder;
+
+	/**
+	 * @param parallelism
+	 * 		the number of archives downloaded at the same time
+	 * @param connections
+	 * 		the number of connections to one server at the same time
+	 */
+	RemoteArchiveFetcher(int parallelism, int connections) {
+		this.parallelism = Math.max(1, parallelism);
+		this.connections = Math.max(1, connections);
+	}
+
+	/**
+	 * Returns the parallelism configured through
+	 * {@link #PARALLELISM_PROPERTY}, or the default.
+	 *
+	 * @return the number of downloads, at least <code>1</code>
+	 */
+	static int getDefaultParallelism() {
+		int parallelism = Integer.getInteger(PARALLELISM_PROPERTY, 0)
+				.intValue();
+		return parallelism > 0 ? parallelism : DEFAULT_PARALLELISM;
+	}
+
+	/**
+	 * Returns the connections per server configured through
+	 * {@link #CONNECTIONS_PROPERTY}, or the default.
+	 *
+	 * @return the number of connections, at least <code>1</code>
+	 */
+	static int getDefaultConnections() {
+		int connections = Integer.getInteger(CONNECTIONS_PROPERTY, 0)
+				.intValue();
+		return connections > 0 ? connections : DEFAULT_CONNECTIONS;
+	}
+
+	/**
+	 * Set the cache the archives are fetched through. The archives handed to
+	 * the listener stay pinned in the cache until the caller releases them.
+	 *
+	 * @param cache
+	 * 		the cache, or <code>null</code> to download every archive
+	 */
+	void setCache(DownloadCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Set the folder the archives are downloaded to when there is no cache.
+	 *
+	 * @param folder
+	 */
+	void setFolder(File folder) {
+		this.folder = folder;
+	}
+
+	/**
+	 * Read the URLs of the archives to fetch from the text of the remote
+	 * archive field: URLs separated by white space or commas, and manifest
+	 * files ending in {@link #MANIFEST_EXTENSION} listing URLs one per line.
+	 * A manifest is a URL or a local file; blank lines and lines starting
+	 * with <code>#</code> are skipped, and relative URLs in a remote
+	 * manifest are resolved against it. Remote manifests are read, so this
+	 * is not called on the UI thread.
+	 *
+	 * @param text
+	 * @return List of {@link URL}
+	 * @throws IOException
+	 * 		if a URL is malformed or a manifest cannot be read
+	 */
+	static List<URL> parseSources(String text) throws IOException {
+		List<URL> urls = new ArrayList<URL>();
+		String[] sources = text.trim().split("[\\s,]+"); //$NON-NLS-1$
+		for (int i = 0; i < sources.length; i++) {
+			String source = sources[i];
+			if (source.length() == 0) {
+				continue;
+			}
+			if (!source.toLowerCase().endsWith(MANIFEST_EXTENSION)) {
+				urls.add(new URL(source));
+				continue;
+			}
+			URL base = null;
+			InputStream in;
+			try {
+				base = new URL(source);
+				URLConnection connection = base.openConnection();
+				connection.setConnectTimeout(TIMEOUT);
+				connection.setReadTimeout(TIMEOUT);
+				in = connection.getInputStream();
+			} catch (MalformedURLException e) {
+				in = new FileInputStream(source);
+			}
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+					in, "UTF-8")); //$NON-NLS-1$
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					line = line.trim();
+					if (line.length() > 0 && !line.startsWith("#")) { //$NON-NLS-1$
+						urls.add(base == null ? new URL(line) : new URL(base,
+								line));
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		return urls;
+	}
+
+	/**
+	 * Returns a name identifying a list of URLs, whatever their order, for
+	 * naming what is kept about the fetch of the list.
+	 *
+	 * @param urls
+	 * 		the {@link URL}s of the archives
+	 * @return String
+	 */
+	static String getName(List<URL> urls) {
+		List<String> sorted = new ArrayList<String>(urls.size());
+		for (int i = 0; i < urls.size(); i++) {
+			sorted.add(urls.get(i).toString());
+		}
+		Collections.sort(sorted);
+		StringBuffer buffer = new StringBuffer();
+		for (int i = 0; i < sorted.size(); i++) {
+			buffer.append(sorted.get(i)).append('\n');
+		}
+		return "fetched-" + sorted.size() + '-' //$NON-NLS-1$
+				+ Integer.toHexString(buffer.toString().hashCode());
+	}
+
+	/**
+	 * Fetch the archives, handing each to the listener once fetched.
+	 *
+	 * @param urls
+	 * 		the {@link URL}s of the archives
+	 * @param listener
+	 * @param message
+	 * 		the message of the result if a fetch fails
+	 * @param monitor
+	 * 		the monitor to report to
+	 * @return a status holding one child per failed URL
+	 * @throws OperationCanceledException
+	 * 		if the monitor was canceled
+	 */
+	IStatus fetch(List<URL> urls, final Listener listener, String message,
+			IProgressMonitor monitor) {
+		List<ParallelImportEngine.Task> tasks = new ArrayList<ParallelImportEngine.Task>(
+				urls.size());
+		for (int i = 0; i < urls.size(); i++) {
+			final URL url = urls.get(i);
+			tasks.add(new ParallelImportEngine.Task() {
+				public String getName() {
+					return url.toString();
+				}
+
+				public void run(IProgressMonitor taskMonitor)
+						throws CoreException {
+					try {
+						listener.archiveFetched(url, fetch(url, taskMonitor),
+								taskMonitor);
+					} catch (IOException e) {
+						throw new CoreException(new Status(IStatus.ERROR,
+								IDEWorkbenchPlugin.IDE_WORKBENCH, 1, String
+										.valueOf(e.getMessage()), e));
+					}
+				}
+			});
+		}
+		return new ParallelImportEngine(parallelism).run(tasks, message,
+				monitor);
+	}
+
+	/**
+	 * Fetch one archive, waiting for a connection to its server.
+	 */
+	private File fetch(URL url, IProgressMonitor monitor) throws IOException {
+		Semaphore host = getHost(url);
+		try {
+			while (!host.tryAcquire(POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+				if (monitor.isCanceled()) {
+					throw new OperationCanceledException();
+				}
+			}
+		} catch (InterruptedException e) {
+			throw new OperationCanceledException();
+		}
+		try {
+			if (cache != null) {
+				return cache.fetch(url, 1, monitor);
+			}
+			// archives of the same name on several servers are kept apart
+			String path = url.getPath();
+			File target = new File(folder, Integer.toHexString(url.toString()
+					.hashCode())
+					+ '-' + path.substring(path.lastIndexOf('/') + 1));
+			new SegmentedDownloader(1).download(url, target, monitor);
+			return target;
+		} finally {
+			host.release();
+		}
+	}
+
+	private Semaphore getHost(URL url) {
+		String key = url.getProtocol() + "://" + url.getHost() + ':' //$NON-NLS-1$
+				+ url.getPort();
+		synchronized (hosts) {
+			Semaphore host = hosts.get(key);
+			if (host == null) {
+				host = new Semaphore(connections);
+				hosts.put(key, host);
+			}
+			return host;
+		}
+	}
+}
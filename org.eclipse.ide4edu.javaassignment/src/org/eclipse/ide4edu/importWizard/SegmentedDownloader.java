@@ -0,0 +1,709 @@
+package org.eclipse.ide4edu.importWizard;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+/**
+ * Downloads a file over HTTP in byte ranges fetched concurrently, which
+ * uses the bandwidth of links where a single connection is limited by its
+ * latency. The server is probed with a <code>HEAD</code> request for the
+ * length of the file and its support of ranges; the file is preallocated
+ * and every range is written at its position as it arrives.
+ * <p>
+ * The file is downloaded into a <code>.part</code> file, which is renamed
+ * to the target once complete. Next to it, a state file holds the
+ * validator of the file (its <code>ETag</code> or
+ * <code>Last-Modified</code> date) and the progress of every range, so a
+ * download that failed or was canceled continues where it stopped when it
+ * is started again, as long as the file on the server did not change.
+ * </p>
+ * <p>
+ * Connections are released to the keep-alive cache of the virtual machine
+ * once their response is read, so the probe and the ranges after it reuse
+ * the connection to the server instead of opening new ones.
+ * </p>
+ * <p>
+ * Servers that do not announce ranges, files whose length is not known and
+ * other protocols are downloaded in a single stream with a large buffer,
+ * from the start.
+ * </p>
+ */
+class SegmentedDownloader {
+
+	/**
+	 * System property holding the number of ranges downloaded at the same
+	 * time.
+	 */
+	static final String PARALLELISM_PROPERTY = "org.eclipse.ide4edu.importWizard.downloadParallelism"; //$NON-NLS-1$
+
+	/**
+	 * The suffix of the file a download is written to until it is
+	 * complete.
+	 */
+	static final String PART_SUFFIX = ".part"; //$NON-NLS-1$
+
+	/**
+	 * The suffix of the state file next to the <code>.part</code> file.
+	 */
+	static final String STATE_SUFFIX = ".state"; //$NON-NLS-1$
+
+	// more connections per server are treated as abuse by some servers
+	private static final int DEFAULT_PARALLELISM = 4;
+
+	// smaller files are not worth the additional requests
+	private static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final int TIMEOUT = 30000;
+
+	private static final long POLL_INTERVAL = 100;
+
+	// how often the progress of the ranges is saved, in milliseconds
+	private static final long SAVE_INTERVAL = 1000;
+
+	/**
+	 * What the probe of a URL tells about the file.
+	 */
+	static class Probe {
+
+		/**
+		 * The URL after redirects.
+		 */
+		final URL url;
+
+		/**
+		 * The length of the file, or <code>-1</code> if unknown.
+		 */
+		final long length;
+
+		/**
+		 * Whether the server serves byte ranges of the file.
+		 */
+		final boolean ranges;
+
+		/**
+		 * The <code>ETag</code> of the file, or <code>null</code>.
+		 */
+		final String etag;
+
+		/**
+		 * The <code>Last-Modified</code> date of the file, or
+		 * <code>null</code>.
+		 */
+		final String lastModified;
+
+		Probe(URL url, long length, boolean ranges, String etag,
+				String lastModified) {
+			this.url = url;
+			this.length = length;
+			this.ranges = ranges;
+			this.etag = etag;
+			this.lastModified = lastModified;
+		}
+
+		/**
+		 * Returns the validator sent in <code>If-Range</code>, which must be
+		 * a strong entity tag or a date.
+		 *
+		 * @return the validator, or <code>null</code> if the file has none
+		 */
+		String getValidator() {
+			if (etag != null && !etag.startsWith("W/")) { //$NON-NLS-1$
+				return etag;
+			}
+			return lastModified;
+		}
+	}
+
+	/**
+	 * A byte range of the file and the number of its bytes written.
+	 */
+	static class Segment {
+
+		final long start;
+
+		final long end;
+
+		final AtomicLong done = new AtomicLong();
+
+		Segment(long start, long end) {
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	private final int parallelism;
+
+	private Probe lastProbe;
+
+	/**
+	 * @param parallelism
+	 * 		the number of ranges downloaded at the same time
+	 */
+	SegmentedDownloader(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Returns the parallelism configured through
+	 * {@link #PARALLELISM_PROPERTY}, or the default.
+	 *
+	 * @return the number of connections, at least <code>1</code>
+	 */
+	static int getDefaultParallelism() {
+		int parallelism = Integer.getInteger(PARALLELISM_PROPERTY, 0)
+				.intValue();
+		return parallelism > 0 ? parallelism : DEFAULT_PARALLELISM;
+	}
+
+	/**
+	 * Returns what the probe of the last download told about the file.
+	 *
+	 * @return the probe, or <code>null</code> if the server was not probed
+	 */
+	Probe getLastProbe() {
+		return lastProbe;
+	}
+
+	/**
+	 * Download a file, continuing an earlier download of the same file that
+	 * did not complete. If the download fails, what was downloaded is kept
+	 * for the next attempt when the server supports continuing it.
+	 *
+	 * @param url
+	 * @param target
+	 * 		the file receiving the contents
+	 * @param monitor
+	 * 		the monitor to report to, checked for cancellation
+	 * @return the number of bytes downloaded
+	 * @throws IOException
+	 * @throws OperationCanceledException
+	 * 		if the monitor was canceled
+	 */
+	long download(URL url, File target, IProgressMonitor monitor)
+			throws IOException {
+		return download(probe(url), target, monitor);
+	}
+
+	/**
+	 * Download a file whose server was probed already, such as by the
+	 * request that validated the URL, sizing and preallocating the file from
+	 * what the probe told.
+	 *
+	 * @param probe
+	 * 		what the server told about the file
+	 * @param target
+	 * 		the file receiving the contents
+	 * @param monitor
+	 * 		the monitor to report to, checked for cancellation
+	 * @return the number of bytes downloaded
+	 * @throws IOException
+	 * @throws OperationCanceledException
+	 * 		if the monitor was canceled
+	 * @see #download(URL, File, IProgressMonitor)
+	 */
+	long download(Probe probe, File target, IProgressMonitor monitor)
+			throws IOException {
+		File part = new File(target.getPath() + PART_SUFFIX);
+		File state = new File(part.getPath() + STATE_SUFFIX);
+		boolean completed = false;
+		// kept if the server cannot be reached
+		boolean resumable = state.isFile();
+		try {
+			lastProbe = probe;
+			monitor.beginTask(target.getName(),
+					probe.length > 0 ? toWork(probe.length)
+							: IProgressMonitor.UNKNOWN);
+			long bytes = -1;
+			resumable = probe.ranges && probe.length > 0
+					&& probe.getValidator() != null;
+			if (probe.ranges && probe.length > 0) {
+				List<Segment> segments = resumable ? loadState(state, part,
+						probe) : null;
+				if (segments == null) {
+					segments = createSegments(probe.length);
+				}
+				bytes = downloadSegments(probe, part, resumable ? state
+						: null, segments, monitor);
+			}
+			if (bytes < 0) {
+				// the file changed or the server ignored the ranges
+				resumable = false;
+				state.delete();
+				bytes = downloadStream(probe.url, part, monitor);
+			}
+			if (!part.renameTo(target)
+					&& !(target.delete() && part.renameTo(target))) {
+				throw new IOException("Could not write " + target); //$NON-NLS-1$
+			}
+			state.delete();
+			completed = true;
+			return bytes;
+		} finally {
+			monitor.done();
+			if (!completed && !resumable) {
+				part.delete();
+				state.delete();
+			}
+		}
+	}
+
+	/**
+	 * Ask the server for the length of a file, whether it serves byte
+	 * ranges and the validators of the file.
+	 *
+	 * @param url
+	 * @return Probe
+	 * @throws IOException
+	 */
+	Probe probe(URL url) throws IOException {
+		URLConnection connection = url.openConnection();
+		if (!(connection instanceof HttpURLConnection)) {
+			return new Probe(url, -1, false, null, null);
+		}
+		HttpURLConnection http = (HttpURLConnection) connection;
+		http.setRequestMethod("HEAD"); //$NON-NLS-1$
+		http.setConnectTimeout(TIMEOUT);
+		http.setReadTimeout(TIMEOUT);
+		try {
+			if (http.getResponseCode() != HttpURLConnection.HTTP_OK) {
+				// some servers refuse HEAD, the GET will tell
+				return new Probe(url, -1, false, null, null);
+			}
+			return readProbe(http);
+		} finally {
+			release(http);
+		}
+	}
+
+	/**
+	 * Read what the headers of a successful response tell about the file,
+	 * whether the response is to a <code>HEAD</code> or a <code>GET</code>
+	 * request.
+	 *
+	 * @param http
+	 * 		a connection with a <code>200</code> response
+	 * @return Probe
+	 */
+	static Probe readProbe(HttpURLConnection http) {
+		String ranges = http.getHeaderField("Accept-Ranges"); //$NON-NLS-1$
+		return new Probe(http.getURL(), parseLength(http
+				.getHeaderField("Content-Length")), ranges != null //$NON-NLS-1$
+				&& ranges.toLowerCase().indexOf("bytes") >= 0, http //$NON-NLS-1$
+				.getHeaderField("ETag"), http //$NON-NLS-1$
+				.getHeaderField("Last-Modified")); //$NON-NLS-1$
+	}
+
+	/**
+	 * Release a connection whose response has no body left, returning it to
+	 * the keep-alive cache for the next request to the same server.
+	 *
+	 * @param http
+	 */
+	static void release(HttpURLConnection http) {
+		try {
+			InputStream in = http.getResponseCode() < 400 ? http
+					.getInputStream() : http.getErrorStream();
+			if (in != null) {
+				in.close();
+			}
+		} catch (IOException e) {
+			// cannot be reused
+			http.disconnect();
+		}
+	}
+
+	/**
+	 * Split a file into the ranges downloaded concurrently.
+	 *
+	 * @param length
+	 * 		the length of the file
+	 * @return List of Segment
+	 */
+	List<Segment> createSegments(long length) {
+		int count = (int) Math.max(1, Math.min(parallelism, length
+				/ MIN_SEGMENT_SIZE));
+		long size = (length + count - 1) / count;
+		List<Segment> segments = new ArrayList<Segment>(count);
+		for (int i = 0; i < count; i++) {
+			long start = i * size;
+			segments.add(new Segment(start, Math.min(start + size, length) - 1));
+		}
+		return segments;
+	}
+
+	/**
+	 * Download the missing bytes of the ranges of a file concurrently into
+	 * the preallocated part file, saving their progress in the state file.
+	 *
+	 * @param state
+	 * 		the state file, or <code>null</code> if the download cannot be
+	 * 		continued
+	 * @return the number of bytes, or <code>-1</code> if the server did not
+	 * 	serve a range
+	 */
+	private long downloadSegments(final Probe probe, File part, File state,
+			List<Segment> segments, IProgressMonitor monitor)
+			throws IOException {
+		final AtomicLong received = new AtomicLong();
+		for (int i = 0; i < segments.size(); i++) {
+			received.addAndGet(segments.get(i).done.get());
+		}
+		// the ranges are stopped without interrupts, which would close the
+		// shared channel
+		final AtomicBoolean stopped = new AtomicBoolean();
+		final List<HttpURLConnection> connections = Collections
+				.synchronizedList(new ArrayList<HttpURLConnection>());
+		ExecutorService executor = new ThreadPoolExecutor(segments.size(),
+				segments.size(), 1, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable,
+								"Assignment archive download"); //$NON-NLS-1$
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		RandomAccessFile file = new RandomAccessFile(part, "rw"); //$NON-NLS-1$
+		final FileChannel channel = file.getChannel();
+		try {
+			file.setLength(probe.length);
+			if (state != null) {
+				saveState(state, probe, segments, channel);
+			}
+			List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+			for (int i = 0; i < segments.size(); i++) {
+				final Segment segment = segments.get(i);
+				futures.add(executor.submit(new Callable<Boolean>() {
+					public Boolean call() throws IOException {
+						return Boolean.valueOf(downloadRange(probe, segment,
+								channel, received, stopped, connections));
+					}
+				}));
+			}
+			int reported = 0;
+			long saved = System.currentTimeMillis();
+			for (int i = 0; i < futures.size(); i++) {
+				Future<Boolean> future = futures.get(i);
+				while (true) {
+					if (monitor.isCanceled()) {
+						throw new OperationCanceledException();
+					}
+					try {
+						if (!future.get(POLL_INTERVAL, TimeUnit.MILLISECONDS)
+								.booleanValue()) {
+							return -1;
+						}
+						break;
+					} catch (TimeoutException e) {
+						// report the progress and check the monitor again
+					} finally {
+						int work = toWork(received.get());
+						monitor.worked(work - reported);
+						reported = work;
+					}
+					if (state != null
+							&& System.currentTimeMillis() - saved > SAVE_INTERVAL) {
+						saveState(state, probe, segments, channel);
+						saved = System.currentTimeMillis();
+					}
+				}
+			}
+			return probe.length;
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw (Error) cause;
+		} finally {
+			// the running ranges stop at their next read, or fail when
+			// their connection is closed; the connections of completed
+			// ranges were removed and stay alive
+			stopped.set(true);
+			synchronized (connections) {
+				for (int i = 0; i < connections.size(); i++) {
+					connections.get(i).disconnect();
+				}
+			}
+			executor.shutdown();
+			try {
+				executor.awaitTermination(TIMEOUT, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			try {
+				if (state != null && channel.isOpen()) {
+					// the progress of a failed download is kept for the
+					// next attempt
+					saveState(state, probe, segments, channel);
+				}
+			} finally {
+				file.close();
+			}
+		}
+	}
+
+	/**
+	 * Download the missing bytes of a range of a file to their position in
+	 * the channel.
+	 *
+	 * @return <code>false</code> if the server sent another response than
+	 * 	the range, such as the whole file after it changed
+	 */
+	private boolean downloadRange(Probe probe, Segment segment,
+			FileChannel channel, AtomicLong received, AtomicBoolean stopped,
+			List<HttpURLConnection> connections) throws IOException {
+		long position = segment.start + segment.done.get();
+		if (position > segment.end || stopped.get()) {
+			return true;
+		}
+		HttpURLConnection http = (HttpURLConnection) probe.url
+				.openConnection();
+		connections.add(http);
+		http.setConnectTimeout(TIMEOUT);
+		http.setReadTimeout(TIMEOUT);
+		http.setRequestProperty("Range", "bytes=" + position + "-" //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				+ segment.end);
+		String validator = probe.getValidator();
+		if (validator != null) {
+			http.setRequestProperty("If-Range", validator); //$NON-NLS-1$
+		}
+		// kept alive for the next request once the range is read
+		boolean completed = false;
+		try {
+			if (http.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+				return false;
+			}
+			InputStream in = http.getInputStream();
+			try {
+				byte[] buffer = new byte[BUFFER_SIZE];
+				int count;
+				while (position <= segment.end
+						&& (count = in.read(buffer)) != -1) {
+					if (stopped.get()) {
+						return true;
+					}
+					count = (int) Math.min(count, segment.end + 1 - position);
+					ByteBuffer data = ByteBuffer.wrap(buffer, 0, count);
+					while (data.hasRemaining()) {
+						position += channel.write(data, position);
+					}
+					// counted once written, so saved progress is on disk
+					segment.done.addAndGet(count);
+					received.addAndGet(count);
+				}
+				if (position <= segment.end) {
+					throw new IOException("Download ended at " + position //$NON-NLS-1$
+							+ " instead of " + (segment.end + 1) + ": " //$NON-NLS-1$ //$NON-NLS-2$
+							+ probe.url);
+				}
+				// not disconnected when the download stops, which would
+				// evict it from the keep-alive cache
+				connections.remove(http);
+				completed = true;
+				return true;
+			} finally {
+				in.close();
+			}
+		} finally {
+			if (!completed) {
+				http.disconnect();
+			}
+		}
+	}
+
+	/**
+	 * Read the progress of an earlier download of the same file.
+	 *
+	 * @param state
+	 * 		the state file
+	 * @param part
+	 * 		the file receiving the contents
+	 * @param probe
+	 * 		what the server tells about the file now
+	 * @return the ranges, or <code>null</code> if the download starts over
+	 */
+	List<Segment> loadState(File state, File part, Probe probe) {
+		if (!state.isFile() || part.length() != probe.length) {
+			return null;
+		}
+		Properties properties = new Properties();
+		try {
+			InputStream in = new FileInputStream(state);
+			try {
+				properties.load(in);
+			} finally {
+				in.close();
+			}
+			if (!String.valueOf(probe.length).equals(
+					properties.getProperty("length")) //$NON-NLS-1$
+					|| !equals(probe.etag, properties.getProperty("etag")) //$NON-NLS-1$
+					|| !equals(probe.lastModified, properties
+							.getProperty("lastModified"))) { //$NON-NLS-1$
+				// the file changed on the server
+				return null;
+			}
+			int count = Integer.parseInt(properties.getProperty("segments")); //$NON-NLS-1$
+			List<Segment> segments = new ArrayList<Segment>(count);
+			long next = 0;
+			for (int i = 0; i < count; i++) {
+				String[] fields = properties.getProperty("segment." + i) //$NON-NLS-1$
+						.split(","); //$NON-NLS-1$
+				Segment segment = new Segment(Long.parseLong(fields[0]), Long
+						.parseLong(fields[1]));
+				long done = Long.parseLong(fields[2]);
+				if (segment.start != next || segment.end < segment.start
+						|| done < 0 || done > segment.end - segment.start + 1) {
+					return null;
+				}
+				segment.done.set(done);
+				segments.add(segment);
+				next = segment.end + 1;
+			}
+			return next == probe.length ? segments : null;
+		} catch (IOException e) {
+			return null;
+		} catch (RuntimeException e) {
+			// a damaged state file
+			return null;
+		}
+	}
+
+	/**
+	 * Save the progress of the ranges, once the bytes counted are on disk.
+	 * The state is replaced at once where the platform allows it.
+	 *
+	 * @param state
+	 * 		the state file
+	 * @param probe
+	 * 		what the server told about the file
+	 * @param segments
+	 * @param channel
+	 * 		the channel of the part file, forced to disk first
+	 * @throws IOException
+	 */
+	void saveState(File state, Probe probe, List<Segment> segments,
+			FileChannel channel) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty("url", probe.url.toString()); //$NON-NLS-1$
+		properties.setProperty("length", String.valueOf(probe.length)); //$NON-NLS-1$
+		if (probe.etag != null) {
+			properties.setProperty("etag", probe.etag); //$NON-NLS-1$
+		}
+		if (probe.lastModified != null) {
+			properties.setProperty("lastModified", probe.lastModified); //$NON-NLS-1$
+		}
+		properties.setProperty("segments", String.valueOf(segments.size())); //$NON-NLS-1$
+		for (int i = 0; i < segments.size(); i++) {
+			Segment segment = segments.get(i);
+			properties.setProperty("segment." + i, segment.start + "," //$NON-NLS-1$ //$NON-NLS-2$
+					+ segment.end + "," + segment.done.get()); //$NON-NLS-1$
+		}
+		channel.force(false);
+		File saved = new File(state.getPath() + ".new"); //$NON-NLS-1$
+		OutputStream out = new FileOutputStream(saved);
+		try {
+			properties.store(out, null);
+		} finally {
+			out.close();
+		}
+		if (!saved.renameTo(state)
+				&& !(state.delete() && saved.renameTo(state))) {
+			throw new IOException("Could not write " + state); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Download a file in a single stream.
+	 */
+	private long downloadStream(URL url, File target, IProgressMonitor monitor)
+			throws IOException {
+		URLConnection connection = url.openConnection();
+		connection.setConnectTimeout(TIMEOUT);
+		connection.setReadTimeout(TIMEOUT);
+		InputStream in = connection.getInputStream();
+		try {
+			OutputStream out = new FileOutputStream(target);
+			try {
+				byte[] buffer = new byte[BUFFER_SIZE];
+				long bytes = 0;
+				int reported = 0;
+				int count;
+				while ((count = in.read(buffer)) != -1) {
+					if (monitor.isCanceled()) {
+						throw new OperationCanceledException();
+					}
+					out.write(buffer, 0, count);
+					bytes += count;
+					int work = toWork(bytes);
+					monitor.worked(work - reported);
+					reported = work;
+				}
+				return bytes;
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private static boolean equals(String value, String other) {
+		return value == null ? other == null : value.equals(other);
+	}
+
+	private static long parseLength(String value) {
+		if (value == null) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Returns the units of work for a number of bytes, in kilobytes so
+	 * large files fit an int.
+	 */
+	private static int toWork(long bytes) {
+		return (int) (bytes / 1024);
+	}
+}
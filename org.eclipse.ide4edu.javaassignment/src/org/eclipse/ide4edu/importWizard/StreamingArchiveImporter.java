@@ -0,0 +1,634 @@
+package org.eclipse.ide4edu.importWizard;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.ide4edu.javaassignment.Activator;
+
+/**
+ * Imports the projects of an archive too large to be indexed, reading the
+ * archive in a single forward pass and writing every entry to the projects it
+ * belongs to as it is read. Only the description files of the projects are
+ * kept in memory, so the heap used does not depend on the number of entries
+ * of the archive.
+ * <p>
+ * Finding the projects takes one pass, importing the selected projects a
+ * second one; the projects are created from their extracted folders
+ * afterwards.
+ * </p>
+ * <p>
+ * Remote archives can also be streamed: the download is extracted into a
+ * staging folder as it arrives, finding the projects in the same pass, and
+ * the selected projects are moved from there into the workspace location.
+ * Every byte is then written once, instead of being written to a
+ * downloaded file and read back for the import.
+ * </p>
+ */
+class StreamingArchiveImporter {
+
+	/**
+	 * System property holding the size in bytes from which archives are
+	 * imported in a forward pass instead of being indexed.
+	 */
+	static final String THRESHOLD_PROPERTY = "org.eclipse.ide4edu.importWizard.streamingThreshold"; //$NON-NLS-1$
+
+	// an index of larger archives does not fit a default heap comfortably
+	private static final long DEFAULT_THRESHOLD = 512L * 1024 * 1024;
+
+	// description files are small, larger ones are not read
+	private static final int MAX_DESCRIPTION_SIZE = 1024 * 1024;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * System property streaming remote archives into a staging folder
+	 * instead of downloading them, when set to <code>true</code>.
+	 */
+	static final String REMOTE_PROPERTY = "org.eclipse.ide4edu.importWizard.streamRemote"; //$NON-NLS-1$
+
+	private static final int TIMEOUT = 30000;
+
+	/**
+	 * A project found in an archive.
+	 */
+	static class Project {
+
+		/**
+		 * The folder prefix of the project in the archive.
+		 */
+		final String prefix;
+
+		/**
+		 * The contents of the description file.
+		 */
+		final byte[] description;
+
+		Project(String prefix, byte[] description) {
+			this.prefix = prefix;
+			this.description = description;
+		}
+	}
+
+	/**
+	 * The projects of a remote archive staged in a folder.
+	 */
+	static class Staged {
+
+		/**
+		 * List of {@link Project}, found at their prefix in the staging
+		 * folder.
+		 */
+		final List<Project> projects;
+
+		/**
+		 * The <code>ETag</code> and <code>Last-Modified</code> date the
+		 * server sent for the archive, or <code>null</code> if it sent
+		 * neither.
+		 */
+		final String validator;
+
+		Staged(List<Project> projects, String validator) {
+			this.projects = projects;
+			this.validator = validator;
+		}
+	}
+
+	private StreamingArchiveImporter() {
+	}
+
+	/**
+	 * Returns the threshold configured through {@link #THRESHOLD_PROPERTY},
+	 * or the default.
+	 *
+	 * @return the size in bytes from which archives are streamed
+	 */
+	static long getDefaultThreshold() {
+		long threshold = Long.getLong(THRESHOLD_PROPERTY, -1).longValue();
+		return threshold >= 0 ? threshold : DEFAULT_THRESHOLD;
+	}
+
+	/**
+	 * Returns whether remote archives are streamed through
+	 * {@link #REMOTE_PROPERTY}.
+	 *
+	 * @return boolean
+	 */
+	static boolean getDefaultStreamRemote() {
+		return Boolean.getBoolean(REMOTE_PROPERTY);
+	}
+
+	/**
+	 * Returns the folder a remote archive is staged in, in the state
+	 * location of the plug-in, which is on the file system of the workspace
+	 * so that its projects can be moved.
+	 *
+	 * @param url
+	 * @return the folder, or <code>null</code> if the plug-in is not running
+	 */
+	static File getStagingFolder(URL url) {
+		Activator plugin = Activator.getDefault();
+		if (plugin == null) {
+			return null;
+		}
+		return plugin.getStateLocation().append("staging").append( //$NON-NLS-1$
+				Integer.toHexString(url.toString().hashCode())).toFile();
+	}
+
+	/**
+	 * Download a remote archive and extract it into a staging folder as it
+	 * arrives, finding its projects on the way.
+	 *
+	 * @param url
+	 * @param staging
+	 * 		the folder receiving the entries, replaced if it exists
+	 * @param store
+	 * 		the store the files are linked to, or <code>null</code> to write
+	 * 		them
+	 * @param monitor
+	 * 		the monitor to report the download to, checked for cancellation
+	 * @return the projects and the validator of the archive
+	 * @throws IOException
+	 * @throws OperationCanceledException
+	 * 		if the monitor was canceled
+	 */
+	static Staged stage(URL url, File staging, ContentStore store,
+			final IProgressMonitor monitor) throws IOException {
+		URLConnection connection = url.openConnection();
+		connection.setConnectTimeout(TIMEOUT);
+		connection.setReadTimeout(TIMEOUT);
+		final long length = connection.getContentLength();
+		String etag = connection.getHeaderField("ETag"); //$NON-NLS-1$
+		String modified = connection.getHeaderField("Last-Modified"); //$NON-NLS-1$
+		String validator = etag == null && modified == null ? null : etag
+				+ " " + modified; //$NON-NLS-1$
+		monitor.beginTask(url.toString(), length > 0 ? (int) (length / 1024)
+				: IProgressMonitor.UNKNOWN);
+		try {
+			// the progress is the share of the download read so far
+			InputStream in = new FilterInputStream(connection.getInputStream()) {
+				private long bytes;
+
+				private int reported;
+
+				public int read() throws IOException {
+					byte[] one = new byte[1];
+					return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+				}
+
+				public int read(byte[] buffer, int offset, int count)
+						throws IOException {
+					if (monitor.isCanceled()) {
+						throw new OperationCanceledException();
+					}
+					count = super.read(buffer, offset, count);
+					if (count > 0) {
+						bytes += count;
+						int work = (int) (bytes / 1024);
+						monitor.worked(work - reported);
+						reported = work;
+					}
+					return count;
+				}
+			};
+			return new Staged(stage(in, staging, store, monitor), validator);
+		} finally {
+			monitor.done();
+		}
+	}
+
+	/**
+	 * Extract every entry of an archive read from a stream into a staging
+	 * folder, in one forward pass, and find its projects. The staging folder
+	 * is deleted if the extraction fails.
+	 *
+	 * @param in
+	 * 		the archive, closed when read
+	 * @param staging
+	 * 		the folder receiving the entries, replaced if it exists
+	 * @param store
+	 * 		the store the files are linked to, or <code>null</code> to write
+	 * 		them
+	 * @param monitor
+	 * 		the monitor checked for cancellation
+	 * @return List of {@link Project}
+	 * @throws IOException
+	 * @throws OperationCanceledException
+	 * 		if the monitor was canceled
+	 */
+	static List<Project> stage(InputStream in, File staging,
+			ContentStore store, IProgressMonitor monitor) throws IOException {
+		// left over from an earlier attempt
+		FastProjectCopier.delete(staging);
+		mkdirs(staging);
+		List<Project> projects = new ArrayList<Project>();
+		boolean completed = false;
+		ArchiveStream stream = ArchiveStream.open(in);
+		try {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			long bytes = 0;
+			int count = 0;
+			ArchiveIndex.Entry entry;
+			while ((entry = stream.next()) != null) {
+				if ((++count & 0x3ff) == 0 && monitor.isCanceled()) {
+					throw new OperationCanceledException();
+				}
+				if (entry.name.length() == 0 || !isContained(entry.name)) {
+					if (entry.folder) {
+						continue;
+					}
+					throw new IOException("Invalid entry " + entry.name); //$NON-NLS-1$
+				}
+				File file = new File(staging, entry.name);
+				if (entry.folder) {
+					mkdirs(file);
+					continue;
+				}
+				mkdirs(file.getParentFile());
+				if (ArchiveIndex.isProjectFile(entry)
+						&& entry.size <= MAX_DESCRIPTION_SIZE) {
+					byte[] description = read(stream.getContents(), buffer);
+					write(new ByteArrayInputStream(description), file,
+							buffer);
+					bytes += description.length;
+					projects.add(new Project(ArchiveIndex
+							.getProjectPrefix(entry), description));
+				} else if (store != null) {
+					bytes += store.write(stream.getContents(), file, buffer);
+				} else {
+					bytes += write(stream.getContents(), file, buffer);
+				}
+			}
+			ImportProfile.countBytes(bytes);
+			ImportProfile.countFiles(count);
+			completed = true;
+			return projects;
+		} finally {
+			stream.close();
+			if (!completed) {
+				FastProjectCopier.delete(staging);
+			}
+		}
+	}
+
+	/**
+	 * Move the selected projects of a staged archive to their targets. A
+	 * project nested in another selected project is copied before the
+	 * outer one is moved; the contents of a project whose target exists,
+	 * such as one created by the journal of the import, are moved into it.
+	 * What cannot be renamed, such as across file systems, is copied.
+	 *
+	 * @param staging
+	 * 		the staging folder
+	 * @param targets
+	 * 		the directory receiving each project, by folder prefix
+	 * @param monitor
+	 * 		the monitor checked for cancellation
+	 * @throws IOException
+	 * @throws OperationCanceledException
+	 * 		if the monitor was canceled
+	 */
+	static void move(File staging, Map<String, File> targets,
+			IProgressMonitor monitor) throws IOException {
+		List<String> nested = new ArrayList<String>();
+		List<String> outer = new ArrayList<String>();
+		Iterator<String> prefixes = targets.keySet().iterator();
+		while (prefixes.hasNext()) {
+			String prefix = prefixes.next();
+			if (!isContained(prefix)) {
+				throw new IOException("Invalid entry " + prefix); //$NON-NLS-1$
+			}
+			boolean inner = false;
+			Iterator<String> others = targets.keySet().iterator();
+			while (others.hasNext() && !inner) {
+				String other = others.next();
+				inner = other.length() < prefix.length()
+						&& prefix.startsWith(other);
+			}
+			(inner ? nested : outer).add(prefix);
+		}
+		FastProjectCopier copier = null;
+		try {
+			for (int i = 0; i < nested.size() + outer.size(); i++) {
+				if (monitor.isCanceled()) {
+					throw new OperationCanceledException();
+				}
+				boolean inner = i < nested.size();
+				String prefix = inner ? nested.get(i) : outer.get(i
+						- nested.size());
+				File source = prefix.length() == 0 ? staging : new File(
+						staging, prefix);
+				File target = targets.get(prefix);
+				mkdirs(target.getParentFile());
+				boolean moved = !inner
+						&& (target.exists() ? moveContents(source, target)
+								: source.renameTo(target));
+				if (!moved) {
+					if (copier == null) {
+						copier = new FastProjectCopier(FastProjectCopier
+								.getDefaultParallelism());
+					}
+					copier.copy(source, target, monitor);
+				}
+			}
+		} finally {
+			if (copier != null) {
+				copier.dispose();
+			}
+		}
+	}
+
+	/**
+	 * Move projects moved by {@link #move(File, Map, IProgressMonitor)}
+	 * back into the staging folder, such as after their import failed, so
+	 * they can be imported again. The files of a target that are still
+	 * staged, such as those of a nested project that was copied, are
+	 * deleted; the targets are deleted.
+	 *
+	 * @param staging
+	 * 		the staging folder
+	 * @param targets
+	 * 		the directory of each project, by folder prefix
+	 * @throws IOException
+	 */
+	static void moveBack(File staging, Map<String, File> targets)
+			throws IOException {
+		FastProjectCopier copier = null;
+		try {
+			Iterator<Map.Entry<String, File>> iterator = targets.entrySet()
+					.iterator();
+			while (iterator.hasNext()) {
+				Map.Entry<String, File> entry = iterator.next();
+				File target = entry.getValue();
+				if (!target.isDirectory()) {
+					continue;
+				}
+				String prefix = entry.getKey();
+				File source = prefix.length() == 0 ? staging : new File(
+						staging, prefix);
+				mkdirs(source);
+				// written by the journal of the import, not staged
+				new File(target, ImportJournal.MARKER).delete();
+				String[] names = target.list();
+				for (int i = 0; names != null && i < names.length; i++) {
+					File file = new File(target, names[i]);
+					File staged = new File(source, names[i]);
+					if (staged.exists() || file.renameTo(staged)) {
+						continue;
+					}
+					if (!file.isDirectory()) {
+						InputStream in = new FileInputStream(file);
+						try {
+							write(in, staged, new byte[BUFFER_SIZE]);
+						} finally {
+							in.close();
+						}
+						continue;
+					}
+					if (copier == null) {
+						copier = new FastProjectCopier(FastProjectCopier
+								.getDefaultParallelism());
+					}
+					copier.copy(file, staged, new NullProgressMonitor());
+				}
+				FastProjectCopier.delete(target);
+			}
+		} finally {
+			if (copier != null) {
+				copier.dispose();
+			}
+		}
+	}
+
+	/**
+	 * Move the files of a folder into an existing folder, keeping the target
+	 * itself.
+	 *
+	 * @return <code>false</code> if a file could not be renamed, the files
+	 * 	left are copied
+	 */
+	private static boolean moveContents(File source, File target) {
+		String[] names = source.list();
+		if (names == null) {
+			return false;
+		}
+		for (int i = 0; i < names.length; i++) {
+			if (!new File(source, names[i]).renameTo(new File(target,
+					names[i]))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Find the projects of an archive, reading their description files.
+	 *
+	 * @param archive
+	 * @param monitor
+	 * 		the monitor checked for cancellation
+	 * @return List of {@link Project}
+	 * @throws IOException
+	 * @throws OperationCanceledException
+	 * 		if the monitor was canceled
+	 */
+	static List<Project> findProjects(File archive, IProgressMonitor monitor)
+			throws IOException {
+		List<Project> projects = new ArrayList<Project>();
+		ArchiveStream stream = ArchiveStream.open(archive);
+		try {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int count = 0;
+			ArchiveIndex.Entry entry;
+			while ((entry = stream.next()) != null) {
+				if ((++count & 0x3ff) == 0 && monitor.isCanceled()) {
+					throw new OperationCanceledException();
+				}
+				if (ArchiveIndex.isProjectFile(entry)
+						&& entry.size <= MAX_DESCRIPTION_SIZE) {
+					projects.add(new Project(ArchiveIndex
+							.getProjectPrefix(entry), read(stream
+							.getContents(), buffer)));
+				}
+			}
+			ImportProfile.countFiles(count);
+		} finally {
+			stream.close();
+		}
+		return projects;
+	}
+
+	/**
+	 * Extract the selected projects of an archive in one pass. An entry is
+	 * written to every selected project whose folder holds it. The targets
+	 * that did not exist before are deleted again if the extraction fails.
+	 *
+	 * @param archive
+	 * @param targets
+	 * 		the directory receiving each project, by folder prefix
+	 * @param store
+	 * 		the store the files are linked to, or <code>null</code> to write
+	 * 		them
+	 * @param monitor
+	 * 		the monitor checked for cancellation
+	 * @return the number of bytes extracted
+	 * @throws IOException
+	 * @throws OperationCanceledException
+	 * 		if the monitor was canceled
+	 */
+	static long extract(File archive, Map<String, File> targets,
+			ContentStore store, IProgressMonitor monitor) throws IOException {
+		List<File> created = new ArrayList<File>();
+		Iterator<File> iterator = targets.values().iterator();
+		while (iterator.hasNext()) {
+			File target = iterator.next();
+			if (!target.exists()) {
+				created.add(target);
+			}
+		}
+		boolean completed = false;
+		ArchiveStream stream = ArchiveStream.open(archive);
+		try {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			long bytes = 0;
+			int count = 0;
+			ArchiveIndex.Entry entry;
+			List<File> files = new ArrayList<File>();
+			while ((entry = stream.next()) != null) {
+				if ((++count & 0x3ff) == 0 && monitor.isCanceled()) {
+					throw new OperationCanceledException();
+				}
+				getTargetFiles(entry.name, targets, files);
+				for (int i = 0; i < files.size(); i++) {
+					File file = files.get(i);
+					if (entry.folder) {
+						mkdirs(file);
+					} else {
+						mkdirs(file.getParentFile());
+						// an entry shared by nested projects is read once
+						if (i > 0) {
+							bytes += store != null ? store.copy(files.get(0),
+									file) : FastProjectCopier.copyFile(files
+									.get(0), file);
+						} else if (store != null) {
+							bytes += store.write(stream.getContents(), file,
+									buffer);
+						} else {
+							bytes += write(stream.getContents(), file, buffer);
+						}
+					}
+				}
+			}
+			ImportProfile.countBytes(bytes);
+			ImportProfile.countFiles(count);
+			completed = true;
+			return bytes;
+		} finally {
+			stream.close();
+			if (!completed) {
+				for (int i = 0; i < created.size(); i++) {
+					FastProjectCopier.delete(created.get(i));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Collect the files an entry is written to, looking up each folder
+	 * holding the entry in the targets.
+	 *
+	 * @param name
+	 * 		the normalized name of the entry
+	 * @param targets
+	 * 		the project folders by their prefix in the archive
+	 * @param files
+	 * 		receives the files
+	 * @throws IOException
+	 * 		if the entry would be written outside a project folder
+	 */
+	static void getTargetFiles(String name, Map<String, File> targets,
+			List<File> files) throws IOException {
+		files.clear();
+		int end = name.length();
+		while (end >= 0) {
+			String prefix = end == 0 ? "" : name.substring(0, end) + '/'; //$NON-NLS-1$
+			File target = targets.get(prefix);
+			if (target != null && end < name.length()) {
+				String path = name.substring(prefix.length());
+				if (!isContained(path)) {
+					throw new IOException("Invalid entry " + name); //$NON-NLS-1$
+				}
+				files.add(new File(target, path));
+			}
+			if (end == 0) {
+				break;
+			}
+			end = name.lastIndexOf('/', end - 1);
+			if (end < 0) {
+				end = 0;
+			}
+		}
+	}
+
+	/**
+	 * Returns whether a relative entry path stays below the project folder.
+	 *
+	 * @param path
+	 * @return boolean
+	 */
+	static boolean isContained(String path) {
+		String[] segments = path.split("[/\\\\]"); //$NON-NLS-1$
+		for (int i = 0; i < segments.length; i++) {
+			if (segments[i].equals("..")) { //$NON-NLS-1$
+				return false;
+			}
+		}
+		return !new File(path).isAbsolute();
+	}
+
+	private static void mkdirs(File folder) throws IOException {
+		if (!folder.isDirectory() && !folder.mkdirs()) {
+			throw new IOException("Could not create " + folder); //$NON-NLS-1$
+		}
+	}
+
+	private static byte[] read(InputStream in, byte[] buffer)
+			throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int count;
+		while ((count = in.read(buffer)) != -1) {
+			out.write(buffer, 0, count);
+		}
+		return out.toByteArray();
+	}
+
+	private static long write(InputStream in, File file, byte[] buffer)
+			throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			long bytes = 0;
+			int count;
+			while ((count = in.read(buffer)) != -1) {
+				out.write(buffer, 0, count);
+				bytes += count;
+			}
+			return bytes;
+		} finally {
+			out.close();
+		}
+	}
+}
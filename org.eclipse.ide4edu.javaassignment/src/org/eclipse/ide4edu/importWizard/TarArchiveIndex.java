@@ -0,0 +1,480 @@
+package org.eclipse.ide4edu.importWizard;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.ide4edu.javaassignment.Activator;
+
+/**
+ * An {@link ArchiveIndex} over a tar file. The index maps each
+ * entry to the offset and size of its data, built in one pass that reads
+ * only the header blocks and seeks over the data. Contents are read with
+ * positional reads, so the projects of the archive can be imported without
+ * reading the archive sequentially again, and concurrently.
+ * <p>
+ * The offsets are cached in the plug-in state location, keyed by the path,
+ * size and modification time of the archive. A compressed archive can be
+ * indexed when it is in the BGZF format: its offsets are those of the
+ * inflated data, whose blocks are located without inflating them, so an
+ * entry is read by inflating the blocks holding it. Other compressed
+ * archives are read in forward passes, see {@link StreamingArchiveImporter}.
+ * </p>
+ */
+class TarArchiveIndex extends ArchiveIndex {
+
+	/**
+	 * An entry with the location of its data.
+	 */
+	static class TarIndexEntry extends Entry {
+
+		/**
+		 * The offset of the data of the entry in the archive.
+		 */
+		final long offset;
+
+		TarIndexEntry(String name, boolean folder, long size, long offset) {
+			super(name, folder, size);
+			this.offset = offset;
+		}
+	}
+
+	private static final String CACHE_FOLDER = "tarIndex"; //$NON-NLS-1$
+
+	private static final int CACHE_VERSION = 1;
+
+	private final File file;
+
+	private final String label;
+
+	private final RandomAccessFile randomAccessFile;
+
+	private final FileChannel channel;
+
+	private final List<TarIndexEntry> entries;
+
+	// the blocks of a compressed archive, null if it is not compressed
+	private final ParallelGzipInputStream.BlockTable blocks;
+
+	private TarIndexEntry[] entryArray;
+
+	private TarArchiveIndex(File file, List<TarIndexEntry> entries,
+			boolean compressed) throws IOException {
+		this.file = file;
+		this.label = file.getPath();
+		this.entries = entries;
+		this.randomAccessFile = new RandomAccessFile(file, "r"); //$NON-NLS-1$
+		this.channel = randomAccessFile.getChannel();
+		try {
+			blocks = compressed ? ParallelGzipInputStream.readBlocks(channel)
+					: null;
+		} catch (IOException e) {
+			randomAccessFile.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns whether a file starts with the gzip magic number, in which case
+	 * it cannot be indexed.
+	 *
+	 * @param file
+	 * @return boolean
+	 */
+	static boolean isCompressed(File file) {
+		InputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			return in.read() == 0x1f && in.read() == 0x8b;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns whether a tar file can be indexed: it is not compressed, or
+	 * compressed in the BGZF format.
+	 *
+	 * @param file
+	 * @return boolean
+	 */
+	static boolean isIndexable(File file) {
+		return !isCompressed(file)
+				|| ParallelGzipInputStream.isBlockCompressed(file);
+	}
+
+	/**
+	 * Open the index of a tar file, reading the headers of the archive unless
+	 * a cached index matches the archive.
+	 *
+	 * @param file
+	 * 		a tar file that {@link #isIndexable(File) can be indexed}
+	 * @param monitor
+	 * 		the monitor to report to, may be canceled
+	 * @return TarArchiveIndex
+	 * @throws IOException
+	 * 		if the file is not a valid tar file
+	 */
+	static TarArchiveIndex open(File file, IProgressMonitor monitor)
+			throws IOException {
+		boolean compressed = isCompressed(file);
+		List<TarIndexEntry> entries = readCache(file);
+		if (entries == null) {
+			entries = compressed ? readCompressedHeaders(file, monitor)
+					: readHeaders(file, monitor);
+			writeCache(file, entries);
+		}
+		return new TarArchiveIndex(file, entries, compressed);
+	}
+
+	/**
+	 * Read the headers of a compressed tar file, inflating it in a forward
+	 * pass.
+	 */
+	private static List<TarIndexEntry> readCompressedHeaders(File file,
+			IProgressMonitor monitor) throws IOException {
+		List<TarIndexEntry> entries = new ArrayList<TarIndexEntry>();
+		InputStream in = new BufferedInputStream(ParallelGzipInputStream.open(
+				file, ParallelGzipInputStream.getDefaultParallelism()),
+				64 * 1024);
+		try {
+			byte[] block = new byte[TarHeader.BLOCK_SIZE];
+			long position = 0;
+			String longName = null;
+			while (readBlock(in, block)) {
+				if (monitor != null && monitor.isCanceled()) {
+					throw new OperationCanceledException();
+				}
+				TarHeader header = TarHeader.parse(block);
+				if (header == null) {
+					break;
+				}
+				long dataOffset = position + TarHeader.BLOCK_SIZE;
+				long remaining = header.getPaddedSize();
+				position = dataOffset + remaining;
+				if (header.type == TarHeader.TYPE_GNU_LONG_NAME
+						|| header.type == TarHeader.TYPE_PAX_HEADER) {
+					byte[] data = new byte[(int) remaining];
+					new DataInputStream(in).readFully(data);
+					byte[] value = new byte[(int) header.size];
+					System.arraycopy(data, 0, value, 0, value.length);
+					longName = header.type == TarHeader.TYPE_GNU_LONG_NAME ? TarHeader
+							.parseLongName(value)
+							: TarHeader.parsePaxPath(value);
+					continue;
+				}
+				skipFully(in, remaining);
+				String name = longName != null ? longName : header.name;
+				longName = null;
+				if (header.isDirectory() || header.isFile()) {
+					entries.add(new TarIndexEntry(normalize(name), header
+							.isDirectory(), header.size, dataOffset));
+				}
+			}
+		} finally {
+			in.close();
+		}
+		return entries;
+	}
+
+	/**
+	 * Read a header block.
+	 *
+	 * @return <code>false</code> at the end of the stream
+	 */
+	private static boolean readBlock(InputStream in, byte[] block)
+			throws IOException {
+		int count = 0;
+		while (count < block.length) {
+			int read = in.read(block, count, block.length - count);
+			if (read < 0) {
+				if (count == 0) {
+					return false;
+				}
+				throw new EOFException();
+			}
+			count += read;
+		}
+		return true;
+	}
+
+	private static void skipFully(InputStream in, long count)
+			throws IOException {
+		while (count > 0) {
+			long skipped = in.skip(count);
+			if (skipped <= 0) {
+				if (in.read() == -1) {
+					throw new EOFException();
+				}
+				skipped = 1;
+			}
+			count -= skipped;
+		}
+	}
+
+	private static List<TarIndexEntry> readHeaders(File file,
+			IProgressMonitor monitor) throws IOException {
+		List<TarIndexEntry> entries = new ArrayList<TarIndexEntry>();
+		RandomAccessFile in = new RandomAccessFile(file, "r"); //$NON-NLS-1$
+		try {
+			byte[] block = new byte[TarHeader.BLOCK_SIZE];
+			long position = 0;
+			long length = in.length();
+			String longName = null;
+			while (position + TarHeader.BLOCK_SIZE <= length) {
+				if (monitor != null && monitor.isCanceled()) {
+					throw new OperationCanceledException();
+				}
+				in.seek(position);
+				in.readFully(block);
+				TarHeader header = TarHeader.parse(block);
+				if (header == null) {
+					break;
+				}
+				long dataOffset = position + TarHeader.BLOCK_SIZE;
+				position = dataOffset + header.getPaddedSize();
+				if (header.type == TarHeader.TYPE_GNU_LONG_NAME
+						|| header.type == TarHeader.TYPE_PAX_HEADER) {
+					byte[] data = new byte[(int) header.size];
+					in.readFully(data);
+					longName = header.type == TarHeader.TYPE_GNU_LONG_NAME ? TarHeader
+							.parseLongName(data)
+							: TarHeader.parsePaxPath(data);
+					continue;
+				}
+				String name = longName != null ? longName : header.name;
+				longName = null;
+				if (header.isDirectory() || header.isFile()) {
+					entries.add(new TarIndexEntry(normalize(name), header
+							.isDirectory(), header.size, dataOffset));
+				}
+			}
+		} finally {
+			in.close();
+		}
+		return entries;
+	}
+
+	private static File getCacheFile(File file) {
+		Activator plugin = Activator.getDefault();
+		if (plugin == null) {
+			return null;
+		}
+		String name = Integer.toHexString(file.getAbsolutePath().hashCode())
+				+ ".idx"; //$NON-NLS-1$
+		return plugin.getStateLocation().append(CACHE_FOLDER).append(name)
+				.toFile();
+	}
+
+	private static List<TarIndexEntry> readCache(File file) {
+		File cache = getCacheFile(file);
+		if (cache == null || !cache.isFile()) {
+			return null;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(cache)));
+			if (in.readInt() != CACHE_VERSION
+					|| !file.getAbsolutePath().equals(in.readUTF())
+					|| in.readLong() != file.length()
+					|| in.readLong() != file.lastModified()) {
+				return null;
+			}
+			int count = in.readInt();
+			List<TarIndexEntry> entries = new ArrayList<TarIndexEntry>(count);
+			for (int i = 0; i < count; i++) {
+				entries.add(new TarIndexEntry(in.readUTF(), in.readBoolean(),
+						in.readLong(), in.readLong()));
+			}
+			return entries;
+		} catch (IOException e) {
+			return null;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	private static void writeCache(File file, List<TarIndexEntry> entries) {
+		File cache = getCacheFile(file);
+		if (cache == null) {
+			return;
+		}
+		cache.getParentFile().mkdirs();
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(cache)));
+			out.writeInt(CACHE_VERSION);
+			out.writeUTF(file.getAbsolutePath());
+			out.writeLong(file.length());
+			out.writeLong(file.lastModified());
+			out.writeInt(entries.size());
+			for (int i = 0; i < entries.size(); i++) {
+				TarIndexEntry entry = entries.get(i);
+				out.writeUTF(entry.name);
+				out.writeBoolean(entry.folder);
+				out.writeLong(entry.size);
+				out.writeLong(entry.offset);
+			}
+		} catch (IOException e) {
+			// the cache is optional
+			cache.delete();
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					cache.delete();
+				}
+			}
+		}
+	}
+
+	Iterator<Entry> entries() {
+		if (entryArray == null) {
+			entryArray = entries.toArray(new TarIndexEntry[entries.size()]);
+		}
+		return new Iterator<Entry>() {
+			private int next;
+
+			public boolean hasNext() {
+				return next < entryArray.length;
+			}
+
+			public Entry next() {
+				return entryArray[next++];
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	InputStream getContents(Entry entry) throws IOException {
+		final TarIndexEntry tarEntry = (TarIndexEntry) entry;
+		if (blocks != null) {
+			return getInflatedContents(tarEntry);
+		}
+		return new BufferedInputStream(new InputStream() {
+			private long position = tarEntry.offset;
+
+			private final long end = tarEntry.offset + tarEntry.size;
+
+			public int read() throws IOException {
+				byte[] single = new byte[1];
+				return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+			}
+
+			public int read(byte[] b, int off, int len) throws IOException {
+				if (position >= end) {
+					return -1;
+				}
+				int count = (int) Math.min(len, end - position);
+				// positional reads do not move a shared file pointer, so
+				// several entries can be read at the same time
+				int read = channel.read(ByteBuffer.wrap(b, off, count),
+						position);
+				if (read > 0) {
+					position += read;
+				}
+				return read;
+			}
+
+			public int available() {
+				return (int) Math.min(Integer.MAX_VALUE, end - position);
+			}
+		}, 64 * 1024);
+	}
+
+	/**
+	 * Returns the contents of an entry of a compressed archive, inflating
+	 * the blocks from the one holding its first byte.
+	 */
+	private InputStream getInflatedContents(TarIndexEntry entry)
+			throws IOException {
+		int block = blocks.find(entry.offset);
+		final InputStream in = ParallelGzipInputStream.openMembers(channel,
+				blocks.getStart(block));
+		try {
+			skipFully(in, entry.offset - blocks.getDataStart(block));
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+		final long size = entry.size;
+		return new BufferedInputStream(new FilterInputStream(in) {
+			private long remaining = size;
+
+			public int read() throws IOException {
+				byte[] single = new byte[1];
+				return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+			}
+
+			public int read(byte[] b, int off, int len) throws IOException {
+				if (remaining <= 0) {
+					return -1;
+				}
+				int read = in.read(b, off, (int) Math.min(len, remaining));
+				if (read == -1) {
+					throw new EOFException();
+				}
+				remaining -= read;
+				return read;
+			}
+
+			public long skip(long count) throws IOException {
+				long skipped = in.skip(Math.min(count, remaining));
+				remaining -= skipped;
+				return skipped;
+			}
+
+			public int available() {
+				return 0;
+			}
+		}, 64 * 1024);
+	}
+
+	String getLabel() {
+		return label;
+	}
+
+	void close() {
+		try {
+			randomAccessFile.close();
+		} catch (IOException e) {
+			// nothing to do
+		}
+	}
+}
@@ -0,0 +1,204 @@
+package org.eclipse.ide4edu.importWizard;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * A parsed tar header block. Supports the ustar name prefix, GNU long names
+ * and the <code>path</code> record of pax extended headers, which is enough
+ * to read the archives produced by common tar tools and learning management
+ * systems.
+ */
+class TarHeader {
+
+	/**
+	 * The size of a tar block.
+	 */
+	static final int BLOCK_SIZE = 512;
+
+	static final char TYPE_FILE = '0';
+
+	static final char TYPE_OLD_FILE = '\0';
+
+	static final char TYPE_CONTIGUOUS_FILE = '7';
+
+	static final char TYPE_DIRECTORY = '5';
+
+	static final char TYPE_GNU_LONG_NAME = 'L';
+
+	static final char TYPE_PAX_HEADER = 'x';
+
+	private static final String PAX_PATH = "path="; //$NON-NLS-1$
+
+	String name;
+
+	long size;
+
+	long time;
+
+	char type;
+
+	/**
+	 * Parse a header block.
+	 *
+	 * @param block
+	 * 		the block, {@link #BLOCK_SIZE} bytes long
+	 * @return the header, or <code>null</code> for an end-of-archive block
+	 * @throws IOException
+	 * 		if the block is not a valid tar header
+	 */
+	static TarHeader parse(byte[] block) throws IOException {
+		if (isZero(block)) {
+			return null;
+		}
+		if (!checksumMatches(block)) {
+			throw new IOException("Invalid tar header checksum"); //$NON-NLS-1$
+		}
+		TarHeader header = new TarHeader();
+		header.name = readString(block, 0, 100);
+		header.size = readNumber(block, 124, 12);
+		header.time = readNumber(block, 136, 12) * 1000;
+		header.type = (char) block[156];
+		if (readString(block, 257, 5).equals("ustar")) { //$NON-NLS-1$
+			String prefix = readString(block, 345, 155);
+			if (prefix.length() > 0) {
+				header.name = prefix + '/' + header.name;
+			}
+		}
+		return header;
+	}
+
+	/**
+	 * Returns whether this header describes a file with contents.
+	 *
+	 * @return boolean
+	 */
+	boolean isFile() {
+		return type == TYPE_FILE || type == TYPE_OLD_FILE
+				|| type == TYPE_CONTIGUOUS_FILE;
+	}
+
+	/**
+	 * Returns whether this header describes a directory.
+	 *
+	 * @return boolean
+	 */
+	boolean isDirectory() {
+		return type == TYPE_DIRECTORY
+				|| (type == TYPE_OLD_FILE && name.endsWith("/")); //$NON-NLS-1$
+	}
+
+	/**
+	 * Returns the number of bytes the data of this entry occupies in the
+	 * archive, including the padding to the next block.
+	 *
+	 * @return long
+	 */
+	long getPaddedSize() {
+		return (size + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+	}
+
+	/**
+	 * Returns the name held by the data of a GNU long name entry.
+	 *
+	 * @param data
+	 * @return String
+	 */
+	static String parseLongName(byte[] data) {
+		return readString(data, 0, data.length);
+	}
+
+	/**
+	 * Returns the path held by the data of a pax extended header, or
+	 * <code>null</code> if it holds none.
+	 *
+	 * @param data
+	 * @return String
+	 */
+	static String parsePaxPath(byte[] data) {
+		// records have the form "<length> <key>=<value>\n"
+		int offset = 0;
+		while (offset < data.length) {
+			int space = offset;
+			while (space < data.length && data[space] != ' ') {
+				space++;
+			}
+			int length;
+			try {
+				length = Integer.parseInt(new String(data, offset, space
+						- offset, "UTF-8")); //$NON-NLS-1$
+			} catch (NumberFormatException e) {
+				return null;
+			} catch (UnsupportedEncodingException e) {
+				return null;
+			}
+			if (length <= 0 || offset + length > data.length) {
+				return null;
+			}
+			String record = decode(data, space + 1, offset + length - space
+					- 2);
+			if (record.startsWith(PAX_PATH)) {
+				return record.substring(PAX_PATH.length());
+			}
+			offset += length;
+		}
+		return null;
+	}
+
+	private static boolean isZero(byte[] block) {
+		for (int i = 0; i < BLOCK_SIZE; i++) {
+			if (block[i] != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean checksumMatches(byte[] block) {
+		long expected = readNumber(block, 148, 8);
+		long sum = 0;
+		for (int i = 0; i < BLOCK_SIZE; i++) {
+			// the checksum field itself counts as spaces
+			sum += (i >= 148 && i < 156) ? ' ' : (block[i] & 0xff);
+		}
+		return sum == expected;
+	}
+
+	private static String readString(byte[] data, int offset, int length) {
+		int end = offset;
+		while (end < offset + length && data[end] != 0) {
+			end++;
+		}
+		return decode(data, offset, end - offset);
+	}
+
+	private static String decode(byte[] data, int offset, int length) {
+		try {
+			return new String(data, offset, Math.max(0, length), "UTF-8"); //$NON-NLS-1$
+		} catch (UnsupportedEncodingException e) {
+			return new String(data, offset, Math.max(0, length));
+		}
+	}
+
+	private static long readNumber(byte[] data, int offset, int length) {
+		if ((data[offset] & 0x80) != 0) {
+			// GNU base-256 encoding for large values
+			long value = data[offset] & 0x7f;
+			for (int i = 1; i < length; i++) {
+				value = (value << 8) | (data[offset + i] & 0xff);
+			}
+			return value;
+		}
+		long value = 0;
+		for (int i = offset; i < offset + length; i++) {
+			byte b = data[i];
+			if (b == 0) {
+				break;
+			}
+			if (b >= '0' && b <= '7') {
+				value = (value << 3) + (b - '0');
+			}
+		}
+		return value;
+	}
+}
@@ -1,60 +1,44 @@
 package org.eclipse.ide4edu.importWizard;
 
-import java.io.BufferedOutputStream;
-import java.io.FileOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.URL;
-import java.net.URLConnection;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 
 public class URLDownload {
-	final static int size = 1024;
 
-
-	
 	public static void fileUrl(String fAddress, String localFileName,
 			String destinationDir,IProgressMonitor monitor) {
-		OutputStream outStream = null;
-		URLConnection uCon = null;		
-
-		InputStream is = null;
 		try {
-			URL Url;
-			byte[] buf;
-			int ByteRead, ByteWritten = 0;
-			Url = new URL(fAddress);
-			outStream = new BufferedOutputStream(new FileOutputStream(
-					destinationDir + "/" + localFileName));
-
-			uCon = Url.openConnection();
-			is = uCon.getInputStream();
-			buf = new byte[size];
-			long downSize= uCon.getContentLength();
-			//download size to set monitor limit
-			while ((ByteRead = is.read(buf)) != -1) {
-				outStream.write(buf, 0, ByteRead);
-				monitor.worked(1024);
-				ByteWritten += ByteRead;
-			}
+			long ByteWritten = download(new URL(fAddress), new File(
+					destinationDir, localFileName), monitor);
 			System.out.println("Downloaded Successfully.");
 			System.out.println("File name:\"" + localFileName
 					+ "\"\nNo ofbytes :" + ByteWritten);
 			System.out.println("\nDestinDirName name:\"" + destinationDir);
-		} catch (Exception e) {
+		} catch (IOException e) {
 			e.printStackTrace();
-		} finally {
-			try {
-				is.close();
-				outStream.close();
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
 		}
 	}
 
+	/**
+	 * Download a file, in concurrent byte ranges when the server supports
+	 * them, see {@link SegmentedDownloader}.
+	 * 
+	 * @param url
+	 * @param target
+	 * 		the file receiving the contents, once they are complete
+	 * @param monitor
+	 * @return the number of bytes downloaded
+	 * @throws IOException
+	 */
+	static long download(URL url, File target, IProgressMonitor monitor)
+			throws IOException {
+		return new SegmentedDownloader(SegmentedDownloader
+				.getDefaultParallelism()).download(url, target, monitor);
+	}
+
 	public static  void fileDownload(String fAddress, String destinationDir, IProgressMonitor monitor) {
 
 		int slashIndex = fAddress.lastIndexOf('/');
@@ -71,4 +55,4 @@ public class URLDownload {
 		
 	}
 	
-}
\ No newline at end of file
+}
@@ -22,38 +22,56 @@ package org.eclipse.ide4edu.importWizard;
  *******************************************************************************/
 
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
+import java.net.ConnectException;
 import java.net.MalformedURLException;
-import java.net.URI;
 import java.net.URL;
-import java.net.URLConnection;
+import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.zip.ZipEntry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
 
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IProjectDescription;
-import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.IncrementalProjectBuilder;
 import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.resources.WorkspaceJob;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubProgressMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.ide4edu.javaassignment.Activator;
 import org.eclipse.jface.dialogs.Dialog;
 import org.eclipse.jface.dialogs.ErrorDialog;
 import org.eclipse.jface.dialogs.IDialogConstants;
@@ -83,6 +101,7 @@ import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.DirectoryDialog;
 import org.eclipse.swt.widgets.FileDialog;
 import org.eclipse.swt.widgets.Label;
@@ -90,23 +109,12 @@ import org.eclipse.swt.widgets.Text;
 import org.eclipse.ui.IWorkingSet;
 import org.eclipse.ui.IWorkingSetManager;
 import org.eclipse.ui.PlatformUI;
-import org.eclipse.ui.actions.WorkspaceModifyOperation;
 import org.eclipse.ui.dialogs.IOverwriteQuery;
 import org.eclipse.ui.dialogs.WorkingSetGroup;
 import org.eclipse.ui.internal.ide.IDEWorkbenchMessages;
 import org.eclipse.ui.internal.ide.IDEWorkbenchPlugin;
-import org.eclipse.ui.internal.ide.StatusUtil;
 import org.eclipse.ui.internal.wizards.datatransfer.ArchiveFileManipulations;
 import org.eclipse.ui.internal.wizards.datatransfer.DataTransferMessages;
-import org.eclipse.ui.internal.wizards.datatransfer.ILeveledImportStructureProvider;
-import org.eclipse.ui.internal.wizards.datatransfer.TarEntry;
-import org.eclipse.ui.internal.wizards.datatransfer.TarException;
-import org.eclipse.ui.internal.wizards.datatransfer.TarFile;
-import org.eclipse.ui.internal.wizards.datatransfer.TarLeveledStructureProvider;
-import org.eclipse.ui.internal.wizards.datatransfer.ZipLeveledStructureProvider;
-import org.eclipse.ui.statushandlers.StatusManager;
-import org.eclipse.ui.wizards.datatransfer.FileSystemStructureProvider;
-import org.eclipse.ui.wizards.datatransfer.ImportOperation;
 
 /**
  * The WizardProjectsImportPage is the page that allows the user to import
@@ -122,12 +130,45 @@ public class WizardAssignmentsImportPage extends WizardPage implements
 	public static final String METADATA_FOLDER = ".metadata"; //$NON-NLS-1$
 
 	/**
-	 * The import structure provider.
-	 * 
-	 * @since 3.4
+	 * The index of the archive the projects are imported from, used instead
+	 * of a structure provider for zip files.
 	 */
-	
-	private ILeveledImportStructureProvider structureProvider;
+	private ArchiveIndex archiveIndex;
+
+	/**
+	 * The archive the projects are imported from when it is too large to be
+	 * indexed; it is read in forward passes instead.
+	 */
+	private File streamedArchive;
+
+	/**
+	 * The folder a remote archive was extracted to while it was streamed;
+	 * the projects are moved from it into the workspace location.
+	 */
+	private File stagingFolder;
+
+	/**
+	 * The stamp of the staged remote archive in the journal: its URL and
+	 * the validator the server sent for it.
+	 */
+	private String stagedStamp;
+
+	/**
+	 * The archives fetched from several URLs at once, by their index, which
+	 * stays open until the list is replaced.
+	 */
+	private final Map fetchedArchives = Collections
+			.synchronizedMap(new HashMap());
+
+	/**
+	 * The URLs whose archives are pinned in the download cache, so they are
+	 * not evicted while the projects listed from them can be imported.
+	 */
+	private final List pinnedDownloads = Collections
+			.synchronizedList(new ArrayList());
+
+	// The cache holding pinnedDownloads
+	private volatile DownloadCache downloadCache;
 	
 	/**
 	 * @since 3.5
@@ -158,18 +199,35 @@ public class WizardAssignmentsImportPage extends WizardPage implements
 	public class ProjectRecord {
 		File projectSystemFile;
 
-		Object projectArchiveFile;
+		ArchiveIndex.Entry projectArchiveFile;
 
 		String projectName;
 
-		Object parent;
+		// The archive holding the project, for records found in an index
+		ArchiveIndex archive;
+
+		// The folder of the project in the archive
+		String archivePrefix;
+
+		// The project found by a forward pass over a streamed archive
+		StreamingArchiveImporter.Project streamedProject;
 
-		int level;
+		// The streamed archive holding streamedProject
+		File streamedSource;
 		
 		boolean hasConflicts;
 
 		IProjectDescription description;
 
+		// The modification stamp of projectSystemFile when it was read
+		long projectFileModified;
+
+		String[] natureIds = new String[0];
+
+		// Whether the description still has to be read from
+		// projectSystemFile
+		boolean descriptionPending;
+
 		/**
 		 * Create a record for a project based on the info in the file.
 		 * 
@@ -181,45 +239,81 @@ public class WizardAssignmentsImportPage extends WizardPage implements
 		}
 
 		/**
+		 * Create a record for a project from the project index, without
+		 * reading the description in the file.
+		 * 
+		 * @param file
+		 * @param projectName
+		 * @param natureIds
+		 */
+		ProjectRecord(File file, String projectName, String[] natureIds) {
+			projectSystemFile = file;
+			this.projectName = projectName;
+			this.natureIds = natureIds;
+			descriptionPending = true;
+		}
+
+		/**
+		 * Create a record for a project found in the index of an archive.
+		 * 
+		 * @param archive
+		 * 		The archive holding the project
 		 * @param file
-		 * 		The Object representing the .project file
-		 * @param parent
-		 * 		The parent folder of the .project file
-		 * @param level
-		 * 		The number of levels deep in the provider the file is
+		 * 		The entry of the .project file
 		 */
-		ProjectRecord(Object file, Object parent, int level) {
+		ProjectRecord(ArchiveIndex archive, ArchiveIndex.Entry file) {
 			this.projectArchiveFile = file;
-			this.parent = parent;
-			this.level = level;
+			this.archive = archive;
+			this.archivePrefix = ArchiveIndex.getProjectPrefix(file);
 			setProjectName();
 		}
 
 		/**
-		 * Set the name of the project based on the projectFile.
+		 * Create a record for a project found in a streamed archive.
+		 * 
+		 * @param project
+		 * 		The project with the contents of its description file
+		 * @param source
+		 * 		The archive holding the project
+		 */
+		ProjectRecord(StreamingArchiveImporter.Project project, File source) {
+			this.streamedProject = project;
+			this.streamedSource = source;
+			this.archivePrefix = project.prefix;
+			try {
+				setNameAndNatures(ProjectDescriptionReader
+						.read(new ByteArrayInputStream(project.description)));
+			} catch (IOException e) {
+				// named after its folder
+			}
+			if (projectName == null) {
+				IPath path = new Path(archivePrefix.length() == 0 ? streamedSource
+						.getName() : archivePrefix);
+				projectName = path.removeFileExtension().lastSegment();
+			}
+		}
+
+		/**
+		 * Set the name of the project based on the projectFile. Only the
+		 * name and natures are read, the full description is loaded by
+		 * {@link #loadDescription()} when the project is created.
 		 */
 		private void setProjectName() {
 			try {
 				if (projectArchiveFile != null) {
-					InputStream stream = structureProvider
-							.getContents(projectArchiveFile);
+					InputStream stream = archive.getContents(projectArchiveFile);
 
 					// If we can get a description pull the name from there
 					if (stream == null) {
-						if (projectArchiveFile instanceof ZipEntry) {
-							IPath path = new Path(
-									((ZipEntry) projectArchiveFile).getName());
-							projectName = path.segment(path.segmentCount() - 2);
-						} else if (projectArchiveFile instanceof TarEntry) {
-							IPath path = new Path(
-									((TarEntry) projectArchiveFile).getName());
-							projectName = path.segment(path.segmentCount() - 2);
-						}
+						IPath path = new Path(projectArchiveFile.name);
+						projectName = path.segment(path.segmentCount() - 2);
 					} else {
-						description = IDEWorkbenchPlugin.getPluginWorkspace()
-								.loadProjectDescription(stream);
-						stream.close();
-						projectName = description.getName();
+						try {
+							setNameAndNatures(ProjectDescriptionReader
+									.read(stream));
+						} finally {
+							stream.close();
+						}
 					}
 
 				}
@@ -234,19 +328,71 @@ public class WizardAssignmentsImportPage extends WizardPage implements
 						description = IDEWorkbenchPlugin.getPluginWorkspace()
 								.newProjectDescription(projectName);
 					} else {
-						description = IDEWorkbenchPlugin.getPluginWorkspace()
-								.loadProjectDescription(path);
-						projectName = description.getName();
+						setNameAndNatures(ProjectDescriptionReader
+								.read(projectSystemFile));
 					}
 
 				}
-			} catch (CoreException e) {
-				// no good couldn't get the name
 			} catch (IOException e) {
 				// no good couldn't get the name
 			}
 		}
 
+		private void setNameAndNatures(ProjectDescriptionReader reader) {
+			if (reader != null) {
+				projectName = reader.getName();
+				natureIds = reader.getNatureIds();
+				descriptionPending = true;
+			}
+		}
+
+		/**
+		 * Load the full description of a record whose name was read without
+		 * it. The name read before is kept if the description cannot be
+		 * loaded.
+		 */
+		void loadDescription() {
+			if (!descriptionPending) {
+				return;
+			}
+			descriptionPending = false;
+			IWorkspace workspace = IDEWorkbenchPlugin.getPluginWorkspace();
+			try {
+				if (streamedProject != null) {
+					description = workspace
+							.loadProjectDescription(new ByteArrayInputStream(
+									streamedProject.description));
+				} else if (projectArchiveFile != null) {
+					InputStream stream = archive.getContents(projectArchiveFile);
+					if (stream != null) {
+						try {
+							description = workspace
+									.loadProjectDescription(stream);
+						} finally {
+							stream.close();
+						}
+					}
+				} else {
+					IPath path = new Path(projectSystemFile.getPath());
+					if (isDefaultLocation(path)) {
+						projectName = path.segment(path.segmentCount() - 2);
+						description = workspace
+								.newProjectDescription(projectName);
+					} else {
+						description = workspace.loadProjectDescription(path);
+					}
+				}
+			} catch (CoreException e) {
+				// the project is created from its name
+			} catch (IOException e) {
+				// the project is created from its name
+			}
+			if (description != null) {
+				projectName = description.getName();
+				natureIds = description.getNatureIds();
+			}
+		}
+
 		/**
 		 * Returns whether the given project description file path is in the
 		 * default location for a project
@@ -281,12 +427,19 @@ public class WizardAssignmentsImportPage extends WizardPage implements
 		 * @since 3.4
 		 */
 		public String getProjectLabel() {
-			if (description == null)
+			if (description == null && !descriptionPending)
 				return projectName;
 
-			String path = projectSystemFile == null ? structureProvider
-					.getLabel(parent) : projectSystemFile
-					.getParent();
+			String path;
+			if (archive != null) {
+				path = archivePrefix.length() == 0 ? archive.getLabel()
+						: archivePrefix;
+			} else if (streamedProject != null) {
+				path = archivePrefix.length() == 0 ? streamedSource.getPath()
+						: archivePrefix;
+			} else {
+				path = projectSystemFile.getParent();
+			}
 
 			return NLS.bind(
 					DataTransferMessages.WizardProjectsImportPage_projectLabel,
@@ -308,6 +461,14 @@ public class WizardAssignmentsImportPage extends WizardPage implements
 
 	private final static String STORE_REMOTE_ARCHIVE_SELECTED = "WizardProjectsImportPage.STORE_REMOTE_ARCHIVE_SELECTED"; //$NON-NLS-1$
 
+	private final static String STORE_DIRECTORY_PATH = "WizardProjectsImportPage.STORE_DIRECTORY_PATH"; //$NON-NLS-1$
+
+	/**
+	 * System property turning off bulk imports when set to
+	 * <code>false</code>, see {@link #setBulkImport(boolean)}.
+	 */
+	public final static String BULK_IMPORT_PROPERTY = "org.eclipse.ide4edu.importWizard.bulkImport"; //$NON-NLS-1$
+
 	
 	private Text directoryPathField;
 
@@ -345,7 +506,8 @@ public class WizardAssignmentsImportPage extends WizardPage implements
 	
 	private Button fetchRemoteArchiveButton;
 
-	private IProject[] wsProjects;
+	// The names of the workspace projects, created when first needed
+	private WorkspaceProjectIndex workspaceIndex;
 
 	// constant from WizardArchiveFileResourceImportPage1
 	private static final String[] FILE_IMPORT_MASK = {
@@ -360,10 +522,72 @@ public class WizardAssignmentsImportPage extends WizardPage implements
 	// to mimize searches
 	private long lastModified;
 
+	// The directory listings of the last search, to rescan only the
+	// directories that changed
+	private final DirectoryStampCache directoryCache = new DirectoryStampCache();
+
+	// The records of the last search by .project file path, to avoid reading
+	// descriptions that did not change
+	private Map projectRecordCache = new HashMap();
+
+	// Searches a directory in the background, streaming the projects found
+	// into the list or validating the projects listed from the index
+	private Job searchJob;
+
+	// Identifies the current background search; results of older searches
+	// are dropped
+	private volatile Object searchToken;
+
 	private WorkingSetGroup workingSetGroup;
 
 	private IStructuredSelection currentSelection;
 
+	// The number of threads searching directories for projects
+	private int scannerParallelism = ProjectDirectoryScanner
+			.getDefaultParallelism();
+
+	// How the scanner lists directories
+	private int scannerMode = ProjectDirectoryScanner.getDefaultMode();
+
+	// Reads the descriptions of the projects found, see callInParallel;
+	// created on first use and shut down when the page is disposed
+	private ThreadPoolExecutor readerPool;
+
+	// The number of projects created at the same time
+	private int importParallelism = ParallelImportEngine
+			.getDefaultParallelism();
+
+	// The size from which archives are streamed, see setStreamingThreshold
+	private long streamingThreshold = StreamingArchiveImporter
+			.getDefaultThreshold();
+
+	// Whether remote archives are extracted as they are downloaded, see
+	// setStreamRemoteArchives
+	private boolean streamRemoteArchives = StreamingArchiveImporter
+			.getDefaultStreamRemote();
+
+	// Whether auto-build is suspended during an import, see setBulkImport
+	private boolean bulkImport = !"false".equals(System //$NON-NLS-1$
+			.getProperty(BULK_IMPORT_PROPERTY));
+
+	// The plan lines shown by the dry run dialog
+	private static final int MAX_DRY_RUN_LINES = 20;
+
+	// Whether imported files are linked to a store of their contents, see
+	// setSharedContent
+	private boolean sharedContent = ContentStore.getDefaultSharedContent();
+
+	// The journal of the imports from lastPath, see getJournal
+	private volatile ImportJournal journal;
+
+	// Whether finishing only reports the import plan, see setDryRun
+	private boolean dryRun = false;
+
+	private Button dryRunCheckbox;
+
+	// The measurements of the last search, reported by dry runs
+	private volatile ImportProfile searchProfile;
+
 	/**
 	 * Creates a new project creation wizard page.
 	 * 
@@ -461,6 +685,17 @@ public class WizardAssignmentsImportPage extends WizardPage implements
 				copyFiles = copyCheckbox.getSelection();
 			}
 		});
+
+		dryRunCheckbox = new Button(optionsGroup, SWT.CHECK);
+		dryRunCheckbox
+				.setText("Dry run: report the import plan and timings without changing the workspace"); //$NON-NLS-1$
+		dryRunCheckbox.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+		dryRunCheckbox.setSelection(dryRun);
+		dryRunCheckbox.addSelectionListener(new SelectionAdapter() {
+			public void widgetSelected(SelectionEvent e) {
+				dryRun = dryRunCheckbox.getSelection();
+			}
+		});
 	}
 
 	/**
@@ -643,9 +878,10 @@ public class WizardAssignmentsImportPage extends WizardPage implements
 			 */
 			public void widgetSelected(SelectionEvent e) {
 				if (projectFromDirectoryRadio.getSelection()) {
-					updateProjectsList(directoryPathField.getText().trim());
+					updateProjectsList(directoryPathField.getText().trim(),
+							true);
 				} else {
-					updateProjectsList(archivePathField.getText().trim());
+					updateProjectsList(archivePathField.getText().trim(), true);
 				}
 			}
 		});
@@ -988,6 +1224,19 @@ public class WizardAssignmentsImportPage extends WizardPage implements
 	 * @param path
 	 */
 	public void updateProjectsList(final String path) {
+		updateProjectsList(path, false);
+	}
+
+	/**
+	 * Update the list of projects based on path.
+	 * 
+	 * @param path
+	 * @param force
+	 * 		<code>true</code> to search again even if the path and its stamp
+	 * 		did not change, since the stamp of a directory does not reflect
+	 * 		changes in nested folders
+	 */
+	private void updateProjectsList(final String path, boolean force) {
 		// on an empty path empty selectedProjects
 		if (path == null || path.length() == 0) {
 			setMessage(DataTransferMessages.WizardProjectsImportPage_ImportProjectsDescription);
@@ -999,22 +1248,51 @@ public class WizardAssignmentsImportPage extends WizardPage implements
 			return;
 		}
 
+		// We can't access the radio button from the inner class so get the
+		// status beforehand
+		final boolean dirSelected = this.projectFromDirectoryRadio
+				.getSelection();
+
 		final File directory = new File(path);
 		long modified = directory.lastModified();
-		if (path.equals(lastPath) && lastModified == modified && lastCopyFiles == copyFiles) {
-			// since the file/folder was not modified and the path did not
-			// change, no refreshing is required
+		if (!force && path.equals(lastPath) && lastModified == modified
+				&& lastCopyFiles == copyFiles) {
+			// since the file was not modified and the path did not change, no
+			// refreshing is required. The Refresh button searches again, and
+			// the directory cache keeps that search cheap.
 			return;
 		}
 
+		boolean pathChanged = !path.equals(lastPath);
+		if (pathChanged) {
+			directoryCache.clear();
+			projectRecordCache.clear();
+		}
 		lastPath = path;
 		lastModified = modified;
 		lastCopyFiles = copyFiles;
 
-		// We can't access the radio button from the inner class so get the
-		// status beforehand
-		final boolean dirSelected = this.projectFromDirectoryRadio
-				.getSelection();
+		cancelSearch();
+		streamedArchive = null;
+		discardStagedArchive();
+		closeFetchedArchives();
+		// folders created in the workspace location outside of the
+		// workspace are noticed once per search
+		getWorkspaceIndex().listLocation();
+		if (pathChanged && dirSelected && directory.isDirectory()
+				&& restoreProjectIndex(path)) {
+			// list the indexed projects right away and look for changes in
+			// the background
+			updateProjectsListControls();
+			scheduleIndexValidation(path);
+			return;
+		}
+		if (dirSelected && directory.isDirectory()) {
+			// show projects as they are found, so they can be checked while
+			// the rest of the tree is searched
+			startDirectorySearch(path);
+			return;
+		}
 		try {
 			getContainer().run(true, true, new IRunnableWithProgress() {
 
@@ -1026,85 +1304,98 @@ public class WizardAssignmentsImportPage extends WizardPage implements
 				 */
 				public void run(IProgressMonitor monitor) {
 
-					monitor
-							.beginTask(
-									DataTransferMessages.WizardProjectsImportPage_SearchingMessage,
-									100);
-					selectedProjects = new ProjectRecord[0];
-					Collection files = new ArrayList();
-					monitor.worked(10);
-					if (!dirSelected
-							&& ArchiveFileManipulations.isTarFile(path)) {
-						TarFile sourceTarFile = getSpecifiedTarSourceFile(path);
-						if (sourceTarFile == null) {
-							return;
-						}
-
-						structureProvider = new TarLeveledStructureProvider(
-								sourceTarFile);
-						Object child = structureProvider.getRoot();
-
-						if (!collectProjectFilesFromProvider(files, child, 0,
-								monitor)) {
-							return;
-						}
-						Iterator filesIterator = files.iterator();
-						selectedProjects = new ProjectRecord[files.size()];
-						int index = 0;
-						monitor.worked(50);
-						monitor
-								.subTask(DataTransferMessages.WizardProjectsImportPage_ProcessingMessage);
-						while (filesIterator.hasNext()) {
-							selectedProjects[index++] = (ProjectRecord) filesIterator
-									.next();
-						}
-					} else if (!dirSelected
-							&& ArchiveFileManipulations.isZipFile(path)) {
-						ZipFile sourceFile = getSpecifiedZipSourceFile(path);
-						if (sourceFile == null) {
-							return;
-						}
-						structureProvider = new ZipLeveledStructureProvider(
-								sourceFile);
-						Object child = structureProvider.getRoot();
-
-						if (!collectProjectFilesFromProvider(files, child, 0,
-								monitor)) {
-							return;
-						}
-						Iterator filesIterator = files.iterator();
-						selectedProjects = new ProjectRecord[files.size()];
-						int index = 0;
-						monitor.worked(50);
+					// measure the search for dry runs
+					ImportProfile profile = new ImportProfile("Searched " //$NON-NLS-1$
+							+ path);
+					profile.attach();
+					profile.begin("collectProjectFilesFromArchive"); //$NON-NLS-1$
+					try {
 						monitor
-								.subTask(DataTransferMessages.WizardProjectsImportPage_ProcessingMessage);
-						while (filesIterator.hasNext()) {
-							selectedProjects[index++] = (ProjectRecord) filesIterator
-									.next();
+								.beginTask(
+										DataTransferMessages.WizardProjectsImportPage_SearchingMessage,
+										100);
+						selectedProjects = new ProjectRecord[0];
+						Collection files = new ArrayList();
+						monitor.worked(10);
+						if (!dirSelected && isStreamedArchive(path)) {
+							// too large to be indexed, or compressed so it
+							// cannot be, only the description files are kept
+							setArchiveIndex(null);
+							List projects = getSpecifiedStreamedProjects(path,
+									monitor);
+							if (projects == null) {
+								return;
+							}
+							monitor.worked(50);
+							monitor
+									.subTask(DataTransferMessages.WizardProjectsImportPage_ProcessingMessage);
+							profile.begin("ProjectRecord"); //$NON-NLS-1$
+							selectedProjects = new ProjectRecord[projects.size()];
+							for (int i = 0; i < selectedProjects.length; i++) {
+								selectedProjects[i] = new ProjectRecord(
+										(StreamingArchiveImporter.Project) projects
+												.get(i), streamedArchive);
+							}
+						} else if (!dirSelected
+								&& ArchiveFileManipulations.isTarFile(path)) {
+							// index the header blocks only, the data of the
+							// entries is read when a project is imported
+							ArchiveIndex tarIndex = getSpecifiedTarIndex(path,
+									monitor);
+							if (tarIndex == null) {
+								return;
+							}
+							setArchiveIndex(tarIndex);
+
+							if (!collectProjectFilesFromArchive(files,
+									archiveIndex, monitor)) {
+								return;
+							}
+							Iterator filesIterator = files.iterator();
+							selectedProjects = new ProjectRecord[files.size()];
+							int index = 0;
+							monitor.worked(50);
+							monitor
+									.subTask(DataTransferMessages.WizardProjectsImportPage_ProcessingMessage);
+							while (filesIterator.hasNext()) {
+								selectedProjects[index++] = (ProjectRecord) filesIterator
+										.next();
+							}
+						} else if (!dirSelected
+								&& ArchiveFileManipulations.isZipFile(path)) {
+							ZipFile sourceFile = getSpecifiedZipSourceFile(path);
+							if (sourceFile == null) {
+								return;
+							}
+							// find the projects in the central directory, the
+							// folder tree is only built for imported projects
+							setArchiveIndex(new ZipArchiveIndex(sourceFile));
+
+							if (!collectProjectFilesFromArchive(files,
+									archiveIndex, monitor)) {
+								return;
+							}
+							Iterator filesIterator = files.iterator();
+							selectedProjects = new ProjectRecord[files.size()];
+							int index = 0;
+							monitor.worked(50);
+							monitor
+									.subTask(DataTransferMessages.WizardProjectsImportPage_ProcessingMessage);
+							while (filesIterator.hasNext()) {
+								selectedProjects[index++] = (ProjectRecord) filesIterator
+										.next();
+							}
 						}
-					}
 
-					else if (dirSelected && directory.isDirectory()) {
-
-						if (!collectProjectFilesFromDirectory(files, directory,
-								null, monitor)) {
-							return;
+						else {
+							monitor.worked(60);
 						}
-						Iterator filesIterator = files.iterator();
-						selectedProjects = new ProjectRecord[files.size()];
-						int index = 0;
-						monitor.worked(50);
-						monitor
-								.subTask(DataTransferMessages.WizardProjectsImportPage_ProcessingMessage);
-						while (filesIterator.hasNext()) {
-							File file = (File) filesIterator.next();
-							selectedProjects[index] = new ProjectRecord(file);
-							index++;
-						}
-					} else {
-						monitor.worked(60);
+						monitor.done();
+					} finally {
+						profile.end();
+						ImportProfile.detach();
+						searchProfile = profile;
 					}
-					monitor.done();
 				}
 
 			});
@@ -1114,18 +1405,37 @@ public class WizardAssignmentsImportPage extends WizardPage implements
 			// Nothing to do if the user interrupts.
 		}
 
+		updateProjectsListControls();
+	}
+
+	/**
+	 * Show selectedProjects in the projects list, checking all projects that
+	 * do not conflict with the workspace.
+	 */
+	private void updateProjectsListControls() {
 		projectsList.refresh(true);
 		ProjectRecord[] projects = getProjectRecords();
-		boolean displayWarning = false;
 		for (int i = 0; i < projects.length; i++) {
 			if(projects[i].hasConflicts) {
-				displayWarning = true;
 				projectsList.setGrayed(projects[i], true);
 			}else {
 				projectsList.setChecked(projects[i], true);
 			}
 		}
-		
+		updateProjectsListMessage();
+	}
+
+	/**
+	 * Update the page message and completion for the projects in the list.
+	 */
+	private void updateProjectsListMessage() {
+		boolean displayWarning = false;
+		for (int i = 0; i < selectedProjects.length; i++) {
+			if (selectedProjects[i].hasConflicts) {
+				displayWarning = true;
+			}
+		}
+
 		if (displayWarning) {
 			setMessage(
 					DataTransferMessages.WizardProjectsImportPage_projectsInWorkspace,
@@ -1142,172 +1452,632 @@ public class WizardAssignmentsImportPage extends WizardPage implements
 	}
 
 	/**
-	 * Answer a handle to the zip file currently specified as being the source.
-	 * Return null if this file does not exist or is not of valid format.
+	 * Create the records for the .project files found in a directory.
+	 * 
+	 * @param files
+	 * 		the .project files
+	 * @param records
+	 * 		receives the records by .project file path
+	 * @param monitor
+	 * 		The monitor to report to
+	 * @return ProjectRecord[], or <code>null</code> if the operation was
+	 * 	canceled
 	 */
-	private ZipFile getSpecifiedZipSourceFile(String fileName) {
-		if (fileName.length() == 0) {
+	private ProjectRecord[] createProjectRecords(Collection files, Map records,
+			IProgressMonitor monitor) {
+		List<Callable<ProjectRecord>> tasks = new ArrayList<Callable<ProjectRecord>>(
+				files.size());
+		Iterator filesIterator = files.iterator();
+		while (filesIterator.hasNext()) {
+			final File file = (File) filesIterator.next();
+			tasks.add(new Callable<ProjectRecord>() {
+				public ProjectRecord call() {
+					return getProjectRecord(file);
+				}
+			});
+		}
+		ProjectRecord[] projects = callInParallel(tasks, monitor);
+		if (projects == null) {
 			return null;
 		}
-
-		try {
-			return new ZipFile(fileName);
-		} catch (ZipException e) {
-			displayErrorDialog(DataTransferMessages.ZipImport_badFormat);
-		} catch (IOException e) {
-			displayErrorDialog(DataTransferMessages.ZipImport_couldNotRead);
+		for (int i = 0; i < projects.length; i++) {
+			records.put(projects[i].projectSystemFile.getPath(), projects[i]);
 		}
-
-		archivePathField.setFocus();
-		return null;
+		return projects;
 	}
 
 	/**
-	 * Answer a handle to the zip file currently specified as being the source.
-	 * Return null if this file does not exist or is not of valid format.
+	 * Call the tasks creating project records on a pool of threads, since
+	 * reading the descriptions is dominated by I/O latency.
+	 * 
+	 * @param tasks
+	 * 		the tasks creating the records
+	 * @param monitor
+	 * 		The monitor to report to; tasks not started yet are skipped
+	 * 		once it is canceled
+	 * @return the records in the order of the tasks, or <code>null</code> if
+	 * 	the operation was canceled
 	 */
-	private TarFile getSpecifiedTarSourceFile(String fileName) {
-		if (fileName.length() == 0) {
-			return null;
+	private ProjectRecord[] callInParallel(
+			List<Callable<ProjectRecord>> tasks,
+			final IProgressMonitor monitor) {
+		ProjectRecord[] projects = new ProjectRecord[tasks.size()];
+		if (tasks.isEmpty()) {
+			return projects;
+		}
+		List<Callable<ProjectRecord>> sections = new ArrayList<Callable<ProjectRecord>>(
+				tasks.size());
+		for (int i = 0; i < tasks.size(); i++) {
+			final Callable<ProjectRecord> task = tasks.get(i);
+			sections.add(new Callable<ProjectRecord>() {
+				public ProjectRecord call() throws Exception {
+					if (monitor.isCanceled()) {
+						return null;
+					}
+					// the pool threads report to the profile of the search
+					ImportProfile.Section section = ImportProfile
+							.start("ProjectRecord"); //$NON-NLS-1$
+					try {
+						return task.call();
+					} finally {
+						ImportProfile.stop(section);
+					}
+				}
+			});
 		}
-
 		try {
-			return new TarFile(fileName);
-		} catch (TarException e) {
-			displayErrorDialog(DataTransferMessages.TarImport_badFormat);
-		} catch (IOException e) {
-			displayErrorDialog(DataTransferMessages.ZipImport_couldNotRead);
+			List<Future<ProjectRecord>> futures = getReaderPool().invokeAll(
+					sections);
+			if (monitor.isCanceled()) {
+				return null;
+			}
+			for (int i = 0; i < projects.length; i++) {
+				projects[i] = futures.get(i).get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OperationCanceledException();
+		} catch (RejectedExecutionException e) {
+			// the page was disposed
+			return null;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
 		}
-
-		archivePathField.setFocus();
-		return null;
+		return projects;
 	}
 
 	/**
-	 * Display an error dialog with the specified message.
+	 * Answer the pool reading the descriptions of the projects found. The
+	 * pool is kept for the searches of the page; its threads end when they
+	 * are idle.
 	 * 
-	 * @param message
-	 * 		the error message
+	 * @return ThreadPoolExecutor
 	 */
-	protected void displayErrorDialog(String message) {
-		MessageDialog.open(MessageDialog.ERROR, getContainer().getShell(),
-				getErrorDialogTitle(), message, SWT.SHEET);
-	}
-
-	/**
-	 * Get the title for an error dialog. Subclasses should override.
-	 */
-	protected String getErrorDialogTitle() {
-		return IDEWorkbenchMessages.WizardExportPage_internalErrorTitle;
+	private synchronized ThreadPoolExecutor getReaderPool() {
+		if (readerPool == null) {
+			readerPool = new ThreadPoolExecutor(scannerParallelism,
+					scannerParallelism, 1, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+						public Thread newThread(Runnable runnable) {
+							Thread thread = new Thread(runnable,
+									"Assignment project reader"); //$NON-NLS-1$
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			readerPool.allowCoreThreadTimeOut(true);
+		}
+		return readerPool;
 	}
 
 	/**
-	 * Collect the list of .project files that are under directory into files.
+	 * Fill selectedProjects from the project index of a directory.
 	 * 
-	 * @param files
-	 * @param directory
-	 * @param directoriesVisited
-	 * 		Set of canonical paths of directories, used as recursion guard
-	 * @param monitor
-	 * 		The monitor to report to
-	 * @return boolean <code>true</code> if the operation was completed.
+	 * @param path
+	 * 		the directory
+	 * @return boolean <code>true</code> if the directory had an index
 	 */
-	private boolean collectProjectFilesFromDirectory(Collection files,
-			File directory, Set directoriesVisited, IProgressMonitor monitor) {
-
-		if (monitor.isCanceled()) {
-			return false;
-		}
-		monitor.subTask(NLS.bind(
-				DataTransferMessages.WizardProjectsImportPage_CheckingMessage,
-				directory.getPath()));
-		File[] contents = directory.listFiles();
-		if (contents == null)
+	private boolean restoreProjectIndex(String path) {
+		ProjectIndex index = ProjectIndex.load(path, directoryCache);
+		if (index == null) {
 			return false;
-
-		// Initialize recursion guard for recursive symbolic links
-		if (directoriesVisited == null) {
-			directoriesVisited = new HashSet();
-			try {
-				directoriesVisited.add(directory.getCanonicalPath());
-			} catch (IOException exception) {
-				StatusManager.getManager().handle(
-						StatusUtil.newStatus(IStatus.ERROR, exception
-								.getLocalizedMessage(), exception));
-			}
-		}
-
-		// first look for project description files
-		final String dotProject = IProjectDescription.DESCRIPTION_FILE_NAME;
-		for (int i = 0; i < contents.length; i++) {
-			File file = contents[i];
-			if (file.isFile() && file.getName().equals(dotProject)) {
-				files.add(file);
-				// don't search sub-directories since we can't have nested
-				// projects
-				return true;
-			}
 		}
-		// no project description found, so recurse into sub-directories
-		for (int i = 0; i < contents.length; i++) {
-			if (contents[i].isDirectory()) {
-				if (!contents[i].getName().equals(METADATA_FOLDER)) {
-					try {
-						String canonicalPath = contents[i].getCanonicalPath();
-						if (!directoriesVisited.add(canonicalPath)) {
-							// already been here --> do not recurse
-							continue;
-						}
-					} catch (IOException exception) {
-						StatusManager.getManager().handle(
-								StatusUtil.newStatus(IStatus.ERROR, exception
-										.getLocalizedMessage(), exception));
-
-					}
-					collectProjectFilesFromDirectory(files, contents[i],
-							directoriesVisited, monitor);
-				}
+		List entries = index.getProjects();
+		Map records = new HashMap();
+		selectedProjects = new ProjectRecord[entries.size()];
+		for (int i = 0; i < selectedProjects.length; i++) {
+			ProjectIndex.ProjectEntry entry = (ProjectIndex.ProjectEntry) entries
+					.get(i);
+			File file = new File(entry.path);
+			ProjectRecord record;
+			if (entry.projectName == null) {
+				record = new ProjectRecord(file);
+			} else {
+				record = new ProjectRecord(file, entry.projectName,
+						entry.natureIds);
 			}
+			record.projectFileModified = entry.lastModified;
+			records.put(entry.path, record);
+			selectedProjects[i] = record;
 		}
+		projectRecordCache = records;
 		return true;
 	}
 
 	/**
-	 * Collect the list of .project files that are under directory into files.
+	 * Write the project index of a directory.
 	 * 
-	 * @param files
-	 * @param monitor
-	 * 		The monitor to report to
-	 * @return boolean <code>true</code> if the operation was completed.
+	 * @param path
+	 * 		the directory
+	 * @param projects
+	 * 		the projects found in the directory
 	 */
-	private boolean collectProjectFilesFromProvider(Collection files,
-			Object entry, int level, IProgressMonitor monitor) {
-
-		if (monitor.isCanceled()) {
-			return false;
+	private void saveProjectIndex(String path, ProjectRecord[] projects) {
+		ProjectIndex index = new ProjectIndex(path);
+		for (int i = 0; i < projects.length; i++) {
+			index.addProject(projects[i].projectSystemFile.getPath(),
+					projects[i].projectFileModified, projects[i].projectName,
+					projects[i].natureIds);
 		}
-		monitor.subTask(NLS.bind(
-				DataTransferMessages.WizardProjectsImportPage_CheckingMessage,
-				structureProvider.getLabel(entry)));
-		List children = structureProvider.getChildren(entry);
-		if (children == null) {
-			children = new ArrayList(1);
-		}
-		Iterator childrenEnum = children.iterator();
-		while (childrenEnum.hasNext()) {
-			Object child = childrenEnum.next();
-			if (structureProvider.isFolder(child)) {
-				collectProjectFilesFromProvider(files, child, level + 1,
-						monitor);
-			}
-			String elementLabel = structureProvider.getLabel(child);
-			if (elementLabel.equals(IProjectDescription.DESCRIPTION_FILE_NAME)) {
-				files.add(new ProjectRecord(child, entry, level));
-			}
+		try {
+			index.save(directoryCache);
+		} catch (IOException e) {
+			IDEWorkbenchPlugin.log(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Search a directory in the background. Projects are added to the list in
+	 * batches as they are found, so the user can check projects while the
+	 * search is still running.
+	 * 
+	 * @param path
+	 * 		the directory
+	 */
+	private void startDirectorySearch(final String path) {
+		final File directory = new File(path);
+		final Display display = getShell().getDisplay();
+		final Object token = new Object();
+		final List pending = new ArrayList();
+		final Map records = Collections.synchronizedMap(new HashMap());
+		searchToken = token;
+
+		selectedProjects = new ProjectRecord[0];
+		projectsList.refresh(true);
+		setPageComplete(false);
+		setMessage(DataTransferMessages.WizardProjectsImportPage_SearchingMessage);
+
+		// Adds the projects found since the last batch; at most one batch is
+		// waiting for the UI thread at any time
+		final Runnable addBatch = new Runnable() {
+			public void run() {
+				ProjectRecord[] batch;
+				synchronized (pending) {
+					batch = (ProjectRecord[]) pending
+							.toArray(new ProjectRecord[pending.size()]);
+					pending.clear();
+				}
+				if (token == searchToken
+						&& !projectsList.getControl().isDisposed()) {
+					addFoundProjects(batch);
+				}
+			}
+		};
+
+		final ProjectDirectoryScanner scanner = new ProjectDirectoryScanner(
+				scannerParallelism, scannerMode);
+		scanner.setCache(directoryCache);
+		scanner.setListener(new ProjectDirectoryScanner.Listener() {
+			public void projectFileFound(File file) {
+				// read the name on the scanner thread, so descriptions are
+				// read in parallel
+				ImportProfile.Section section = ImportProfile
+						.start("ProjectRecord"); //$NON-NLS-1$
+				ProjectRecord record;
+				try {
+					record = getProjectRecord(file);
+				} finally {
+					ImportProfile.stop(section);
+				}
+				records.put(file.getPath(), record);
+				synchronized (pending) {
+					pending.add(record);
+					if (pending.size() == 1) {
+						display.asyncExec(addBatch);
+					}
+				}
+			}
+		});
+
+		searchJob = new Job(
+				DataTransferMessages.WizardProjectsImportPage_SearchingMessage) {
+			protected IStatus run(IProgressMonitor monitor) {
+				ImportProfile profile = new ImportProfile("Searched " + path); //$NON-NLS-1$
+				profile.attach();
+				profile.begin("collectProjectFilesFromDirectory"); //$NON-NLS-1$
+				List files = new ArrayList();
+				try {
+					if (!scanner.scan(files, directory, monitor)) {
+						return Status.CANCEL_STATUS;
+					}
+				} finally {
+					profile.end();
+					ImportProfile.detach();
+					searchProfile = profile;
+				}
+				final Map cache = new HashMap(records);
+				final ProjectRecord[] projects = new ProjectRecord[files
+						.size()];
+				for (int i = 0; i < projects.length; i++) {
+					projects[i] = (ProjectRecord) cache.get(((File) files
+							.get(i)).getPath());
+				}
+				if (token != searchToken) {
+					return Status.CANCEL_STATUS;
+				}
+				saveProjectIndex(path, projects);
+				// runs after the batches posted during the search
+				display.asyncExec(new Runnable() {
+					public void run() {
+						if (token != searchToken
+								|| projectsList.getControl().isDisposed()) {
+							return;
+						}
+						projectRecordCache = cache;
+						updateProjectsListMessage();
+					}
+				});
+				return Status.OK_STATUS;
+			}
+		};
+		searchJob.setSystem(true);
+		searchJob.schedule();
+	}
+
+	/**
+	 * Add a batch of projects found by a background search to the list,
+	 * checking the ones that do not conflict with the workspace.
+	 * 
+	 * @param batch
+	 */
+	private void addFoundProjects(ProjectRecord[] batch) {
+		ProjectRecord[] projects = new ProjectRecord[selectedProjects.length
+				+ batch.length];
+		System.arraycopy(selectedProjects, 0, projects, 0,
+				selectedProjects.length);
+		System.arraycopy(batch, 0, projects, selectedProjects.length,
+				batch.length);
+		selectedProjects = projects;
+
+		projectsList.add(this, batch);
+		for (int i = 0; i < batch.length; i++) {
+			updateConflicts(batch[i]);
+			if (batch[i].hasConflicts) {
+				projectsList.setGrayed(batch[i], true);
+			} else {
+				projectsList.setChecked(batch[i], true);
+			}
+		}
+		setPageComplete(projectsList.getCheckedElements().length > 0);
+	}
+
+	/**
+	 * Search a directory listed from its project index in the background,
+	 * and update the projects list if the directory changed since the index
+	 * was written.
+	 * 
+	 * @param path
+	 * 		the directory
+	 */
+	private void scheduleIndexValidation(final String path) {
+		final File directory = new File(path);
+		final Display display = getShell().getDisplay();
+		final Object token = new Object();
+		searchToken = token;
+		searchJob = new Job(
+				DataTransferMessages.WizardProjectsImportPage_SearchingMessage) {
+			protected IStatus run(IProgressMonitor monitor) {
+				ImportProfile profile = new ImportProfile("Searched " + path); //$NON-NLS-1$
+				profile.attach();
+				Collection files = new ArrayList();
+				final Map records = new HashMap();
+				final ProjectRecord[] projects;
+				try {
+					profile.begin("collectProjectFilesFromDirectory"); //$NON-NLS-1$
+					if (!collectProjectFilesFromDirectory(files, directory,
+							monitor)) {
+						return Status.CANCEL_STATUS;
+					}
+					profile.begin("createProjectRecords"); //$NON-NLS-1$
+					projects = createProjectRecords(files, records, monitor);
+				} finally {
+					profile.end();
+					ImportProfile.detach();
+					searchProfile = profile;
+				}
+				if (projects == null || token != searchToken) {
+					return Status.CANCEL_STATUS;
+				}
+				saveProjectIndex(path, projects);
+				display.asyncExec(new Runnable() {
+					public void run() {
+						if (token != searchToken
+								|| projectsList.getControl().isDisposed()) {
+							return;
+						}
+						updateProjectsFromValidation(projects, records);
+					}
+				});
+				return Status.OK_STATUS;
+			}
+		};
+		searchJob.setSystem(true);
+		searchJob.schedule();
+	}
+
+	/**
+	 * Replace the projects listed from the index with the result of the
+	 * background search, keeping the check state of the projects that are
+	 * still there.
+	 */
+	private void updateProjectsFromValidation(ProjectRecord[] projects,
+			Map records) {
+		projectRecordCache = records;
+		if (Arrays.equals(projects, selectedProjects)) {
+			// the workspace may have changed while the search was running
+			for (int i = 0; i < projects.length; i++) {
+				updateConflicts(projects[i]);
+				projectsList.setGrayed(projects[i], projects[i].hasConflicts);
+				if (projects[i].hasConflicts) {
+					projectsList.setChecked(projects[i], false);
+				}
+			}
+			updateProjectsListMessage();
+			return;
+		}
+		Set shown = new HashSet(Arrays.asList(selectedProjects));
+		Set checked = new HashSet(Arrays.asList(projectsList
+				.getCheckedElements()));
+		selectedProjects = projects;
+		updateProjectsListControls();
+		for (int i = 0; i < projects.length; i++) {
+			if (shown.contains(projects[i]) && !checked.contains(projects[i])) {
+				projectsList.setChecked(projects[i], false);
+			}
+		}
+		setPageComplete(projectsList.getCheckedElements().length > 0);
+	}
+
+	/**
+	 * Stop the background search of a directory. The job is not waited for;
+	 * its results are dropped since it no longer holds the search token, and
+	 * it stops reading descriptions and writing the index once it notices
+	 * the cancellation.
+	 */
+	private void cancelSearch() {
+		searchToken = null;
+		if (searchJob == null) {
+			return;
+		}
+		searchJob.cancel();
+		searchJob = null;
+	}
+
+	/**
+	 * Answer the record for a project description file, reusing the record
+	 * of the previous search if the file did not change. Called from the
+	 * search threads, so a reused record is not modified here; its conflicts
+	 * are computed again on the UI thread.
+	 * 
+	 * @param file
+	 * 		the .project file
+	 * @return ProjectRecord
+	 */
+	private ProjectRecord getProjectRecord(File file) {
+		long modified = file.lastModified();
+		ProjectRecord record = (ProjectRecord) projectRecordCache.get(file
+				.getPath());
+		if (record == null || record.projectFileModified != modified) {
+			record = new ProjectRecord(file);
+			record.projectFileModified = modified;
+		}
+		return record;
+	}
+
+	/**
+	 * Answer a handle to the zip file currently specified as being the source.
+	 * Return null if this file does not exist or is not of valid format.
+	 */
+	private ZipFile getSpecifiedZipSourceFile(String fileName) {
+		if (fileName.length() == 0) {
+			return null;
+		}
+
+		try {
+			return new ZipFile(fileName);
+		} catch (ZipException e) {
+			displayErrorDialog(DataTransferMessages.ZipImport_badFormat);
+		} catch (IOException e) {
+			displayErrorDialog(DataTransferMessages.ZipImport_couldNotRead);
+		}
+
+		archivePathField.setFocus();
+		return null;
+	}
+
+	/**
+	 * Answer an index of the tar file currently specified as being the
+	 * source. Compressed files are indexed when they are in the BGZF format,
+	 * other ones are streamed. Return null if this file cannot be read or is
+	 * not of valid format, or if the search was canceled.
+	 */
+	private ArchiveIndex getSpecifiedTarIndex(String fileName,
+			IProgressMonitor monitor) {
+		if (fileName.length() == 0) {
+			return null;
+		}
+
+		File file = new File(fileName);
+		if (!file.canRead()) {
+			displayErrorDialog(DataTransferMessages.ZipImport_couldNotRead);
+			archivePathField.setFocus();
+			return null;
+		}
+		try {
+			return TarArchiveIndex.open(file, monitor);
+		} catch (OperationCanceledException e) {
+			return null;
+		} catch (IOException e) {
+			displayErrorDialog(DataTransferMessages.TarImport_badFormat);
+		}
+
+		archivePathField.setFocus();
+		return null;
+	}
+
+	/**
+	 * Returns whether an archive is too large to be indexed, or compressed
+	 * so it cannot be, and is imported in forward passes instead.
+	 * 
+	 * @param fileName
+	 * @return boolean
+	 */
+	private boolean isStreamedArchive(String fileName) {
+		boolean tar = ArchiveFileManipulations.isTarFile(fileName);
+		if (tar && !TarArchiveIndex.isIndexable(new File(fileName))) {
+			return true;
 		}
+		return streamingThreshold >= 0
+				&& (tar || ArchiveFileManipulations.isZipFile(fileName))
+				&& new File(fileName).length() >= streamingThreshold;
+	}
+
+	/**
+	 * Answer the projects of the archive currently specified as being the
+	 * source, found in a forward pass, and remember the archive for the
+	 * import. Return null if this file cannot be read or is not of valid
+	 * format, or if the search was canceled.
+	 */
+	private List getSpecifiedStreamedProjects(String fileName,
+			IProgressMonitor monitor) {
+		File file = new File(fileName);
+		if (!file.canRead()) {
+			displayErrorDialog(DataTransferMessages.ZipImport_couldNotRead);
+			archivePathField.setFocus();
+			return null;
+		}
+		try {
+			List projects = StreamingArchiveImporter.findProjects(file,
+					monitor);
+			streamedArchive = file;
+			return projects;
+		} catch (OperationCanceledException e) {
+			return null;
+		} catch (IOException e) {
+			displayErrorDialog(ArchiveFileManipulations.isTarFile(fileName) ? DataTransferMessages.TarImport_badFormat
+					: DataTransferMessages.ZipImport_badFormat);
+		}
+
+		archivePathField.setFocus();
+		return null;
+	}
+
+	/**
+	 * Display an error dialog with the specified message.
+	 * 
+	 * @param message
+	 * 		the error message
+	 */
+	protected void displayErrorDialog(String message) {
+		MessageDialog.open(MessageDialog.ERROR, getContainer().getShell(),
+				getErrorDialogTitle(), message, SWT.SHEET);
+	}
+
+	/**
+	 * Get the title for an error dialog. Subclasses should override.
+	 */
+	protected String getErrorDialogTitle() {
+		return IDEWorkbenchMessages.WizardExportPage_internalErrorTitle;
+	}
+
+	/**
+	 * Collect the list of .project files that are under directory into files.
+	 * Directories that did not change since the last search of the same root
+	 * are not listed again.
+	 * 
+	 * @param files
+	 * @param directory
+	 * @param monitor
+	 * 		The monitor to report to
+	 * @return boolean <code>true</code> if the operation was completed.
+	 */
+	private boolean collectProjectFilesFromDirectory(Collection files,
+			File directory, IProgressMonitor monitor) {
+		ProjectDirectoryScanner scanner = new ProjectDirectoryScanner(
+				scannerParallelism, scannerMode);
+		scanner.setCache(directoryCache);
+		return scanner.scan(files, directory, monitor);
+	}
+
+	/**
+	 * Collect the records of the .project files in an archive index into
+	 * files.
+	 * 
+	 * @param files
+	 * @param archive
+	 * @param monitor
+	 * 		The monitor to report to
+	 * @return boolean <code>true</code> if the operation was completed.
+	 */
+	private boolean collectProjectFilesFromArchive(Collection files,
+			final ArchiveIndex archive, IProgressMonitor monitor) {
+		List<Callable<ProjectRecord>> tasks = new ArrayList<Callable<ProjectRecord>>();
+		Iterator<ArchiveIndex.Entry> entries = archive.entries();
+		int count = 0;
+		while (entries.hasNext()) {
+			ArchiveIndex.Entry entry = entries.next();
+			// checking every entry would dominate the search
+			if ((++count & 0x3ff) == 0) {
+				if (monitor.isCanceled()) {
+					return false;
+				}
+				monitor.subTask(NLS.bind(
+						DataTransferMessages.WizardProjectsImportPage_CheckingMessage,
+						entry.name));
+			}
+			if (ArchiveIndex.isProjectFile(entry)) {
+				final ArchiveIndex.Entry projectEntry = entry;
+				tasks.add(new Callable<ProjectRecord>() {
+					public ProjectRecord call() {
+						return new ProjectRecord(archive, projectEntry);
+					}
+				});
+			}
+		}
+		ImportProfile.countFiles(count);
+		ProjectRecord[] records = callInParallel(tasks, monitor);
+		if (records == null) {
+			return false;
+		}
+		files.addAll(Arrays.asList(records));
 		return true;
 	}
 
+	/**
+	 * Replace the archive index, closing the previous one.
+	 * 
+	 * @param index
+	 */
+	private void setArchiveIndex(ArchiveIndex index) {
+		if (archiveIndex != null && archiveIndex != index) {
+			archiveIndex.close();
+		}
+		archiveIndex = index;
+	}
+
 	/**
 	 * The browse button has been selected. Select the location.
 	 */
@@ -1367,77 +2137,698 @@ public class WizardAssignmentsImportPage extends WizardPage implements
 			}
 		}
 
-		String selectedArchive = dialog.open();
-		if (selectedArchive != null) {
-			previouslyBrowsedArchive = selectedArchive;
-			archivePathField.setText(previouslyBrowsedArchive);
-			updateProjectsList(selectedArchive);
-			System.out.print(selectedArchive);
+		String selectedArchive = dialog.open();
+		if (selectedArchive != null) {
+			previouslyBrowsedArchive = selectedArchive;
+			archivePathField.setText(previouslyBrowsedArchive);
+			updateProjectsList(selectedArchive);
+			System.out.print(selectedArchive);
+		}
+
+	}
+
+	/**
+	 * The URL fetch button has been pressed. fetch URL contents.
+	 * @throws InterruptedException 
+	 * @throws InvocationTargetException 
+	 * @throws OperationCanceledException 
+	 * @throws MalformedURLException 
+	 */
+	
+	public String getFileName(String url, String destin)
+	{
+		int slashIndex = url.lastIndexOf('/');
+		int periodIndex = url.lastIndexOf('.');
+
+		return url.substring(slashIndex + 1);
+	}
+	
+	/**
+	 * Answer whether the failure of a fetch means the URL is not valid: the
+	 * server is not known, refuses the connection or does not have the
+	 * file.
+	 * 
+	 * @param t
+	 * @return boolean
+	 */
+	private static boolean isInvalidURL(Throwable t) {
+		return t instanceof MalformedURLException
+				|| t instanceof UnknownHostException
+				|| t instanceof ConnectException
+				|| t instanceof FileNotFoundException;
+	}
+
+	protected void handleFetchRemoteArchiveButtonPressed() { 		
+		
+		// several URLs, or manifests listing them, are fetched at once; the
+		// manifests are read off the UI thread
+		final String sources = remoteArchivePathField.getText();
+		final List[] parsed = new List[1];
+		try {
+			getContainer().run(true, true, new IRunnableWithProgress() {
+				public void run(IProgressMonitor monitor)
+						throws InvocationTargetException {
+					monitor.beginTask("Reading " + sources, //$NON-NLS-1$
+							IProgressMonitor.UNKNOWN);
+					try {
+						parsed[0] = RemoteArchiveFetcher.parseSources(sources);
+					} catch (IOException e) {
+						throw new InvocationTargetException(e);
+					} finally {
+						monitor.done();
+					}
+				}
+			});
+		} catch (InvocationTargetException e) {
+			setMessage("Invalid URL"); //$NON-NLS-1$
+			return;
+		} catch (InterruptedException e) {
+			setMessage("download interrupted", ERROR); //$NON-NLS-1$
+			return;
+		}
+		List urls = parsed[0];
+		if (urls.isEmpty()) {
+			setMessage("Invalid URL"); //$NON-NLS-1$
+			return;
+		}
+		if (urls.size() > 1) {
+			fetchRemoteArchives(urls);
+			return;
+		}
+		// the URL is validated by the first response of the fetch, whose
+		// connection the download reuses
+		final String UrlString=urls.get(0).toString();
+		final String curLocation=Platform.getLocation().toString();
+		//URLDownload.fileDownload(UrlString,curLocation);							
+		if (streamRemoteArchives) {
+			try {
+				URL url = new URL(UrlString);
+				File staging = StreamingArchiveImporter.getStagingFolder(url);
+				if (staging != null) {
+					stageRemoteArchive(url, staging);
+					return;
+				}
+			} catch (MalformedURLException e) {
+				setMessage("Invalid URL"); //$NON-NLS-1$
+				return;
+			}
+		}
+
+		// the archive fetched, from the download cache when it is on
+		releaseDownloads();
+		final File[] archive = new File[1];
+		IRunnableWithProgress ir=new IRunnableWithProgress() {
+			
+			@Override
+			public void run(IProgressMonitor monitor) throws InvocationTargetException,
+					InterruptedException {				
+				// the downloader reports the progress in kilobytes
+				try {
+					URL url = new URL(UrlString);
+					DownloadCache cache = DownloadCache.open();
+					if (cache != null) {
+						archive[0] = cache.fetch(url, monitor);
+						downloadCache = cache;
+						pinnedDownloads.add(url);
+					} else {
+						archive[0] = new File(curLocation, getFileName(
+								UrlString, curLocation));
+						URLDownload.download(url, archive[0], monitor);
+					}
+				} catch (IOException e) {
+					throw new InvocationTargetException(e);
+				}
+			}
+		};
+		
+		try {
+			getContainer().run(true, true, ir);
+		} catch (InterruptedException e) {
+			System.out.print("interrupted");
+			setMessage("download interrupted",ERROR);
+			return;
+		} catch (InvocationTargetException e) {
+			// one of the steps resulted in a core exception
+			Throwable t = e.getTargetException();
+			if (isInvalidURL(t)) {
+				setMessage("Invalid URL"); //$NON-NLS-1$
+				return;
+			}
+			String message = DataTransferMessages.WizardExternalProjectImportPage_errorMessage;
+			IStatus status;
+			if (t instanceof CoreException) {
+				status = ((CoreException) t).getStatus();
+			} else {
+				status = new Status(IStatus.ERROR,
+						IDEWorkbenchPlugin.IDE_WORKBENCH, 1, message, t);
+			}
+			ErrorDialog.openError(getShell(), message, null, status);
+			return;
+		}
+		
+		updateProjectsList(archive[0].getPath());
+	}
+	/**
+	 * Create the selected projects
+	 * 
+	 * @return boolean <code>true</code> if all project creations were
+	 * 	successful.
+	 */
+	public boolean createProjects() {
+		saveWidgetValues();
+		// import the projects found so far
+		cancelSearch();
+		
+		final Object[] selected = projectsList.getCheckedElements();
+		if (dryRun) {
+			return reportDryRun(selected);
+		}
+		createdProjects = Collections.synchronizedList(new ArrayList());
+		final List<ParallelImportEngine.Task> tasks = new ArrayList<ParallelImportEngine.Task>(
+				selected.length);
+		// the projects of each streamed archive are extracted in one pass
+		// before they are created, they are kept by archive
+		final Map streamedSources = new HashMap();
+		final List<ExistingProjectImporter.Source> sources = new ArrayList<ExistingProjectImporter.Source>(
+				selected.length);
+		final File staging = stagingFolder;
+		final ImportJournal projectJournal = getJournal();
+		final ExistingProjectImporter importer = newImporter();
+		// the build of a bulk import must see every file, so it is not
+		// left to a background refresh
+		importer.setBackgroundRefresh(!bulkImport);
+		for (int i = 0; i < selected.length; i++) {
+			final ProjectRecord record = (ProjectRecord) selected[i];
+			ExistingProjectImporter.Source source = getSource(record);
+			sources.add(source);
+			if (record.streamedProject != null) {
+				List archiveSources = (List) streamedSources
+						.get(record.streamedSource);
+				if (archiveSources == null) {
+					archiveSources = new ArrayList();
+					streamedSources.put(record.streamedSource, archiveSources);
+				}
+				archiveSources.add(source);
+			}
+			// done by an earlier attempt of this import
+			final boolean imported = importer.getState(source) == ExistingProjectImporter.IMPORTED;
+			tasks.add(new ParallelImportEngine.Task() {
+				public String getName() {
+					return record.getProjectName();
+				}
+
+				public void run(IProgressMonitor monitor) throws CoreException {
+					ImportProfile.Section section = ImportProfile
+							.start("createExistingProject"); //$NON-NLS-1$
+					try {
+						if (imported) {
+							createdProjects.add(ResourcesPlugin.getWorkspace()
+									.getRoot().getProject(
+											record.getProjectName()));
+						} else {
+							record.loadDescription();
+							createdProjects.add(importer.createProject(
+									getSource(record), monitor));
+						}
+					} finally {
+						ImportProfile.stop(section);
+					}
+				}
+			});
+		}
+		final IStatus[] result = new IStatus[1];
+		// whether the staged projects were moved into the workspace location
+		final boolean[] moved = new boolean[1];
+		IRunnableWithProgress op = new IRunnableWithProgress() {
+			public void run(IProgressMonitor monitor)
+					throws InvocationTargetException, InterruptedException {
+				ImportProfile profile = new ImportProfile(NLS.bind(
+						"Imported {0} projects", new Integer(tasks.size()))); //$NON-NLS-1$
+				// the pools of the import report to the profile
+				profile.attach();
+				boolean suspended = false;
+				ContentStore store = null;
+				try {
+					if (bulkImport) {
+						ExistingProjectImporter.suspendAutoBuild(ResourcesPlugin
+								.getWorkspace());
+						suspended = true;
+					}
+					if (projectJournal != null) {
+						profile.begin("resume"); //$NON-NLS-1$
+						importer.removePartial(sources,
+								new NullProgressMonitor());
+					}
+					if (sharedContent) {
+						store = openContentStore();
+						importer.setContentStore(store);
+					}
+					IProgressMonitor createMonitor = monitor;
+					if (!streamedSources.isEmpty()) {
+						monitor.beginTask("", streamedSources.size() + 1); //$NON-NLS-1$
+						profile.begin("extract"); //$NON-NLS-1$
+						Iterator archives = streamedSources.entrySet()
+								.iterator();
+						moved[0] = staging != null;
+						while (archives.hasNext()) {
+							Map.Entry archive = (Map.Entry) archives.next();
+							List archiveSources = (List) archive.getValue();
+							if (staging != null) {
+								importer.move(staging, archiveSources,
+										new SubProgressMonitor(monitor, 1));
+							} else {
+								importer.extract((File) archive.getKey(),
+										archiveSources, new SubProgressMonitor(
+												monitor, 1));
+							}
+						}
+						createMonitor = new SubProgressMonitor(monitor, 1);
+					}
+					profile.begin("create"); //$NON-NLS-1$
+					result[0] = new ParallelImportEngine(importParallelism)
+							.run(
+									tasks,
+									DataTransferMessages.WizardExternalProjectImportPage_errorMessage,
+									createMonitor);
+				} catch (CoreException e) {
+					throw new InvocationTargetException(e);
+				} catch (OperationCanceledException e) {
+					throw new InterruptedException();
+				} finally {
+					if (moved[0]) {
+						restoreStagedProjects(staging, selected);
+					}
+					importer.dispose();
+					if (store != null) {
+						logDeduplication(store);
+					}
+					profile.end();
+					ImportProfile.detach();
+					if (suspended) {
+						// also for the projects created before a cancel
+						scheduleBulkBuild(profile);
+					} else {
+						profile.log();
+					}
+				}
+			}
+		};
+		// run the new project creation operation
+		try {
+			getContainer().run(true, true, op);
+		} catch (InterruptedException e) {
+			return false;
+		} catch (InvocationTargetException e) {
+			// one of the steps resulted in a core exception
+			Throwable t = e.getTargetException();
+			String message = DataTransferMessages.WizardExternalProjectImportPage_errorMessage;
+			IStatus status;
+			if (t instanceof CoreException) {
+				status = ((CoreException) t).getStatus();
+			} else {
+				status = new Status(IStatus.ERROR,
+						IDEWorkbenchPlugin.IDE_WORKBENCH, 1, message, t);
+			}
+			ErrorDialog.openError(getShell(), message, null, status);
+			return false;
+		}
+		if (!result[0].isOK()) {
+			// the projects that failed are listed, the others are kept
+			ErrorDialog.openError(getShell(),
+					DataTransferMessages.WizardExternalProjectImportPage_errorMessage,
+					null, result[0]);
+			if (createdProjects.isEmpty()) {
+				return false;
+			}
+		}
+		setArchiveIndex(null);
+		streamedArchive = null;
+		discardStagedArchive();
+		closeFetchedArchives();
+		releaseDownloads();
+		closeJournal();
+
+		// Adds the projects to the working sets
+		addToWorkingSets();
+		
+		return true;
+	}
+
+	List createdProjects;
+
+	/**
+	 * Report what importing the selected projects would do, with the
+	 * measurements of the search and of the planning, without changing the
+	 * workspace. The full report is written to the plug-in log.
+	 * 
+	 * @param selected
+	 * 		the checked records
+	 * @return boolean <code>false</code>, the wizard stays open
+	 */
+	private boolean reportDryRun(final Object[] selected) {
+		final ImportProfile profile = new ImportProfile(NLS.bind(
+				"Planned {0} projects", new Integer(selected.length))); //$NON-NLS-1$
+		profile.begin("getProjectRecords"); //$NON-NLS-1$
+		getProjectRecords();
+		profile.end();
+		final ExistingProjectImporter importer = newImporter();
+		final List plan = Collections.synchronizedList(new ArrayList());
+		IRunnableWithProgress op = new IRunnableWithProgress() {
+			public void run(IProgressMonitor monitor)
+					throws InvocationTargetException, InterruptedException {
+				profile.attach();
+				profile.begin("plan"); //$NON-NLS-1$
+				monitor.beginTask(
+						DataTransferMessages.WizardProjectsImportPage_CreateProjectsTask,
+						selected.length);
+				try {
+					for (int i = 0; i < selected.length; i++) {
+						if (monitor.isCanceled()) {
+							throw new InterruptedException();
+						}
+						ImportProfile.Section section = ImportProfile
+								.start("createExistingProject"); //$NON-NLS-1$
+						try {
+							plan.add(planProject((ProjectRecord) selected[i],
+									importer));
+						} catch (IOException e) {
+							throw new InvocationTargetException(e);
+						} finally {
+							ImportProfile.stop(section);
+						}
+						monitor.worked(1);
+					}
+				} finally {
+					profile.end();
+					ImportProfile.detach();
+					monitor.done();
+				}
+			}
+		};
+		try {
+			getContainer().run(true, true, op);
+		} catch (InterruptedException e) {
+			return false;
+		} catch (InvocationTargetException e) {
+			IDEWorkbenchPlugin.log(e.getMessage(), e.getTargetException());
+			return false;
+		}
+
+		StringBuffer report = new StringBuffer();
+		ImportProfile search = searchProfile;
+		if (search != null) {
+			report.append(search.toReport()).append('\n');
+		}
+		report.append(profile.toReport());
+		// the dialog shows the first projects only
+		StringBuffer shown = new StringBuffer(report.toString());
+		for (int i = 0; i < plan.size(); i++) {
+			report.append('\n').append(plan.get(i));
+			if (i < MAX_DRY_RUN_LINES) {
+				shown.append('\n').append(plan.get(i));
+			}
+		}
+		if (plan.size() > MAX_DRY_RUN_LINES) {
+			shown.append(NLS.bind("\n... {0} more, see the error log", //$NON-NLS-1$
+					new Integer(plan.size() - MAX_DRY_RUN_LINES)));
+		}
+		Activator plugin = Activator.getDefault();
+		if (plugin != null) {
+			plugin.getLog().log(
+					new Status(IStatus.INFO, Activator.PLUGIN_ID, report
+							.toString()));
+		}
+		MessageDialog.openInformation(getShell(), "Dry run", shown.toString()); //$NON-NLS-1$
+		return false;
+	}
+
+	/**
+	 * Describe what importing a record would do, reading its description
+	 * and measuring its contents.
+	 * 
+	 * @param record
+	 * @param importer
+	 * 		the importer of the projects of the current source
+	 * @return String
+	 * @throws IOException
+	 */
+	private String planProject(ProjectRecord record,
+			ExistingProjectImporter importer) throws IOException {
+		String name = record.getProjectName();
+		if (record.hasConflicts) {
+			return name + ": skipped, it exists in the workspace"; //$NON-NLS-1$
+		}
+		record.loadDescription();
+		ExistingProjectImporter.Source source = getSource(record);
+		String action = importer.getAction(source);
+		// streamed projects are measured by the extraction only
+		long[] size = importer.measure(source);
+		if (size == null) {
+			return name + ": " + action; //$NON-NLS-1$
+		}
+		return NLS.bind("{0}: {1}, {2} files, {3} bytes", new Object[] { //$NON-NLS-1$
+				name, action, new Long(size[1]), new Long(size[0]) });
+	}
+
+	/**
+	 * Build the workspace once the last running bulk import is over, then
+	 * restore the auto-build setting that was suspended for the imports.
+	 * Restoring it afterwards keeps the workspace from scheduling a build of
+	 * its own. The projects were refreshed when they were opened.
+	 * 
+	 * @param profile
+	 * 		receives the timing of the build
+	 */
+	private void scheduleBulkBuild(final ImportProfile profile) {
+		final IWorkspace workspace = ResourcesPlugin.getWorkspace();
+		WorkspaceJob job = new WorkspaceJob(
+				DataTransferMessages.WizardProjectsImportPage_CreateProjectsTask) {
+			public IStatus runInWorkspace(IProgressMonitor monitor)
+					throws CoreException {
+				boolean build = ExistingProjectImporter.endAutoBuildSuspension();
+				try {
+					if (build) {
+						profile.begin("build"); //$NON-NLS-1$
+						workspace.build(
+								IncrementalProjectBuilder.INCREMENTAL_BUILD,
+								monitor);
+					}
+				} finally {
+					profile.log();
+					ExistingProjectImporter.restoreAutoBuild(workspace);
+					monitor.done();
+				}
+				return Status.OK_STATUS;
+			}
+		};
+		job.setRule(workspace.getRoot());
+		job.schedule();
+	}
+	
+	private void addToWorkingSets() {
+		
+		IWorkingSet[] selectedWorkingSets = workingSetGroup.getSelectedWorkingSets();
+		if(selectedWorkingSets == null || selectedWorkingSets.length == 0)
+			return; // no Working set is selected
+		IWorkingSetManager workingSetManager = PlatformUI.getWorkbench().getWorkingSetManager();
+		for (Iterator i = createdProjects.iterator(); i.hasNext();) {
+			IProject project = (IProject) i.next();
+			workingSetManager.addToWorkingSets(project, selectedWorkingSets);
+		}
+	}
+
+	/**
+	 * Performs clean-up if the user cancels the wizard without doing anything
+	 */
+	public void performCancel() {
+		cancelSearch();
+		closeJournal();
+		discardStagedArchive();
+		closeFetchedArchives();
+		releaseDownloads();
+		setArchiveIndex(null);
+	}
+
+	/**
+	 * Answer the journal of the imports from the current source, opening it
+	 * when the source changed.
+	 * 
+	 * @return the journal, or <code>null</code> if it cannot be opened
+	 */
+	private ImportJournal getJournal() {
+		if (lastPath == null || lastPath.length() == 0) {
+			return null;
+		}
+		File source = new File(lastPath);
+		if (journal != null && journal.getSource().equals(source)) {
+			return journal;
+		}
+		closeJournal();
+		try {
+			journal = ImportJournal.open(source);
+		} catch (IOException e) {
+			// the import is not journaled
+			IDEWorkbenchPlugin.log(e.getMessage(), e);
+		}
+		return journal;
+	}
+
+	private void closeJournal() {
+		if (journal != null) {
+			journal.close();
+			journal = null;
 		}
+	}
 
+	/**
+	 * Answer the stamp of the source of a record in the journal.
+	 * 
+	 * @param record
+	 * @return String
+	 */
+	private String getJournalStamp(ProjectRecord record) {
+		File fetched = record.archive == null ? null : (File) fetchedArchives
+				.get(record.archive);
+		if (fetched != null) {
+			// the projects of several archives are journaled together
+			return ImportJournal.getStamp(fetched) + '!' + record.archivePrefix;
+		}
+		if (record.archive == null && record.streamedProject == null
+				&& record.projectArchiveFile == null) {
+			return ImportJournal.getStamp(record.projectSystemFile);
+		}
+		if (record.streamedProject != null) {
+			String source = stagingFolder != null ? stagedStamp
+					: ImportJournal.getStamp(record.streamedSource);
+			return source + '!' + record.archivePrefix;
+		}
+		return ImportJournal.getStamp(journal.getSource()) + '!'
+				+ record.archivePrefix;
 	}
 
 	/**
-	 * The URL fetch button has been pressed. fetch URL contents.
-	 * @throws InterruptedException 
-	 * @throws InvocationTargetException 
-	 * @throws OperationCanceledException 
-	 * @throws MalformedURLException 
+	 * Answer an importer of the projects of the current source into the
+	 * workspace, journaled in the journal of the source.
+	 * 
+	 * @return ExistingProjectImporter
 	 */
-	
-	public String getFileName(String url, String destin)
-	{
-		int slashIndex = url.lastIndexOf('/');
-		int periodIndex = url.lastIndexOf('.');
+	private ExistingProjectImporter newImporter() {
+		ExistingProjectImporter importer = new ExistingProjectImporter(
+				ResourcesPlugin.getWorkspace(), getWorkspaceIndex(), copyFiles);
+		importer.setJournal(getJournal());
+		return importer;
+	}
 
-		return url.substring(slashIndex + 1);
+	/**
+	 * Answer the project of a record as imported by the
+	 * {@link ExistingProjectImporter}, with the description of the record.
+	 * 
+	 * @param record
+	 * @return ExistingProjectImporter.Source
+	 */
+	private ExistingProjectImporter.Source getSource(ProjectRecord record) {
+		ExistingProjectImporter.Source source = new ExistingProjectImporter.Source(
+				record.getProjectName(), journal == null ? null
+						: getJournalStamp(record));
+		if (record.archive != null) {
+			source.archive = record.archive;
+			source.archivePrefix = record.archivePrefix;
+		} else if (record.streamedProject != null) {
+			source.archivePrefix = record.archivePrefix;
+			source.extracted = true;
+		} else {
+			source.projectFile = record.projectSystemFile;
+		}
+		source.description = record.description;
+		return source;
 	}
-	
-	public boolean validateURL(String urlString)
-	{
+
+	/**
+	 * Move the selected staged projects that were not created, because
+	 * their import failed or was canceled, back into the staging folder so
+	 * they can be imported again.
+	 * 
+	 * @param staging
+	 * 		the folder the archive was extracted to
+	 * @param selected
+	 * 		the checked records
+	 */
+	private void restoreStagedProjects(File staging, Object[] selected) {
+		IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+		Map targets = new HashMap();
+		for (int i = 0; i < selected.length; i++) {
+			ProjectRecord record = (ProjectRecord) selected[i];
+			String name = record.getProjectName();
+			if (record.streamedProject != null
+					&& !root.getProject(name).exists()) {
+				targets.put(record.archivePrefix, root.getLocation().append(
+						name).toFile());
+			}
+		}
 		try {
-		    URL url = new URL(urlString);
-		    URLConnection conn = url.openConnection();
-		    conn.connect();		    
-		} catch (MalformedURLException e) {
-			return false;
-		    // the URL is not in a valid form
+			StreamingArchiveImporter.moveBack(staging, targets);
 		} catch (IOException e) {
-		    // the connection couldn't be established
-			return false;
+			IDEWorkbenchPlugin.log(e.getMessage(), e);
 		}
-		return true;
 	}
-	
-	protected void handleFetchRemoteArchiveButtonPressed() { 		
-		
-		final String UrlString=remoteArchivePathField.getText().trim();
-		if(!validateURL(UrlString)){setMessage("Invalid URL");return;}
-		final String curLocation=Platform.getLocation().toString();
-		//URLDownload.fileDownload(UrlString,curLocation);							
 
-		IRunnableWithProgress ir=new IRunnableWithProgress() {
-			
-			@Override
-			public void run(IProgressMonitor monitor) throws InvocationTargetException,
-					InterruptedException {				
-				monitor.beginTask("Archive download in progress...", IProgressMonitor.UNKNOWN);
-		        URLDownload.fileDownload(UrlString,curLocation,monitor);					
-		        monitor.done();
-				// TODO Auto-generated method stub
-				
-			}
-		};
-		
+	/**
+	 * Stream a remote archive into a staging folder, extracting it and
+	 * finding its projects as it is downloaded, and list the projects. They
+	 * are moved into the workspace location when they are imported, so the
+	 * archive is neither saved nor read again.
+	 * 
+	 * @param url
+	 * @param staging
+	 * 		the folder the archive is extracted to
+	 */
+	private void stageRemoteArchive(final URL url, final File staging) {
+		cancelSearch();
+		discardStagedArchive();
+		closeFetchedArchives();
+		releaseDownloads();
+		setArchiveIndex(null);
+		final boolean shareContent = sharedContent;
+		final StreamingArchiveImporter.Staged[] staged = new StreamingArchiveImporter.Staged[1];
 		try {
-			getContainer().run(true, true, ir);
+			getContainer().run(true, true, new IRunnableWithProgress() {
+				public void run(IProgressMonitor monitor)
+						throws InvocationTargetException, InterruptedException {
+					// measure the download for dry runs
+					ImportProfile profile = new ImportProfile("Streamed " //$NON-NLS-1$
+							+ url);
+					profile.attach();
+					profile.begin("stage"); //$NON-NLS-1$
+					try {
+						ContentStore store = shareContent ? openContentStore()
+								: null;
+						staged[0] = StreamingArchiveImporter.stage(url,
+								staging, store, monitor);
+						if (store != null) {
+							logDeduplication(store);
+						}
+					} catch (CoreException e) {
+						throw new InvocationTargetException(e);
+					} catch (IOException e) {
+						throw new InvocationTargetException(e);
+					} catch (OperationCanceledException e) {
+						throw new InterruptedException();
+					} finally {
+						profile.end();
+						ImportProfile.detach();
+						searchProfile = profile;
+					}
+				}
+			});
 		} catch (InterruptedException e) {
-			System.out.print("interrupted");
-			setMessage("download interrupted",ERROR);
+			setMessage("download interrupted", ERROR); //$NON-NLS-1$
 			return;
 		} catch (InvocationTargetException e) {
-			// one of the steps resulted in a core exception
 			Throwable t = e.getTargetException();
+			if (isInvalidURL(t)) {
+				setMessage("Invalid URL"); //$NON-NLS-1$
+				return;
+			}
 			String message = DataTransferMessages.WizardExternalProjectImportPage_errorMessage;
 			IStatus status;
 			if (t instanceof CoreException) {
@@ -1449,188 +2840,251 @@ public class WizardAssignmentsImportPage extends WizardPage implements
 			ErrorDialog.openError(getShell(), message, null, status);
 			return;
 		}
-		
-		updateProjectsList(Platform.getLocation()+"/"+getFileName(UrlString,curLocation));		
+		stagingFolder = staging;
+		// the archive is not saved, it is known to the journal by what the
+		// server sent; without a validator it is never taken as unchanged
+		String validator = staged[0].validator;
+		if (validator == null) {
+			validator = Long.toString(System.currentTimeMillis());
+		}
+		stagedStamp = url + " " + validator; //$NON-NLS-1$
+		// names the projects at the root of the archive, and the journal
+		streamedArchive = new File(staging, getFileName(url.getPath(), null));
+		lastPath = streamedArchive.getPath();
+		lastModified = streamedArchive.lastModified();
+		lastCopyFiles = copyFiles;
+		List projects = staged[0].projects;
+		selectedProjects = new ProjectRecord[projects.size()];
+		for (int i = 0; i < selectedProjects.length; i++) {
+			selectedProjects[i] = new ProjectRecord(
+					(StreamingArchiveImporter.Project) projects.get(i),
+					streamedArchive);
+		}
+		updateProjectsListControls();
 	}
+
 	/**
-	 * Create the selected projects
+	 * Fetch the archives of several URLs at the same time and list their
+	 * projects, adding the projects of each archive as soon as it is
+	 * fetched. The archives are fetched through the download cache when it
+	 * is on.
 	 * 
-	 * @return boolean <code>true</code> if all project creations were
-	 * 	successful.
+	 * @param urls
+	 * 		the {@link URL}s of the archives
 	 */
-	public boolean createProjects() {
-		saveWidgetValues();
-		
-		final Object[] selected = projectsList.getCheckedElements();
-		createdProjects = new ArrayList();
-		WorkspaceModifyOperation op = new WorkspaceModifyOperation() {
-			protected void execute(IProgressMonitor monitor)
-					throws InvocationTargetException, InterruptedException {
-				try {
-					monitor.beginTask("", selected.length); //$NON-NLS-1$
-					if (monitor.isCanceled()) {
-						throw new OperationCanceledException();
-					}
-					for (int i = 0; i < selected.length; i++) {
-						createExistingProject((ProjectRecord) selected[i],
-								new SubProgressMonitor(monitor, 1));
-					}
-				} finally {
-					monitor.done();
+	private void fetchRemoteArchives(final List urls) {
+		cancelSearch();
+		discardStagedArchive();
+		closeFetchedArchives();
+		releaseDownloads();
+		setArchiveIndex(null);
+		streamedArchive = null;
+		final DownloadCache cache;
+		DownloadCache opened;
+		try {
+			opened = DownloadCache.open();
+		} catch (IOException e) {
+			// downloaded into the workspace location instead
+			IDEWorkbenchPlugin.log(e.getMessage(), e);
+			opened = null;
+		}
+		cache = opened;
+		downloadCache = cache;
+		final RemoteArchiveFetcher fetcher = new RemoteArchiveFetcher(
+				RemoteArchiveFetcher.getDefaultParallelism(),
+				RemoteArchiveFetcher.getDefaultConnections());
+		fetcher.setCache(cache);
+		File folder = cache != null ? cache.getRoot() : Platform.getLocation()
+				.toFile();
+		fetcher.setFolder(folder);
+
+		final Display display = getShell().getDisplay();
+		final Object token = new Object();
+		searchToken = token;
+		selectedProjects = new ProjectRecord[0];
+		projectsList.refresh(true);
+		setPageComplete(false);
+		final RemoteArchiveFetcher.Listener listener = new RemoteArchiveFetcher.Listener() {
+			public void archiveFetched(URL url, File file,
+					IProgressMonitor monitor) throws IOException {
+				if (cache != null) {
+					// kept in the cache until the list is replaced
+					pinnedDownloads.add(url);
 				}
+				final ProjectRecord[] batch = collectFetchedProjects(file,
+						monitor);
+				display.asyncExec(new Runnable() {
+					public void run() {
+						if (token == searchToken
+								&& !projectsList.getControl().isDisposed()) {
+							addFoundProjects(batch);
+						}
+					}
+				});
 			}
 		};
-		// run the new project creation operation
+		final IStatus[] result = new IStatus[1];
 		try {
-			getContainer().run(true, true, op);
-		} catch (InterruptedException e) {
-			return false;
+			getContainer().run(true, true, new IRunnableWithProgress() {
+				public void run(IProgressMonitor monitor)
+						throws InterruptedException {
+					// measure the downloads and searches for dry runs
+					ImportProfile profile = new ImportProfile(NLS.bind(
+							"Fetched {0} archives", new Integer(urls.size()))); //$NON-NLS-1$
+					profile.attach();
+					profile.begin("fetch"); //$NON-NLS-1$
+					try {
+						result[0] = fetcher
+								.fetch(
+										urls,
+										listener,
+										DataTransferMessages.WizardExternalProjectImportPage_errorMessage,
+										monitor);
+					} catch (OperationCanceledException e) {
+						throw new InterruptedException();
+					} finally {
+						profile.end();
+						ImportProfile.detach();
+						searchProfile = profile;
+					}
+				}
+			});
 		} catch (InvocationTargetException e) {
-			// one of the steps resulted in a core exception
-			Throwable t = e.getTargetException();
-			String message = DataTransferMessages.WizardExternalProjectImportPage_errorMessage;
-			IStatus status;
-			if (t instanceof CoreException) {
-				status = ((CoreException) t).getStatus();
-			} else {
-				status = new Status(IStatus.ERROR,
-						IDEWorkbenchPlugin.IDE_WORKBENCH, 1, message, t);
-			}
-			ErrorDialog.openError(getShell(), message, null, status);
-			return false;
+			IDEWorkbenchPlugin.log(e.getMessage(), e);
+		} catch (InterruptedException e) {
+			setMessage("download interrupted", ERROR); //$NON-NLS-1$
+		}
+		// the journal of the import is keyed on the URLs fetched, so other
+		// lists of archives fetched into the same folder keep their own
+		File fetched = new File(folder, RemoteArchiveFetcher.getName(urls));
+		lastPath = fetched.getPath();
+		lastModified = fetched.lastModified();
+		lastCopyFiles = copyFiles;
+		if (result[0] != null && !result[0].isOK()) {
+			// the projects of the archives fetched are listed
+			ErrorDialog.openError(getShell(),
+					DataTransferMessages.WizardExternalProjectImportPage_errorMessage,
+					null, result[0]);
+		}
+		if (result[0] != null) {
+			updateProjectsListMessage();
 		}
-		ArchiveFileManipulations.closeStructureProvider(structureProvider,
-				getShell());
-
-		// Adds the projects to the working sets
-		addToWorkingSets();
-		
-		return true;
 	}
 
-	List createdProjects;
-	
-	private void addToWorkingSets() {
-		
-		IWorkingSet[] selectedWorkingSets = workingSetGroup.getSelectedWorkingSets();
-		if(selectedWorkingSets == null || selectedWorkingSets.length == 0)
-			return; // no Working set is selected
-		IWorkingSetManager workingSetManager = PlatformUI.getWorkbench().getWorkingSetManager();
-		for (Iterator i = createdProjects.iterator(); i.hasNext();) {
-			IProject project = (IProject) i.next();
-			workingSetManager.addToWorkingSets(project, selectedWorkingSets);
+	/**
+	 * Index an archive fetched from a remote URL and create the records of
+	 * its projects. A compressed tar file that cannot be indexed is searched
+	 * in a forward pass and streamed again when it is imported. Runs on a
+	 * download thread.
+	 * 
+	 * @param file
+	 * 		the archive
+	 * @param monitor
+	 * 		the monitor checked for cancellation
+	 * @return ProjectRecord[]
+	 * @throws IOException
+	 * 		if the archive cannot be read
+	 */
+	private ProjectRecord[] collectFetchedProjects(File file,
+			IProgressMonitor monitor) throws IOException {
+		String path = file.getPath();
+		if (ArchiveFileManipulations.isTarFile(path)
+				&& !TarArchiveIndex.isIndexable(file)) {
+			List projects = StreamingArchiveImporter.findProjects(file,
+					monitor);
+			ProjectRecord[] records = new ProjectRecord[projects.size()];
+			for (int i = 0; i < records.length; i++) {
+				records[i] = new ProjectRecord(
+						(StreamingArchiveImporter.Project) projects.get(i),
+						file);
+			}
+			return records;
+		}
+		ArchiveIndex index;
+		if (ArchiveFileManipulations.isTarFile(path)) {
+			index = TarArchiveIndex.open(file, monitor);
+		} else if (ArchiveFileManipulations.isZipFile(path)) {
+			index = new ZipArchiveIndex(new ZipFile(file));
+		} else {
+			throw new IOException(NLS.bind("{0} is not an archive", file)); //$NON-NLS-1$
+		}
+		fetchedArchives.put(index, file);
+		List files = new ArrayList();
+		if (!collectProjectFilesFromArchive(files, index, monitor)) {
+			throw new OperationCanceledException();
 		}
+		return (ProjectRecord[]) files.toArray(new ProjectRecord[files.size()]);
 	}
 
 	/**
-	 * Performs clean-up if the user cancels the wizard without doing anything
+	 * Close the indexes of the archives fetched from several URLs.
 	 */
-	public void performCancel() {
-		ArchiveFileManipulations.closeStructureProvider(structureProvider,
-				getShell());
+	private void closeFetchedArchives() {
+		synchronized (fetchedArchives) {
+			Iterator indexes = fetchedArchives.keySet().iterator();
+			while (indexes.hasNext()) {
+				((ArchiveIndex) indexes.next()).close();
+			}
+			fetchedArchives.clear();
+		}
 	}
 
 	/**
-	 * Create the project described in record. If it is successful return true.
-	 * 
-	 * @param record
-	 * @return boolean <code>true</code> if successful
-	 * @throws InterruptedException
+	 * Release the archives pinned in the download cache for the listed
+	 * projects.
 	 */
-	private boolean createExistingProject(final ProjectRecord record,
-			IProgressMonitor monitor) throws InvocationTargetException,
-			InterruptedException {
-		String projectName = record.getProjectName();
-		final IWorkspace workspace = ResourcesPlugin.getWorkspace();
-		final IProject project = workspace.getRoot().getProject(projectName);
-		createdProjects.add(project);
-		if (record.description == null) {
-			// error case
-			record.description = workspace.newProjectDescription(projectName);
-			IPath locationPath = new Path(record.projectSystemFile
-					.getAbsolutePath());
-
-			// If it is under the root use the default location
-			if (Platform.getLocation().isPrefixOf(locationPath)) {
-				record.description.setLocation(null);
-			} else {
-				record.description.setLocation(locationPath);
+	private void releaseDownloads() {
+		DownloadCache cache = downloadCache;
+		synchronized (pinnedDownloads) {
+			for (int i = 0; cache != null && i < pinnedDownloads.size(); i++) {
+				cache.release((URL) pinnedDownloads.get(i));
 			}
-		} else {
-			record.description.setName(projectName);
-		}
-		if (record.projectArchiveFile != null) {
-			// import from archive
-			List fileSystemObjects = structureProvider
-					.getChildren(record.parent);
-			structureProvider.setStrip(record.level);
-			ImportOperation operation = new ImportOperation(project
-					.getFullPath(), structureProvider.getRoot(),
-					structureProvider, this, fileSystemObjects);
-			operation.setContext(getShell());
-			operation.run(monitor);
-			return true;
+			pinnedDownloads.clear();
 		}
-		// import from file system
-		File importSource = null;
-		if (copyFiles) {
-			// import project from location copying files - use default project
-			// location for this workspace
-			URI locationURI = record.description.getLocationURI();
-			// if location is null, project already exists in this location or
-			// some error condition occured.
-			if (locationURI != null) {
-				// validate the location of the project being copied
-				IStatus result = ResourcesPlugin.getWorkspace().validateProjectLocationURI(project,
-						locationURI);
-				if(!result.isOK())					
-					throw new InvocationTargetException(new CoreException(result));
-				
-				importSource = new File(locationURI);
-				IProjectDescription desc = workspace
-						.newProjectDescription(projectName);
-				desc.setBuildSpec(record.description.getBuildSpec());
-				desc.setComment(record.description.getComment());
-				desc.setDynamicReferences(record.description
-						.getDynamicReferences());
-				desc.setNatureIds(record.description.getNatureIds());
-				desc.setReferencedProjects(record.description
-						.getReferencedProjects());
-				record.description = desc;
-			}
+	}
+
+	/**
+	 * Delete what is left of the staged remote archive.
+	 */
+	private void discardStagedArchive() {
+		if (stagingFolder != null) {
+			FastProjectCopier.delete(stagingFolder);
+			stagingFolder = null;
+			stagedStamp = null;
 		}
+	}
 
+	/**
+	 * Open the store of file contents shared by shared-content imports.
+	 * 
+	 * @return the store, or <code>null</code> if the plug-in is not running
+	 * @throws CoreException
+	 * 		if the store cannot be created
+	 */
+	private ContentStore openContentStore() throws CoreException {
 		try {
-			monitor
-					.beginTask(
-							DataTransferMessages.WizardProjectsImportPage_CreateProjectsTask,
-							100);
-			project.create(record.description, new SubProgressMonitor(monitor,
-					30));
-			project.open(IResource.BACKGROUND_REFRESH, new SubProgressMonitor(
-					monitor, 70));
-		} catch (CoreException e) {
-			throw new InvocationTargetException(e);
-		} finally {
-			monitor.done();
-		}
-
-		// import operation to import project files if copy checkbox is selected
-		if (copyFiles && importSource != null) {
-			List filesToImport = FileSystemStructureProvider.INSTANCE
-					.getChildren(importSource);
-			ImportOperation operation = new ImportOperation(project
-					.getFullPath(), importSource,
-					FileSystemStructureProvider.INSTANCE, this, filesToImport);
-			operation.setContext(getShell());
-			operation.setOverwriteResources(true); // need to overwrite
-			// .project, .classpath
-			// files
-			operation.setCreateContainerStructure(false);
-			operation.run(monitor);
+			return ContentStore.open();
+		} catch (IOException e) {
+			throw new CoreException(new Status(IStatus.ERROR,
+					IDEWorkbenchPlugin.IDE_WORKBENCH, 1, String.valueOf(e
+							.getMessage()), e));
 		}
+	}
 
-		return true;
+	/**
+	 * Write what a shared-content import saved to the plug-in log.
+	 * 
+	 * @param store
+	 */
+	private void logDeduplication(ContentStore store) {
+		Activator plugin = Activator.getDefault();
+		if (plugin != null) {
+			plugin.getLog().log(
+					new Status(IStatus.INFO, Activator.PLUGIN_ID, NLS.bind(
+							"Linked {0} duplicate files, {1} bytes", //$NON-NLS-1$
+							new Long(store.getLinkedFiles()), new Long(store
+									.getLinkedBytes()))));
+		}
 	}
 
 	/**
@@ -1707,16 +3161,17 @@ public class WizardAssignmentsImportPage extends WizardPage implements
 	}
 
 	/**
-	 * Retrieve all the projects in the current workspace.
+	 * Retrieve the index of the projects in the current workspace.
 	 * 
-	 * @return IProject[] array of IProject in the current workspace
+	 * @return WorkspaceProjectIndex the index, kept current until the page is
+	 * 	disposed
 	 */
-	private IProject[] getProjectsInWorkspace() {
-		if (wsProjects == null) {
-			wsProjects = IDEWorkbenchPlugin.getPluginWorkspace().getRoot()
-					.getProjects();
+	private WorkspaceProjectIndex getWorkspaceIndex() {
+		if (workspaceIndex == null) {
+			workspaceIndex = new WorkspaceProjectIndex(IDEWorkbenchPlugin
+					.getPluginWorkspace());
 		}
-		return wsProjects;
+		return workspaceIndex;
 	}
 
 	/**
@@ -1733,10 +3188,7 @@ public class WizardAssignmentsImportPage extends WizardPage implements
 	public ProjectRecord[] getProjectRecords() {
 		List projectRecords = new ArrayList();
 		for (int i = 0; i < selectedProjects.length; i++) {
-			if ( (isProjectInWorkspacePath(selectedProjects[i].getProjectName()) && copyFiles)||
-					isProjectInWorkspace(selectedProjects[i].getProjectName())) {
-				selectedProjects[i].hasConflicts = true;
-			}
+			updateConflicts(selectedProjects[i]);
 			projectRecords.add(selectedProjects[i]);
 		}
 		return (ProjectRecord[]) projectRecords
@@ -1744,37 +3196,18 @@ public class WizardAssignmentsImportPage extends WizardPage implements
 	}
 
 	/**
-	 * Determine if there is a directory with the project name in the workspace path.
-	 * 
-	 * @param projectName the name of the project
-	 * @return true if there is a directory with the same name of the imported project
-	 */
-	private boolean isProjectInWorkspacePath(String projectName){
-		final IWorkspace workspace = ResourcesPlugin.getWorkspace();
-		IPath wsPath = workspace.getRoot().getLocation();
-		IPath localProjectPath = wsPath.append(projectName);
-		return localProjectPath.toFile().exists();
-	}
-
-	/**
-	 * Determine if the project with the given name is in the current workspace.
+	 * Set the hasConflicts flag of a record if a project with the same name
+	 * exists in the workspace, and clear it otherwise. Records are shared
+	 * with the list, so this is only called on the UI thread.
 	 * 
-	 * @param projectName
-	 * 		String the project name to check
-	 * @return boolean true if the project with the given name is in this
-	 * 	workspace
+	 * @param record
 	 */
-	private boolean isProjectInWorkspace(String projectName) {
-		if (projectName == null) {
-			return false;
-		}
-		IProject[] workspaceProjects = getProjectsInWorkspace();
-		for (int i = 0; i < workspaceProjects.length; i++) {
-			if (projectName.equals(workspaceProjects[i].getName())) {
-				return true;
-			}
-		}
-		return false;
+	private void updateConflicts(ProjectRecord record) {
+		// what an interrupted import left is removed when importing, and
+		// what an earlier attempt imported is skipped
+		int state = newImporter().getState(getSource(record));
+		record.hasConflicts = state == ExistingProjectImporter.EXISTS
+				|| state == ExistingProjectImporter.LOCATION_EXISTS;
 	}
 
 	/**
@@ -1795,6 +3228,13 @@ public class WizardAssignmentsImportPage extends WizardPage implements
 			copyCheckbox.setSelection(copyFiles);
 			lastCopyFiles = copyFiles;
 		}
+
+		// Reopen the directory of the last import, which usually lists from
+		// the project index without searching
+		if (initialPath == null && settings != null
+				&& settings.get(STORE_DIRECTORY_PATH) != null) {
+			directoryPathField.setText(settings.get(STORE_DIRECTORY_PATH));
+		}
 				
 		// Second, check to see if we don't have an initial path, 
 		// and if we do have restore settings.  If so, set the
@@ -1848,7 +3288,128 @@ public class WizardAssignmentsImportPage extends WizardPage implements
 
 			settings.put(STORE_ARCHIVE_SELECTED, projectFromArchiveRadio
 					.getSelection());
+
+			settings.put(STORE_DIRECTORY_PATH, directoryPathField.getText()
+					.trim());
+		}
+	}
+
+	/**
+	 * Set the number of threads used to search directories for projects. A
+	 * value of <code>1</code> searches sequentially.
+	 * 
+	 * @param parallelism
+	 */
+	public void setScannerParallelism(int parallelism) {
+		synchronized (this) {
+			scannerParallelism = Math.max(1, parallelism);
+			// the pool is created again with the new size
+			if (readerPool != null) {
+				readerPool.shutdown();
+				readerPool = null;
+			}
+		}
+	}
+
+	/**
+	 * Set the number of projects created at the same time. A value of
+	 * <code>1</code> creates the projects one after the other.
+	 * 
+	 * @param parallelism
+	 */
+	public void setImportParallelism(int parallelism) {
+		importParallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Set the size from which archives are not indexed but read in forward
+	 * passes, keeping only the description files of their projects in
+	 * memory. A value of <code>0</code> streams every archive, a negative
+	 * value none.
+	 * 
+	 * @param bytes
+	 */
+	public void setStreamingThreshold(long bytes) {
+		streamingThreshold = bytes;
+	}
+
+	/**
+	 * Set whether remote archives are extracted into a staging folder as
+	 * they are downloaded, instead of being saved and then read, and their
+	 * projects moved into the workspace location when imported.
+	 * 
+	 * @param stream
+	 */
+	public void setStreamRemoteArchives(boolean stream) {
+		streamRemoteArchives = stream;
+	}
+
+	/**
+	 * Set whether projects are imported in bulk: auto-build is suspended
+	 * while the projects are created, and they are refreshed and built once
+	 * when all are created instead of one by one.
+	 * 
+	 * @param bulk
+	 */
+	public void setBulkImport(boolean bulk) {
+		bulkImport = bulk;
+	}
+
+	/**
+	 * Set whether the files of copied and extracted projects are written as
+	 * hard links to a store of their contents in the workspace metadata, so
+	 * files shared by several submissions are written once. The linked files
+	 * are shared between the projects and read-only, see
+	 * {@link ContentStore}.
+	 * 
+	 * @param sharedContent
+	 */
+	public void setSharedContent(boolean sharedContent) {
+		this.sharedContent = sharedContent;
+	}
+
+	/**
+	 * Set whether finishing the wizard only reports the import plan and
+	 * the measurements of each phase, without changing the workspace.
+	 * 
+	 * @param dryRun
+	 */
+	public void setDryRun(boolean dryRun) {
+		this.dryRun = dryRun;
+		if (dryRunCheckbox != null && !dryRunCheckbox.isDisposed()) {
+			dryRunCheckbox.setSelection(dryRun);
+		}
+	}
+
+	/**
+	 * Set whether the scanner lists directories through the EFS file store,
+	 * reading the attributes of each entry once and checking only symbolic
+	 * links for cycles, or through <code>java.io.File</code>.
+	 * 
+	 * @param useFileStore
+	 */
+	public void setScannerUsesFileStore(boolean useFileStore) {
+		scannerMode = useFileStore ? ProjectDirectoryScanner.MODE_FILE_STORE
+				: ProjectDirectoryScanner.MODE_FILE;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.eclipse.jface.dialogs.DialogPage#dispose()
+	 */
+	public void dispose() {
+		cancelSearch();
+		synchronized (this) {
+			if (readerPool != null) {
+				readerPool.shutdown();
+			}
+		}
+		if (workspaceIndex != null) {
+			workspaceIndex.dispose();
+			workspaceIndex = null;
 		}
+		super.dispose();
 	}
 
 	/**
@@ -0,0 +1,186 @@
+package org.eclipse.ide4edu.importWizard;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * Answers whether a project name conflicts with the workspace, either
+ * because a project of that name exists or because the workspace location
+ * holds a folder of that name. The project names are kept in a hash set
+ * that a resource change listener keeps current, and the workspace location
+ * is listed once per search instead of checking a file per candidate.
+ */
+class WorkspaceProjectIndex implements IResourceChangeListener {
+
+	private final IWorkspace workspace;
+
+	// whether the file system of the workspace location ignores the case
+	// of names, probed when the location is listed
+	private volatile boolean caseInsensitive;
+
+	private final Set<String> projectNames = Collections
+			.synchronizedSet(new HashSet<String>());
+
+	private final Set<String> locationNames = Collections
+			.synchronizedSet(new HashSet<String>());
+
+	/**
+	 * Create an index of the projects of a workspace and start listening to
+	 * its changes. {@link #dispose()} must be called when the index is no
+	 * longer used.
+	 *
+	 * @param workspace
+	 */
+	WorkspaceProjectIndex(IWorkspace workspace) {
+		this.workspace = workspace;
+		// listen first so no project created meanwhile is missed
+		workspace.addResourceChangeListener(this,
+				IResourceChangeEvent.POST_CHANGE);
+		IProject[] projects = workspace.getRoot().getProjects();
+		for (int i = 0; i < projects.length; i++) {
+			projectNames.add(projects[i].getName());
+		}
+		listLocation();
+	}
+
+	/**
+	 * List the workspace location again, to notice folders that were
+	 * created outside of the workspace. Called once per search.
+	 */
+	void listLocation() {
+		IPath location = workspace.getRoot().getLocation();
+		String[] names = location == null ? null : location.toFile().list();
+		if (location != null) {
+			caseInsensitive = isCaseInsensitive(location.toFile(), names);
+		}
+		synchronized (locationNames) {
+			locationNames.clear();
+			if (names != null) {
+				for (int i = 0; i < names.length; i++) {
+					locationNames.add(normalize(names[i]));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns whether the workspace holds a project with the name.
+	 *
+	 * @param name
+	 * @return boolean
+	 */
+	boolean containsProject(String name) {
+		return name != null && projectNames.contains(name);
+	}
+
+	/**
+	 * Returns whether the workspace location holds a file or folder with the
+	 * name, as of the last listing.
+	 *
+	 * @param name
+	 * @return boolean
+	 */
+	boolean containsLocation(String name) {
+		return name != null && locationNames.contains(normalize(name));
+	}
+
+	private String normalize(String name) {
+		return caseInsensitive ? name.toLowerCase(Locale.ENGLISH) : name;
+	}
+
+	/**
+	 * Returns whether the file system of a folder ignores the case of names:
+	 * whether the folder is also found under its name in the other case, or
+	 * else one of its files if the name of the folder has no case.
+	 *
+	 * @param folder
+	 * @param names
+	 * 		the names of the files of the folder, or <code>null</code>
+	 */
+	private static boolean isCaseInsensitive(File folder, String[] names) {
+		File parent = folder.getAbsoluteFile().getParentFile();
+		String other = swapCase(folder.getName());
+		if (parent != null && other != null) {
+			return new File(parent, other).exists();
+		}
+		for (int i = 0; names != null && i < names.length; i++) {
+			other = swapCase(names[i]);
+			if (other != null && !Arrays.asList(names).contains(other)) {
+				return new File(folder, other).exists();
+			}
+		}
+		// as java.io.File.equals assumes for the platform
+		return new File("a").equals(new File("A")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/**
+	 * Returns a name in the other case, or <code>null</code> if the name has
+	 * no case.
+	 */
+	private static String swapCase(String name) {
+		String upper = name.toUpperCase(Locale.ENGLISH);
+		String other = upper.equals(name) ? name.toLowerCase(Locale.ENGLISH)
+				: upper;
+		return other.equals(name) ? null : other;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.eclipse.core.resources.IResourceChangeListener#resourceChanged(org.eclipse.core.resources.IResourceChangeEvent)
+	 */
+	public void resourceChanged(IResourceChangeEvent event) {
+		IResourceDelta delta = event.getDelta();
+		if (delta == null) {
+			return;
+		}
+		// projects are the children of the root delta
+		IResourceDelta[] children = delta
+				.getAffectedChildren(IResourceDelta.ADDED
+						| IResourceDelta.REMOVED);
+		for (int i = 0; i < children.length; i++) {
+			IResource resource = children[i].getResource();
+			if (resource.getType() != IResource.PROJECT) {
+				continue;
+			}
+			String name = resource.getName();
+			if (children[i].getKind() == IResourceDelta.ADDED) {
+				projectNames.add(name);
+				if (resource.getLocation() != null
+						&& resource.getLocation().toFile().exists()
+						&& isInLocation(resource.getLocation())) {
+					locationNames.add(normalize(name));
+				}
+			} else {
+				// the folder may outlive the project, it is only dropped
+				// from the location names by the next listing
+				projectNames.remove(name);
+			}
+		}
+	}
+
+	private boolean isInLocation(IPath path) {
+		IPath location = workspace.getRoot().getLocation();
+		return location != null
+				&& location.equals(path.removeLastSegments(1));
+	}
+
+	/**
+	 * Stop listening to the workspace.
+	 */
+	void dispose() {
+		workspace.removeResourceChangeListener(this);
+	}
+}
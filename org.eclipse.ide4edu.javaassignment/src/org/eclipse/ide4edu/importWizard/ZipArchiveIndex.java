@@ -0,0 +1,86 @@
+package org.eclipse.ide4edu.importWizard;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * An {@link ArchiveIndex} over the central directory of a zip file. The
+ * central directory is read once by {@link ZipFile}; entries are looked up
+ * by their original name when their contents are needed, so no entry
+ * objects are retained.
+ */
+class ZipArchiveIndex extends ArchiveIndex {
+
+	/**
+	 * An entry with the name it has in the zip file.
+	 */
+	static class ZipIndexEntry extends Entry {
+
+		/**
+		 * The name of the entry in the zip file, before it was normalized.
+		 */
+		final String zipName;
+
+		ZipIndexEntry(String name, boolean folder, long size, String zipName) {
+			super(name, folder, size);
+			this.zipName = zipName;
+		}
+	}
+
+	private final ZipFile zipFile;
+
+	/**
+	 * @param zipFile
+	 * 		the zip file, closed by {@link #close()}
+	 */
+	ZipArchiveIndex(ZipFile zipFile) {
+		this.zipFile = zipFile;
+	}
+
+	Iterator<Entry> entries() {
+		final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+		return new Iterator<Entry>() {
+			public boolean hasNext() {
+				return entries.hasMoreElements();
+			}
+
+			public Entry next() {
+				if (!entries.hasMoreElements()) {
+					throw new NoSuchElementException();
+				}
+				ZipEntry entry = entries.nextElement();
+				return new ZipIndexEntry(normalize(entry.getName()), entry
+						.isDirectory(), entry.getSize(), entry.getName());
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	InputStream getContents(Entry entry) throws IOException {
+		ZipEntry zipEntry = zipFile.getEntry(((ZipIndexEntry) entry).zipName);
+		if (zipEntry == null) {
+			throw new IOException(entry.name);
+		}
+		return zipFile.getInputStream(zipEntry);
+	}
+
+	String getLabel() {
+		return zipFile.getName();
+	}
+
+	void close() {
+		try {
+			zipFile.close();
+		} catch (IOException e) {
+			// nothing to do
+		}
+	}
+}